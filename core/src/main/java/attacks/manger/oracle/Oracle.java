@@ -1,28 +1,76 @@
 package attacks.manger.oracle;
 
 
+import opcua.context.StaticConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
 /**
  * Abstraction for a PKCS#1 padding oracle.
  */
 public abstract class Oracle {
-    private long queryCount;
+    private static ExecutorService defaultExecutor;
+
+    private final OracleMetrics metrics = new OracleMetrics();
     private VictimProxy victimProxy;
+    private Executor executor;
 
     /**
-     * Queries the oracle
+     * Queries the oracle. Oracles may keep a reference to the cipher block beyond the call, e.g. to send it again or
+     * to record it, so callers must not modify it afterwards. This applies to all query methods.
      * @param cipherBlock The cipher block to query
      * @return Whether cipherBlock is valid
      * @throws OracleException
      */
     public abstract boolean checkValidity(byte[] cipherBlock) throws OracleException;
 
-    void incrementQueryCount() {
-        queryCount++;
+    /**
+     * Queries the oracle without blocking the caller. The query is executed by the executor of this oracle.
+     * @param cipherBlock The cipher block to query
+     * @return Future that completes with the validity of cipherBlock, or exceptionally with an OracleException
+     */
+    public CompletableFuture<Boolean> checkValidityAsync(byte[] cipherBlock) {
+        return supplyAsync(() -> checkValidity(cipherBlock));
+    }
+
+    /**
+     * Queries the oracle for several independent cipher blocks. The queries may be in flight concurrently.
+     * @param cipherBlocks The cipher blocks to query
+     * @return The validity of each cipher block, in the order of cipherBlocks
+     * @throws OracleException
+     */
+    public List<Boolean> checkValidity(List<byte[]> cipherBlocks) throws OracleException {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(cipherBlocks.size());
+        for(byte[] cipherBlock : cipherBlocks) {
+            futures.add(checkValidityAsync(cipherBlock));
+        }
+        return joinAll(futures);
+    }
+
+    /**
+     * Returns whether the decisions of this oracle depend on response times. Background traffic to the endpoint, e.g.
+     * connection pooling, disturbs such oracles, and their accuracy may drift with the load of the server.
+     */
+    public boolean usesResponseTimes() {
+        return false;
+    }
+
+    protected void incrementQueryCount() {
+        metrics.recordQuery();
     }
 
     public long getQueryCount() {
-        return queryCount;
+        return metrics.getQueryCount();
+    }
+
+    /**
+     * Returns the metrics of this oracle. Responses received through the victim proxy of this oracle are recorded as
+     * well.
+     */
+    public OracleMetrics getMetrics() {
+        return metrics;
     }
 
     public VictimProxy getVictimProxy() throws OracleException {
@@ -34,5 +82,81 @@ public abstract class Oracle {
 
     public void setVictimProxy(VictimProxy victimProxy) {
         this.victimProxy = victimProxy;
+        if(victimProxy != null) {
+            victimProxy.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Returns the executor for asynchronous queries. Unless set explicitly, the shared default executor is used.
+     */
+    public Executor getExecutor() {
+        return executor != null ? executor : defaultExecutor();
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor that is shared by all oracles without an explicitly set executor. Its size is determined
+     * by StaticConfig.ORACLE_CONCURRENCY.
+     */
+    public static synchronized ExecutorService defaultExecutor() {
+        if(defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(StaticConfig.ORACLE_CONCURRENCY, runnable -> {
+                Thread thread = new Thread(runnable, "oracle-query");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Runs a query on the executor of this oracle
+     * @param query The query
+     * @return Future that completes with the result of the query
+     */
+    protected <T> CompletableFuture<T> supplyAsync(Callable<T> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return query.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, getExecutor());
+    }
+
+    /**
+     * Waits for all futures and returns their results. Failures are rethrown as OracleException.
+     * @param futures The futures to wait for
+     * @return The results in the order of futures
+     * @throws OracleException
+     */
+    public static <T> List<T> joinAll(List<CompletableFuture<T>> futures) throws OracleException {
+        List<T> results = new ArrayList<>(futures.size());
+        for(CompletableFuture<T> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    /**
+     * Waits for a future and returns its result. A failure is rethrown as OracleException.
+     * @param future The future to wait for
+     * @return The result
+     * @throws OracleException
+     */
+    public static <T> T join(CompletableFuture<T> future) throws OracleException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if(cause instanceof OracleException) {
+                throw (OracleException) cause;
+            }
+            throw new OracleException(cause);
+        }
     }
 }
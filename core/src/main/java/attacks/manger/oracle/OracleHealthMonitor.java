@@ -0,0 +1,256 @@
+package attacks.manger.oracle;
+
+import attacks.manger.MangerUtility;
+import org.apache.log4j.Logger;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorator that watches the health of an oracle during an attack. After every probeInterval queries it interleaves a
+ * control probe, a cipher block whose plaintext is known to be "<B" or ">=B", and tracks the accuracy of the oracle on
+ * the most recent probes. If the accuracy drops below the threshold, e.g. because the timing distribution of the server
+ * has shifted, a TimingOracle is recalibrated. Other oracles, and timing oracles that stay inaccurate after
+ * maxRecalibrations recalibrations, are flagged as unhealthy, and further queries fail with an OracleException, so
+ * that the attack stops (and writes its checkpoint) instead of wasting queries on a broken oracle.
+ */
+public class OracleHealthMonitor extends Oracle {
+    private static final Logger logger = Logger.getRootLogger();
+
+    private final Oracle delegate;
+    private final int probeInterval;
+    private final int windowSize;
+    private final double minAccuracy;
+    private final SecureRandom random = new SecureRandom();
+    private final Deque<Boolean> window = new ArrayDeque<>();
+    private int maxRecalibrations = 3;
+    private long queriesSinceProbe;
+    private long probeCount;
+    private long failedProbeCount;
+    private int recalibrations;
+    private boolean recalibrationDue;
+    private boolean healthy = true;
+
+    /**
+     * Constructor with a probe after every 50 queries and a minimum accuracy of 80% on the last 20 probes
+     * @param delegate The monitored oracle, its victim proxy must be set
+     */
+    public OracleHealthMonitor(Oracle delegate) {
+        this(delegate, 50, 20, 0.8);
+    }
+
+    /**
+     * Constructor
+     * @param delegate The monitored oracle, its victim proxy must be set
+     * @param probeInterval Number of queries between two control probes
+     * @param windowSize Number of recent probes the accuracy is computed on
+     * @param minAccuracy Accuracy below which the oracle is recalibrated or flagged
+     */
+    public OracleHealthMonitor(Oracle delegate, int probeInterval, int windowSize, double minAccuracy) {
+        if(probeInterval < 1 || windowSize < 1) {
+            throw new IllegalArgumentException("Probe interval and window size must be positive");
+        }
+        this.delegate = delegate;
+        this.probeInterval = probeInterval;
+        this.windowSize = windowSize;
+        this.minAccuracy = minAccuracy;
+    }
+
+    @Override
+    public boolean usesResponseTimes() {
+        return delegate.usesResponseTimes();
+    }
+
+    @Override
+    public boolean checkValidity(byte[] cipherBlock) throws OracleException {
+        incrementQueryCount();
+        prepareQuery();
+        boolean result = delegate.checkValidity(cipherBlock);
+        if(probeDue(1)) {
+            probe();
+        }
+        return result;
+    }
+
+    /**
+     * The control probe is sent asynchronously through the delegate as well
+     */
+    @Override
+    public CompletableFuture<Boolean> checkValidityAsync(byte[] cipherBlock) {
+        incrementQueryCount();
+        try {
+            prepareQuery();
+        } catch (OracleException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Boolean> result = delegate.checkValidityAsync(cipherBlock);
+        if(probeDue(1)) {
+            try {
+                boolean lessB = random.nextBoolean();
+                VictimProxy victimProxy = delegate.getVictimProxy();
+                byte[] probe = generateProbe(victimProxy, lessB);
+                delegate.checkValidityAsync(probe)
+                        .whenComplete((answer, e) -> victimProxy.clearPriority(probe))
+                        .thenAccept(answer -> recordProbe(answer == lessB));
+            } catch (OracleException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Boolean> checkValidity(List<byte[]> cipherBlocks) throws OracleException {
+        getMetrics().recordQueries(cipherBlocks.size());
+        prepareQuery();
+        List<Boolean> results = delegate.checkValidity(cipherBlocks);
+        if(probeDue(cipherBlocks.size())) {
+            probe();
+        }
+        return results;
+    }
+
+    /**
+     * Performs a pending recalibration and fails if the oracle is unhealthy
+     */
+    private void prepareQuery() throws OracleException {
+        boolean recalibrate;
+        synchronized (this) {
+            if(!healthy) {
+                throw new OracleException("Oracle is unhealthy, accuracy on control probes dropped below " + minAccuracy);
+            }
+            recalibrate = recalibrationDue;
+            recalibrationDue = false;
+        }
+        if(recalibrate) {
+            recalibrate();
+        }
+    }
+
+    private synchronized boolean probeDue(int queries) {
+        queriesSinceProbe += queries;
+        if(queriesSinceProbe >= probeInterval) {
+            queriesSinceProbe = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private void probe() throws OracleException {
+        boolean lessB = random.nextBoolean();
+        VictimProxy victimProxy = delegate.getVictimProxy();
+        byte[] probe = generateProbe(victimProxy, lessB);
+        try {
+            recordProbe(delegate.checkValidity(probe) == lessB);
+        } finally {
+            victimProxy.clearPriority(probe);
+        }
+    }
+
+    /**
+     * Generates a control probe. Its queries are scheduled in the background, so they do not delay the attack.
+     */
+    private byte[] generateProbe(VictimProxy victimProxy, boolean lessB) {
+        byte[] plainBlock = lessB
+                ? MangerUtility.generatePlaintextLessB(victimProxy.getEndpoint().getPublicKey())
+                : MangerUtility.generatePlaintextGeqB(victimProxy.getEndpoint().getPublicKey());
+        byte[] probe = victimProxy.encryptPlainBlock(plainBlock);
+        victimProxy.setPriority(probe, QueryScheduler.Priority.BACKGROUND);
+        return probe;
+    }
+
+    /**
+     * Adds the result of a probe to the window. Once the window is full and the accuracy is too low, a recalibration is
+     * scheduled for the next query, or the oracle is flagged as unhealthy.
+     */
+    private synchronized void recordProbe(boolean correct) {
+        probeCount++;
+        if(!correct) {
+            failedProbeCount++;
+        }
+        window.addLast(correct);
+        if(window.size() > windowSize) {
+            window.removeFirst();
+        }
+        if(window.size() < windowSize || getAccuracy() >= minAccuracy) {
+            return;
+        }
+        if(delegate instanceof TimingOracle && recalibrations < maxRecalibrations) {
+            logger.warn("Oracle accuracy dropped to " + getAccuracy() + ", recalibrating");
+            recalibrationDue = true;
+        } else {
+            logger.warn("Oracle accuracy dropped to " + getAccuracy() + ", oracle is unhealthy");
+            healthy = false;
+        }
+        window.clear();
+    }
+
+    private void recalibrate() throws OracleException {
+        ((TimingOracle) delegate).recalibrate();
+        synchronized (this) {
+            recalibrations++;
+        }
+    }
+
+    /**
+     * Returns the accuracy on the probes in the current window, or 1 if there are none
+     */
+    public synchronized double getAccuracy() {
+        if(window.isEmpty()) {
+            return 1;
+        }
+        return (double) window.stream().filter(correct -> correct).count() / window.size();
+    }
+
+    /**
+     * Creates a report entry with the probe statistics
+     * @return The reporting group
+     */
+    public synchronized Group toReport() {
+        Group group = new Group("Oracle Health");
+        group.addSubEntry(new ValueEntry<>("Healthy", healthy));
+        group.addSubEntry(new ValueEntry<>("Control Probes", probeCount));
+        group.addSubEntry(new ValueEntry<>("Failed Control Probes", failedProbeCount));
+        group.addSubEntry(new ValueEntry<>("Recalibrations", recalibrations));
+        return group;
+    }
+
+    public Oracle getDelegate() {
+        return delegate;
+    }
+
+    public synchronized boolean isHealthy() {
+        return healthy;
+    }
+
+    public synchronized long getProbeCount() {
+        return probeCount;
+    }
+
+    public synchronized int getRecalibrations() {
+        return recalibrations;
+    }
+
+    public int getMaxRecalibrations() {
+        return maxRecalibrations;
+    }
+
+    public void setMaxRecalibrations(int maxRecalibrations) {
+        this.maxRecalibrations = maxRecalibrations;
+    }
+
+    @Override
+    public VictimProxy getVictimProxy() throws OracleException {
+        return delegate.getVictimProxy();
+    }
+
+    @Override
+    public void setVictimProxy(VictimProxy victimProxy) {
+        delegate.setVictimProxy(victimProxy);
+    }
+}
@@ -0,0 +1,133 @@
+package attacks.manger.oracle;
+
+import opcua.message.Message;
+import opcua.message.parts.MessageType;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe metrics of an oracle. Counters are LongAdders and latencies are recorded into lock-free histograms, so
+ * the metrics stay enabled during attacks. The latencies of a query are split into establishing the connection
+ * (connect), writing the request (send) and waiting for the first byte of the response (first byte).
+ */
+public class OracleMetrics {
+    private final LongAdder queryCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder errorResponseCount = new LongAdder();
+    private final LongAdder nonErrorResponseCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final LatencyHistogram firstByteLatency = new LatencyHistogram();
+
+    /**
+     * Records a query of the oracle
+     */
+    public void recordQuery() {
+        queryCount.increment();
+    }
+
+    /**
+     * Records several queries of the oracle
+     */
+    public void recordQueries(int count) {
+        queryCount.add(count);
+    }
+
+    /**
+     * Records that a query had to be repeated, e.g. because the response was ambiguous
+     */
+    public void recordRetry() {
+        retryCount.increment();
+    }
+
+    /**
+     * Records a response of the target server together with its latencies
+     * @param queryResult The response and its latencies
+     */
+    public void recordResponse(VictimProxy.QueryResult queryResult) {
+        Message response = queryResult.getResponse();
+        if(response != null && response.getMessageType() == MessageType.ERR) {
+            errorResponseCount.increment();
+        } else {
+            nonErrorResponseCount.increment();
+        }
+        connectLatency.record(queryResult.getConnectTime());
+        sendLatency.record(queryResult.getSendTime());
+        firstByteLatency.record(queryResult.getResponseTime());
+    }
+
+    /**
+     * Records that no response was received, e.g. because the connection failed
+     */
+    public void recordFailure() {
+        failureCount.increment();
+    }
+
+    /**
+     * Discards all recorded metrics
+     */
+    public void reset() {
+        queryCount.reset();
+        retryCount.reset();
+        errorResponseCount.reset();
+        nonErrorResponseCount.reset();
+        failureCount.reset();
+        connectLatency.reset();
+        sendLatency.reset();
+        firstByteLatency.reset();
+    }
+
+    /**
+     * Creates a report entry containing all metrics
+     * @return The reporting group
+     */
+    public Group toReport() {
+        Group group = new Group("Oracle Metrics");
+        group.addSubEntry(new ValueEntry<>("Queries", getQueryCount()));
+        group.addSubEntry(new ValueEntry<>("Retries", getRetryCount()));
+        group.addSubEntry(new ValueEntry<>("Error Responses", getErrorResponseCount()));
+        group.addSubEntry(new ValueEntry<>("Non-Error Responses", getNonErrorResponseCount()));
+        group.addSubEntry(new ValueEntry<>("Failed Requests", getFailureCount()));
+        if(firstByteLatency.getCount() > 0) {
+            group.addSubEntry(connectLatency.toReport("Connect Latency"));
+            group.addSubEntry(sendLatency.toReport("Send Latency"));
+            group.addSubEntry(firstByteLatency.toReport("First Byte Latency"));
+        }
+        return group;
+    }
+
+    public long getQueryCount() {
+        return queryCount.sum();
+    }
+
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    public long getErrorResponseCount() {
+        return errorResponseCount.sum();
+    }
+
+    public long getNonErrorResponseCount() {
+        return nonErrorResponseCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public LatencyHistogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    public LatencyHistogram getFirstByteLatency() {
+        return firstByteLatency;
+    }
+}
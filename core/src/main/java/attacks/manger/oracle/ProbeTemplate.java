@@ -0,0 +1,56 @@
+package attacks.manger.oracle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable template of a probe message: a valid ciphertext split into the bytes before and after the queried cipher
+ * block. A probe consists of the shared read-only prefix and suffix and the cipher block of the query, so concurrent
+ * queries can use the same template without copying it and without interfering with each other.
+ */
+public class ProbeTemplate {
+    private final ByteBuffer prefix;
+    private final ByteBuffer suffix;
+    private final int blockSize;
+
+    /**
+     * Constructor
+     * @param ciphertext Valid ciphertext to insert queried cipher blocks into, it is copied once
+     * @param blockOffset Offset of the first cipher block
+     * @param blockSize Size of a cipher block
+     * @param blockNumber Which cipher block to replace
+     */
+    public ProbeTemplate(byte[] ciphertext, int blockOffset, int blockSize, int blockNumber) {
+        int start = blockOffset + blockNumber * blockSize;
+        if(blockOffset < 0 || blockNumber < 0 || start + blockSize > ciphertext.length) {
+            throw new IllegalArgumentException("Cipher block exceeds the ciphertext");
+        }
+        byte[] copy = ciphertext.clone();
+        this.prefix = ByteBuffer.wrap(copy, 0, start).slice().asReadOnlyBuffer();
+        this.suffix = ByteBuffer.wrap(copy, start + blockSize, copy.length - start - blockSize).slice().asReadOnlyBuffer();
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the buffers of a probe for a gathering write. The buffers have independent positions, so they can be
+     * consumed by the write.
+     * @param cipherBlock Cipher block to query, it must not be modified until the probe was sent
+     * @return Prefix, cipher block and suffix
+     */
+    public ByteBuffer[] buffers(byte[] cipherBlock) {
+        checkBlockSize(cipherBlock);
+        return new ByteBuffer[] {prefix.duplicate(), ByteBuffer.wrap(cipherBlock).asReadOnlyBuffer(), suffix.duplicate()};
+    }
+
+    private void checkBlockSize(byte[] cipherBlock) {
+        if(cipherBlock.length != blockSize) {
+            throw new IllegalArgumentException("Invalid block size");
+        }
+    }
+
+    /**
+     * Returns the length of a probe message in bytes
+     */
+    public int getLength() {
+        return prefix.remaining() + blockSize + suffix.remaining();
+    }
+}
@@ -0,0 +1,93 @@
+package attacks.manger.oracle;
+
+import opcua.encoding.EncodingException;
+import opcua.encoding.MessageInputStream;
+import opcua.message.Message;
+import opcua.message.parts.MessageType;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * A single recorded query, see QueryRecorder
+ */
+public class QueryRecord {
+    public static final byte LABEL_UNKNOWN = -1;
+    public static final byte LABEL_GEQ_B = 0;
+    public static final byte LABEL_LESS_B = 1;
+
+    /**
+     * Error code of responses that are no error messages
+     */
+    public static final long NO_ERROR = -1;
+
+    private final byte[] hash;
+    private final byte label;
+    private final long responseTime;
+    private final long errorCode;
+    private final MessageType messageType;
+    private final byte[] responseBytes;
+
+    /**
+     * Constructor
+     * @param hash Hash of the cipher block and block number, see QueryRecorder.hash
+     * @param label Whether the plaintext was known to be "<B" (LABEL_LESS_B), ">=B" (LABEL_GEQ_B) or unknown
+     * @param responseTime Time until the first byte of the response in nanoseconds
+     * @param errorCode Error code of an error response, NO_ERROR otherwise
+     * @param messageType Type of the response, null if there was no response
+     * @param responseBytes Encoded body of the response, null if there was no response
+     */
+    public QueryRecord(byte[] hash, byte label, long responseTime, long errorCode, MessageType messageType, byte[] responseBytes) {
+        this.hash = hash;
+        this.label = label;
+        this.responseTime = responseTime;
+        this.errorCode = errorCode;
+        this.messageType = messageType;
+        this.responseBytes = responseBytes;
+    }
+
+    /**
+     * Returns the label of a plaintext block, which is "<B" if and only if its first byte is zero
+     */
+    public static byte label(byte[] plainBlock) {
+        return plainBlock[0] == 0 ? LABEL_LESS_B : LABEL_GEQ_B;
+    }
+
+    /**
+     * Decodes the recorded response
+     * @return The response, or null if there was none or it cannot be decoded
+     */
+    public Message decodeResponse() {
+        if(messageType == null) {
+            return null;
+        }
+        try {
+            return Message.constructFromBinary(messageType, new MessageInputStream(new ByteArrayInputStream(responseBytes)));
+        } catch (EncodingException e) {
+            return null;
+        }
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public byte getLabel() {
+        return label;
+    }
+
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    public long getErrorCode() {
+        return errorCode;
+    }
+
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    public byte[] getResponseBytes() {
+        return responseBytes;
+    }
+}
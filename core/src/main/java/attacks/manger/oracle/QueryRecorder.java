@@ -0,0 +1,146 @@
+package attacks.manger.oracle;
+
+import opcua.message.ErrorMessage;
+import opcua.message.Message;
+import opcua.message.parts.MessageType;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends every query of a VictimProxy to a compact binary log. A record consists of the SHA-256 hash of the cipher
+ * block and block number, the label of the plaintext if it is known, the response time, the error code and the encoded
+ * response. Recording several runs into the same file appends to it. Records are buffered, so the recorder must be
+ * closed at the end of a run; a log that was cut off is read up to its last complete record.
+ */
+public class QueryRecorder implements Closeable {
+    private static final Logger logger = Logger.getRootLogger();
+    private static final int MAGIC = 0x4F51524C;
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+
+    private final DataOutputStream out;
+
+    /**
+     * Constructor. Creates the log or appends to an existing one.
+     * @param file The log file
+     * @throws IOException
+     */
+    public QueryRecorder(Path file) throws IOException {
+        boolean empty = !Files.exists(file) || Files.size(file) == 0;
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if(empty) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+    }
+
+    /**
+     * Records a query. Failures to write are logged, so that recording never aborts an attack.
+     * @param cipherBlock The queried cipher block
+     * @param blockNumber Number of the replaced block in the ciphertext
+     * @param label Label of the plaintext, see QueryRecord
+     * @param queryResult Response and response time
+     */
+    public synchronized void record(byte[] cipherBlock, int blockNumber, byte label, VictimProxy.QueryResult queryResult) {
+        Message response = queryResult.getResponse();
+        try {
+            out.write(hash(cipherBlock, blockNumber));
+            out.writeByte(label);
+            out.writeLong(queryResult.getResponseTime());
+            out.writeLong(response instanceof ErrorMessage ? ((ErrorMessage) response).getError() : QueryRecord.NO_ERROR);
+            if(response == null) {
+                out.writeByte(-1);
+            } else {
+                byte[] responseBytes = response.toBinary();
+                out.writeByte(response.getMessageType().ordinal());
+                out.writeInt(responseBytes.length);
+                out.write(responseBytes);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to record query: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all buffered records to the log
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Reads all complete records of a log
+     * @param file The log file
+     * @return The records in the order they were recorded
+     * @throws IOException If the file is no query log
+     */
+    public static List<QueryRecord> read(Path file) throws IOException {
+        List<QueryRecord> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Not a query log");
+            }
+            if(in.readInt() != VERSION) {
+                throw new IOException("Unsupported query log version");
+            }
+            while(true) {
+                byte[] hash = new byte[HASH_LENGTH];
+                try {
+                    in.readFully(hash);
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    byte label = in.readByte();
+                    long responseTime = in.readLong();
+                    long errorCode = in.readLong();
+                    byte type = in.readByte();
+                    MessageType messageType = null;
+                    byte[] responseBytes = null;
+                    if(type >= 0) {
+                        messageType = MessageType.values()[type];
+                        responseBytes = new byte[in.readInt()];
+                        in.readFully(responseBytes);
+                    }
+                    records.add(new QueryRecord(hash, label, responseTime, errorCode, messageType, responseBytes));
+                } catch (EOFException e) {
+                    logger.warn("Query log ends with an incomplete record");
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Computes the SHA-256 hash that identifies a query
+     * @param cipherBlock The queried cipher block
+     * @param blockNumber Number of the replaced block in the ciphertext
+     * @return The hash
+     */
+    public static byte[] hash(byte[] cipherBlock, int blockNumber) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(cipherBlock);
+            digest.update(new byte[] {(byte) (blockNumber >>> 24), (byte) (blockNumber >>> 16), (byte) (blockNumber >>> 8), (byte) blockNumber});
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package attacks.manger.oracle;
+
+import opcua.context.Endpoint;
+import opcua.context.StaticConfig;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Schedules the queries of several attacks, learners and probes that target the same endpoint. At most maxConcurrency
+ * queries are sent at a time. Waiting queries are started strictly by priority. Within a priority, the owners of the
+ * queries (usually victim proxies) are served in turn by start-time fair queuing, so an owner with many concurrent
+ * queries does not starve the others.
+ * An owner may claim the endpoint exclusively, e.g. while it samples response times. The claim waits until the queries
+ * of all other owners have finished and then holds back their queries until it is released.
+ */
+public class QueryScheduler {
+    private static final Map<String, QueryScheduler> schedulers = new ConcurrentHashMap<>();
+
+    /**
+     * Priority of a query, from highest to lowest
+     */
+    public enum Priority {
+        ATTACK,
+        CALIBRATION,
+        BACKGROUND
+    }
+
+    /**
+     * A query waiting to be started
+     */
+    private static class Waiter {
+        private final Object owner;
+        private final Priority priority;
+        private final long startTag;
+        private final long sequence;
+        private final long enqueueTime = System.nanoTime();
+
+        private Waiter(Object owner, Priority priority, long startTag, long sequence) {
+            this.owner = owner;
+            this.priority = priority;
+            this.startTag = startTag;
+            this.sequence = sequence;
+        }
+    }
+
+    private final int maxConcurrency;
+    private final TreeSet<Waiter> waiting = new TreeSet<>(Comparator
+            .comparing((Waiter waiter) -> waiter.priority)
+            .thenComparingLong(waiter -> waiter.startTag)
+            .thenComparingLong(waiter -> waiter.sequence));
+    private final long[] virtualTimes = new long[Priority.values().length];
+    private final Map<Object, long[]> finishTags = new WeakHashMap<>();
+    private final Map<Object, Integer> inFlightByOwner = new HashMap<>();
+    private final LongAdder[] queryCounts = new LongAdder[Priority.values().length];
+    private final LongAdder[] waitingTimes = new LongAdder[Priority.values().length];
+    private final LongAdder exclusivePhaseCount = new LongAdder();
+    private long sequence;
+    private int inFlight;
+    private Object exclusiveOwner;
+    private int exclusiveDepth;
+
+    /**
+     * Constructor
+     * @param maxConcurrency Upper bound of concurrent queries
+     */
+    public QueryScheduler(int maxConcurrency) {
+        if(maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive");
+        }
+        this.maxConcurrency = maxConcurrency;
+        for(int i=0; i<queryCounts.length; i++) {
+            queryCounts[i] = new LongAdder();
+            waitingTimes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the scheduler that is shared by all queries to an endpoint. It allows up to
+     * StaticConfig.ORACLE_CONCURRENCY concurrent queries.
+     * @param endpoint The endpoint
+     * @return The scheduler of the endpoint
+     */
+    public static QueryScheduler forEndpoint(Endpoint endpoint) {
+        return schedulers.computeIfAbsent(endpoint.getHostName() + ":" + endpoint.getPort(),
+                key -> new QueryScheduler(StaticConfig.ORACLE_CONCURRENCY));
+    }
+
+    /**
+     * Blocks until the query may be sent. Every call must be followed by a call of release.
+     * @param owner Owner of the query
+     * @param priority Priority of the query
+     * @throws OracleException If the thread was interrupted while waiting
+     */
+    public synchronized void acquire(Object owner, Priority priority) throws OracleException {
+        int p = priority.ordinal();
+        long[] finishTag = finishTags.computeIfAbsent(owner, key -> new long[virtualTimes.length]);
+        long startTag = Math.max(virtualTimes[p], finishTag[p]);
+        finishTag[p] = startTag + 1;
+        Waiter waiter = new Waiter(owner, priority, startTag, sequence++);
+        waiting.add(waiter);
+        try {
+            while(next() != waiter) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            waiting.remove(waiter);
+            notifyAll();
+            Thread.currentThread().interrupt();
+            throw new OracleException("Interrupted while waiting for the query scheduler", e);
+        }
+        waiting.remove(waiter);
+        inFlight++;
+        inFlightByOwner.merge(owner, 1, Integer::sum);
+        virtualTimes[p] = Math.max(virtualTimes[p], startTag);
+        queryCounts[p].increment();
+        waitingTimes[p].add(System.nanoTime() - waiter.enqueueTime);
+        // The next waiter may be eligible as well
+        notifyAll();
+    }
+
+    /**
+     * Returns the waiter that may start next, or null if no query may start
+     */
+    private Waiter next() {
+        if(inFlight >= maxConcurrency) {
+            return null;
+        }
+        for(Waiter waiter : waiting) {
+            if(exclusiveOwner == null || exclusiveOwner == waiter.owner) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reports that a query has finished
+     * @param owner Owner of the query
+     */
+    public synchronized void release(Object owner) {
+        inFlight--;
+        inFlightByOwner.computeIfPresent(owner, (key, count) -> count > 1 ? count - 1 : null);
+        notifyAll();
+    }
+
+    /**
+     * Claims the endpoint exclusively for an owner. Blocks until a claim of another owner is released and all queries
+     * of other owners have finished. Claims of the same owner may be nested, every call must be followed by a call of
+     * endExclusive.
+     * @param owner The owner
+     * @throws OracleException If the thread was interrupted while waiting
+     */
+    public synchronized void beginExclusive(Object owner) throws OracleException {
+        if(exclusiveOwner == owner) {
+            exclusiveDepth++;
+            return;
+        }
+        try {
+            while(exclusiveOwner != null) {
+                wait();
+            }
+            exclusiveOwner = owner;
+            exclusiveDepth = 1;
+            exclusivePhaseCount.increment();
+            while(inFlight > inFlightByOwner.getOrDefault(owner, 0)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if(exclusiveOwner == owner) {
+                exclusiveOwner = null;
+                exclusiveDepth = 0;
+            }
+            notifyAll();
+            Thread.currentThread().interrupt();
+            throw new OracleException("Interrupted while waiting for exclusive access", e);
+        }
+    }
+
+    /**
+     * Releases the exclusive claim of an owner
+     * @param owner The owner
+     * @throws IllegalStateException If the owner does not hold the claim
+     */
+    public synchronized void endExclusive(Object owner) {
+        if(exclusiveOwner != owner) {
+            throw new IllegalStateException("Owner does not hold exclusive access");
+        }
+        if(--exclusiveDepth == 0) {
+            exclusiveOwner = null;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Creates a report entry with the number of queries and the mean waiting time per priority
+     * @return The reporting group
+     */
+    public Group toReport() {
+        Group group = new Group("Query Scheduler");
+        for(Priority priority : Priority.values()) {
+            long count = queryCounts[priority.ordinal()].sum();
+            double meanWaitingTime = count == 0 ? 0 : waitingTimes[priority.ordinal()].sum() / 1e6 / count;
+            group.addSubEntry(new ValueEntry<>("Queries (" + priority + ")", count));
+            group.addSubEntry(new ValueEntry<>("Mean Waiting Time (" + priority + ") [ms]", Math.round(meanWaitingTime * 100) / 100.0));
+        }
+        group.addSubEntry(new ValueEntry<>("Exclusive Phases", exclusivePhaseCount.sum()));
+        return group;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getQueryCount(Priority priority) {
+        return queryCounts[priority.ordinal()].sum();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
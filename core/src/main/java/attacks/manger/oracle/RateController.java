@@ -0,0 +1,252 @@
+package attacks.manger.oracle;
+
+import opcua.context.Endpoint;
+import opcua.context.StaticConfig;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+
+import java.io.EOFException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Adaptive rate controller for the queries sent to one endpoint, in the manner of TCP congestion control (additive
+ * increase, multiplicative decrease). It limits both the number of concurrent queries and the query rate. Every
+ * successful query raises the limits a little; a refused or dropped connection, a timeout or an inflated latency halves
+ * them. The latency counts as inflated if it exceeds a low percentile of the recent latencies both by a factor and by
+ * an absolute margin, so that the jitter of fast connections is no degradation. Like in TCP, only queries sent after
+ * the last back-off can cause the next one. The limits thus settle at the highest rate the endpoint sustains without
+ * degradation.
+ */
+public class RateController {
+    private static final Map<String, RateController> controllers = new ConcurrentHashMap<>();
+
+    private static final double INITIAL_RATE = 10;
+    private static final double MIN_RATE = 0.5;
+    private static final double MAX_RATE = 10000;
+    private static final double RATE_INCREASE = 1;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double LATENCY_SMOOTHING = 0.25;
+    private static final int LATENCY_WINDOW = 256;
+    private static final int MIN_LATENCY_SAMPLES = 32;
+    private static final double BASELINE_PERCENTILE = 0.1;
+    private static final long MIN_INFLATION_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * How the endpoint responded to a query
+     */
+    public enum Outcome {
+        SUCCESS,
+        REFUSED,
+        TIMEOUT,
+        FAILURE
+    }
+
+    private final int maxConcurrency;
+    private final double latencyInflationThreshold;
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder refusalCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder inflationCount = new LongAdder();
+    private final LongAdder backOffCount = new LongAdder();
+    private final long[] latencyWindow = new long[LATENCY_WINDOW];
+
+    private double concurrencyLimit = 1;
+    private double rate = INITIAL_RATE;
+    private int inFlight;
+    private long nextSendNanos = System.nanoTime();
+    private long lastBackOffNanos;
+    private int latencyCount;
+    private int latencyIndex;
+    private double smoothedLatency;
+    private double baselineLatency;
+
+    /**
+     * Constructor
+     * @param maxConcurrency Upper bound of concurrent queries
+     * @param latencyInflationThreshold Factor by which the smoothed latency may exceed the baseline before the
+     *                                  controller backs off, in addition to an absolute margin of 5 ms
+     */
+    public RateController(int maxConcurrency, double latencyInflationThreshold) {
+        if(maxConcurrency < 1 || latencyInflationThreshold <= 1) {
+            throw new IllegalArgumentException("Invalid rate controller configuration");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.latencyInflationThreshold = latencyInflationThreshold;
+        this.lastBackOffNanos = System.nanoTime() - 1;
+    }
+
+    /**
+     * Returns the controller that is shared by all queries to an endpoint. It allows up to
+     * StaticConfig.ORACLE_CONCURRENCY concurrent queries and backs off at a doubled latency.
+     * @param endpoint The endpoint
+     * @return The controller of the endpoint
+     */
+    public static RateController forEndpoint(Endpoint endpoint) {
+        return controllers.computeIfAbsent(endpoint.getHostName() + ":" + endpoint.getPort(),
+                key -> new RateController(StaticConfig.ORACLE_CONCURRENCY, 2.0));
+    }
+
+    /**
+     * Blocks until a query may be sent. Every call must be followed by a call of release.
+     * @return Ticket of the query that must be passed to release
+     * @throws OracleException If the thread was interrupted while waiting
+     */
+    public long acquire() throws OracleException {
+        long sendAt;
+        synchronized (this) {
+            try {
+                while(inFlight >= (int) concurrencyLimit) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OracleException("Interrupted while waiting for the rate controller", e);
+            }
+            inFlight++;
+            long now = System.nanoTime();
+            sendAt = Math.max(now, nextSendNanos);
+            nextSendNanos = sendAt + (long) (1e9 / rate);
+        }
+        long delay = sendAt - System.nanoTime();
+        if(delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+        return sendAt;
+    }
+
+    /**
+     * Reports the outcome of a query and adapts the limits
+     * @param ticket The ticket returned by acquire
+     * @param outcome How the endpoint responded
+     * @param latencyNanos Round trip time of the query on its established connection, ignored unless successful. It
+     *                     must not include connecting or waiting for a pooled connection.
+     */
+    public synchronized void release(long ticket, Outcome outcome, long latencyNanos) {
+        inFlight--;
+        boolean degraded;
+        switch (outcome) {
+            case SUCCESS:
+                successCount.increment();
+                degraded = updateLatency(latencyNanos);
+                if(degraded) {
+                    inflationCount.increment();
+                }
+                break;
+            case REFUSED:
+                refusalCount.increment();
+                degraded = true;
+                break;
+            case TIMEOUT:
+                timeoutCount.increment();
+                degraded = true;
+                break;
+            default:
+                degraded = false;
+        }
+
+        if(degraded) {
+            // Queries scheduled before the last back-off only report the degradation that caused it
+            if(ticket > lastBackOffNanos) {
+                lastBackOffNanos = Math.max(System.nanoTime(), nextSendNanos - 1);
+                backOffCount.increment();
+                concurrencyLimit = Math.max(1, concurrencyLimit * DECREASE_FACTOR);
+                rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+                // Latencies measured before the back-off must not trigger the next one
+                smoothedLatency = baselineLatency;
+            }
+        } else if(outcome == Outcome.SUCCESS) {
+            // Increase of 1/limit per query, i.e. roughly one more concurrent query per round of queries
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+            rate = Math.min(MAX_RATE, rate + RATE_INCREASE);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Updates the smoothed latency and its baseline, a low percentile of the latencies in a sliding window
+     * @return Whether the latency is inflated
+     */
+    private boolean updateLatency(long latencyNanos) {
+        latencyWindow[latencyIndex] = latencyNanos;
+        latencyIndex = (latencyIndex + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(LATENCY_WINDOW, latencyCount + 1);
+        if(smoothedLatency == 0) {
+            smoothedLatency = latencyNanos;
+        }
+        smoothedLatency += LATENCY_SMOOTHING * (latencyNanos - smoothedLatency);
+        if(latencyCount < MIN_LATENCY_SAMPLES) {
+            return false;
+        }
+        // The window forgets old latencies, so a permanently slower server becomes the new baseline
+        long[] window = Arrays.copyOf(latencyWindow, latencyCount);
+        Arrays.sort(window);
+        baselineLatency = window[(int) (BASELINE_PERCENTILE * (window.length - 1))];
+        return smoothedLatency > latencyInflationThreshold * baselineLatency
+                && smoothedLatency - baselineLatency > MIN_INFLATION_NANOS;
+    }
+
+    /**
+     * Classifies a failed query by the cause of its exception
+     * @param e The exception of the query
+     * @return REFUSED for refused or dropped connections, TIMEOUT for timeouts, FAILURE otherwise
+     */
+    public static Outcome classify(Throwable e) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof SocketTimeoutException) {
+                return Outcome.TIMEOUT;
+            }
+            if(cause instanceof ConnectException || cause instanceof SocketException || cause instanceof EOFException) {
+                return Outcome.REFUSED;
+            }
+        }
+        return Outcome.FAILURE;
+    }
+
+    /**
+     * Creates a report entry with the current limits and the observed degradations
+     * @return The reporting group
+     */
+    public synchronized Group toReport() {
+        long total = successCount.sum() + refusalCount.sum() + timeoutCount.sum();
+        Group group = new Group("Rate Controller");
+        group.addSubEntry(new ValueEntry<>("Concurrency Limit", (int) concurrencyLimit));
+        group.addSubEntry(new ValueEntry<>("Query Rate [1/s]", Math.round(rate * 10) / 10.0));
+        group.addSubEntry(new ValueEntry<>("Refusal Rate", total == 0 ? 0 : (double) refusalCount.sum() / total));
+        group.addSubEntry(new ValueEntry<>("Timeouts", timeoutCount.sum()));
+        group.addSubEntry(new ValueEntry<>("Latency Inflations", inflationCount.sum()));
+        group.addSubEntry(new ValueEntry<>("Back-Offs", backOffCount.sum()));
+        return group;
+    }
+
+    public synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public long getSuccessCount() {
+        return successCount.sum();
+    }
+
+    public long getRefusalCount() {
+        return refusalCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getBackOffCount() {
+        return backOffCount.sum();
+    }
+}
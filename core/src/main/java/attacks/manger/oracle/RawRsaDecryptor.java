@@ -0,0 +1,69 @@
+package attacks.manger.oracle;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPrivateKey;
+
+/**
+ * Decrypts without removing any padding (m = c^d mod N). If the private key provides its CRT parameters, the two half
+ * size exponentiations c^dp mod p and c^dq mod q are combined with Garner's formula, which is about four times faster.
+ * Instances are immutable and may be used by several threads concurrently.
+ */
+public class RawRsaDecryptor {
+    private final BigInteger N;
+    private final BigInteger d;
+    private final BigInteger p;
+    private final BigInteger q;
+    private final BigInteger dp;
+    private final BigInteger dq;
+    private final BigInteger qInv;
+
+    /**
+     * Constructor
+     * @param privateKey Private key for decryption
+     */
+    public RawRsaDecryptor(RSAPrivateKey privateKey) {
+        this.N = privateKey.getModulus();
+        this.d = privateKey.getPrivateExponent();
+        if(privateKey instanceof RSAPrivateCrtKey && ((RSAPrivateCrtKey) privateKey).getPrimeP() != null) {
+            RSAPrivateCrtKey crtKey = (RSAPrivateCrtKey) privateKey;
+            this.p = crtKey.getPrimeP();
+            this.q = crtKey.getPrimeQ();
+            this.dp = crtKey.getPrimeExponentP();
+            this.dq = crtKey.getPrimeExponentQ();
+            this.qInv = crtKey.getCrtCoefficient();
+        } else {
+            this.p = null;
+            this.q = null;
+            this.dp = null;
+            this.dq = null;
+            this.qInv = null;
+        }
+    }
+
+    /**
+     * Computes c^d mod N
+     * @param c The cipher text
+     * @return The plaintext
+     */
+    public BigInteger decrypt(BigInteger c) {
+        if(p == null) {
+            return c.modPow(d, N);
+        }
+        BigInteger m1 = c.modPow(dp, p);
+        BigInteger m2 = c.modPow(dq, q);
+        BigInteger h = qInv.multiply(m1.subtract(m2)).mod(p);
+        return m2.add(h.multiply(q));
+    }
+
+    /**
+     * Returns whether the CRT parameters are used
+     */
+    public boolean isCrtEnabled() {
+        return p != null;
+    }
+
+    public BigInteger getModulus() {
+        return N;
+    }
+}
@@ -0,0 +1,106 @@
+package attacks.manger.oracle;
+
+import opcua.context.Endpoint;
+import opcua.context.LocalKeyPair;
+import opcua.security.MessageSecurityMode;
+import opcua.security.SecurityPolicy;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Victim proxy that answers from a query log instead of a server (see QueryRecorder). Any oracle that is given this
+ * proxy, e.g. a DistinguishableErrorOracle, a TimingOracle or an EnsembleOracle, becomes a replay oracle, so decision
+ * rules and attack strategies can be benchmarked against captured server behaviour offline and repeatedly.
+ *
+ * In exact mode, a cipher block is answered with the responses recorded for it, cycling through them if it was recorded
+ * several times. In model mode, the proxy plays a server with a local key: it decrypts the cipher block and answers
+ * with a randomly drawn response and response time that was recorded for a plaintext of the same class ("<B" or
+ * ">=B"), i.e. it resamples the empirical distribution of the labelled records.
+ */
+public class ReplayVictimProxy extends VictimProxy {
+    private final Map<ByteBuffer, List<QueryRecord>> recordsByHash;
+    private final Map<ByteBuffer, AtomicInteger> replayCounts;
+    private final RawRsaDecryptor decryptor;
+    private final BigInteger B;
+    private final List<QueryRecord> recordsLessB;
+    private final List<QueryRecord> recordsGeqB;
+
+    /**
+     * Constructor for exact mode
+     * @param endpoint The recorded endpoint
+     * @param blockNumber Which cipher block was replaced in the recorded queries
+     * @param records The recorded queries
+     */
+    public ReplayVictimProxy(Endpoint endpoint, int blockNumber, List<QueryRecord> records) {
+        super(endpoint, blockNumber);
+        this.recordsByHash = new HashMap<>();
+        this.replayCounts = new HashMap<>();
+        for(QueryRecord record : records) {
+            ByteBuffer hash = ByteBuffer.wrap(record.getHash());
+            recordsByHash.computeIfAbsent(hash, key -> new ArrayList<>()).add(record);
+            replayCounts.putIfAbsent(hash, new AtomicInteger());
+        }
+        this.decryptor = null;
+        this.B = null;
+        this.recordsLessB = null;
+        this.recordsGeqB = null;
+    }
+
+    /**
+     * Constructor for model mode
+     * @param serverKeyPair Key of the simulated server, the proxy's endpoint uses its certificate
+     * @param records The recorded queries, of which only those with a known label are used
+     */
+    public ReplayVictimProxy(LocalKeyPair serverKeyPair, List<QueryRecord> records) {
+        super(new Endpoint("localhost", 0, "opc.tcp://localhost:0/replay", serverKeyPair.getCertificate(),
+                SecurityPolicy.BASIC256_SHA256, MessageSecurityMode.SIGN_AND_ENCRYPT), 0);
+        this.recordsByHash = null;
+        this.replayCounts = null;
+        this.decryptor = new RawRsaDecryptor(serverKeyPair.getPrivateKey());
+        this.B = BigInteger.ONE.shiftLeft((getBlockSize() - 1) * 8);
+        this.recordsLessB = new ArrayList<>();
+        this.recordsGeqB = new ArrayList<>();
+        for(QueryRecord record : records) {
+            if(record.getLabel() == QueryRecord.LABEL_LESS_B) {
+                recordsLessB.add(record);
+            } else if(record.getLabel() == QueryRecord.LABEL_GEQ_B) {
+                recordsGeqB.add(record);
+            }
+        }
+        if(recordsLessB.isEmpty() || recordsGeqB.isEmpty()) {
+            throw new IllegalArgumentException("Model mode requires labelled records for \"<B\" and \">=B\"");
+        }
+    }
+
+    /**
+     * The recorded response is returned in full, also if only the error code was requested
+     */
+    @Override
+    protected QueryResult query(byte[] cipherBlock, boolean headerOnly) throws OracleException {
+        QueryRecord record;
+        if(decryptor == null) {
+            ByteBuffer hash = ByteBuffer.wrap(QueryRecorder.hash(cipherBlock, getBlockNumber()));
+            List<QueryRecord> records = recordsByHash.get(hash);
+            if(records == null) {
+                throw new OracleException("Query was not recorded");
+            }
+            record = records.get(Math.floorMod(replayCounts.get(hash).getAndIncrement(), records.size()));
+        } else {
+            boolean lessB = decryptor.decrypt(new BigInteger(1, cipherBlock)).compareTo(B) < 0;
+            List<QueryRecord> records = lessB ? recordsLessB : recordsGeqB;
+            record = records.get(ThreadLocalRandom.current().nextInt(records.size()));
+        }
+        return new QueryResult(record.decodeResponse(), record.getResponseTime(), 0, 0);
+    }
+
+    /**
+     * Returns whether the proxy simulates a server instead of replaying exact queries
+     */
+    public boolean isModelMode() {
+        return decryptor != null;
+    }
+}
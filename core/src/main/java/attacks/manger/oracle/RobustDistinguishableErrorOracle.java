@@ -6,16 +6,21 @@ import opcua.message.Message;
 import opcua.message.parts.MessageType;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 /**
- * A more robust version of a DistinguishableErrorOracle.
+ * A more robust version of a DistinguishableErrorOracle. Responses that match both or none of the predicates are
+ * ignored. By default the first unambiguous response decides. With a voting margin greater than one, the endpoint is
+ * queried until one decision leads the other by the margin (sequential voting), so a single flaky response no longer
+ * decides, while a clear case stops after as many queries as the margin.
  */
 public class RobustDistinguishableErrorOracle extends Oracle {
 
     private final Predicate<ErrorMessage> lessBPredicate;
     private final Predicate<ErrorMessage> geqBPredicate;
     private final int numAttempts;
+    private int votingMargin = 1;
 
     /**
      * This oracle will query the endpoint up to numAttempts times until exactly one of the predicates returns true.
@@ -90,19 +95,121 @@ public class RobustDistinguishableErrorOracle extends Oracle {
     @Override
     public boolean checkValidity(byte[] cipherBlock) throws OracleException {
         this.incrementQueryCount();
-        boolean lessB, geqB;
+        int lessBVotes = 0;
+        int geqBVotes = 0;
         for(int i=0; i<numAttempts; i++) {
-            Message response = getVictimProxy().sendCipherBlock(cipherBlock).getResponse();
-            if(response == null || response.getMessageType() != MessageType.ERR) {
-                return true;   //TODO
+            if(i > 0) {
+                getMetrics().recordRetry();
             }
-            lessB = lessBPredicate.test((ErrorMessage)response);
-            geqB = geqBPredicate.test((ErrorMessage)response);
+            Boolean vote = decide(getVictimProxy().sendCipherBlock(cipherBlock).getResponse());
+            if(vote != null) {
+                if(vote) {
+                    lessBVotes++;
+                } else {
+                    geqBVotes++;
+                }
+                if(Math.abs(lessBVotes - geqBVotes) >= votingMargin) {
+                    return lessBVotes > geqBVotes;
+                }
+            }
+        }
+        return decideOnExhaustion(lessBVotes, geqBVotes);
+    }
 
-            if(lessB ^ geqB) {
-                return lessB;
+    /**
+     * Attempts for the same cipher block are sent one after another, but attempts for different cipher blocks are
+     * in flight concurrently.
+     */
+    @Override
+    public CompletableFuture<Boolean> checkValidityAsync(byte[] cipherBlock) {
+        VictimProxy victimProxy;
+        try {
+            victimProxy = getVictimProxy();
+        } catch (OracleException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        this.incrementQueryCount();
+        return attemptAsync(victimProxy, cipherBlock, 0, 0, 0);
+    }
+
+    private CompletableFuture<Boolean> attemptAsync(VictimProxy victimProxy, byte[] cipherBlock, int attempt, int lessBVotes, int geqBVotes) {
+        if(attempt >= numAttempts) {
+            try {
+                return CompletableFuture.completedFuture(decideOnExhaustion(lessBVotes, geqBVotes));
+            } catch (OracleException e) {
+                return CompletableFuture.failedFuture(e);
             }
         }
-        throw new OracleException("Exceeded maximum number of attempts, unable to decide");
+        if(attempt > 0) {
+            getMetrics().recordRetry();
+        }
+        return victimProxy.sendCipherBlockAsync(cipherBlock, getExecutor()).thenCompose(queryResult -> {
+            Boolean vote = decide(queryResult.getResponse());
+            int newLessBVotes = lessBVotes + (Boolean.TRUE.equals(vote) ? 1 : 0);
+            int newGeqBVotes = geqBVotes + (Boolean.FALSE.equals(vote) ? 1 : 0);
+            if(Math.abs(newLessBVotes - newGeqBVotes) >= votingMargin) {
+                return CompletableFuture.completedFuture(newLessBVotes > newGeqBVotes);
+            }
+            return attemptAsync(victimProxy, cipherBlock, attempt + 1, newLessBVotes, newGeqBVotes);
+        });
+    }
+
+    /**
+     * Decides after all attempts were used without reaching the voting margin. A leading decision is still returned.
+     */
+    private boolean decideOnExhaustion(int lessBVotes, int geqBVotes) throws OracleException {
+        if(lessBVotes == geqBVotes) {
+            throw new OracleException("Exceeded maximum number of attempts, unable to decide");
+        }
+        return lessBVotes > geqBVotes;
+    }
+
+    /**
+     * Returns the decision for a single response, or null if the response is ambiguous
+     */
+    private Boolean decide(Message response) {
+        if(response == null || response.getMessageType() != MessageType.ERR) {
+            return true;   //TODO
+        }
+        boolean lessB = lessBPredicate.test((ErrorMessage)response);
+        boolean geqB = geqBPredicate.test((ErrorMessage)response);
+
+        if(lessB ^ geqB) {
+            return lessB;
+        }
+        return null;
+    }
+
+    public int getVotingMargin() {
+        return votingMargin;
+    }
+
+    /**
+     * Sets by how many votes one decision must lead the other before querying stops. A margin of 1 returns the first
+     * unambiguous response.
+     * @param votingMargin The margin, at least 1
+     */
+    public void setVotingMargin(int votingMargin) {
+        if(votingMargin < 1) {
+            throw new IllegalArgumentException("Voting margin must be positive");
+        }
+        this.votingMargin = votingMargin;
+    }
+
+    /**
+     * Sets the voting margin such that the posterior probability of the decision is at least the given confidence,
+     * assuming that every unambiguous response is wrong independently with the given probability and both decisions
+     * are equally likely a priori. With the likelihood ratio r = (1-errorRate)/errorRate, a lead of k votes yields the
+     * posterior odds r^k, so querying stops at the smallest k with r^k >= confidence/(1-confidence).
+     * @param confidence Required posterior probability of a decision, between 0.5 and 1 (exclusive)
+     * @param errorRate Probability that a single unambiguous response is wrong, between 0 and 0.5 (exclusive)
+     */
+    public void setVotingConfidence(double confidence, double errorRate) {
+        if(confidence <= 0.5 || confidence >= 1 || errorRate <= 0 || errorRate >= 0.5) {
+            throw new IllegalArgumentException("Invalid confidence or error rate");
+        }
+        double requiredOdds = Math.log(confidence / (1 - confidence));
+        double likelihoodRatio = Math.log((1 - errorRate) / errorRate);
+        setVotingMargin((int) Math.max(1, Math.ceil(requiredOdds / likelihoodRatio - 1e-9)));
     }
-}
\ No newline at end of file
+}
@@ -3,35 +3,117 @@ package attacks.manger.oracle;
 
 import java.math.BigInteger;
 import java.security.interfaces.RSAPrivateKey;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * This is an oracle for testing purposes only. It knows the private key and will always return the correct result.
+ * Decryption uses the CRT parameters of the key if available. It only works on immutable values, so it needs no
+ * scratch buffers, and one instance may serve several attacks running in parallel threads. Only the query count can
+ * be kept per thread.
  */
 public class TestOracle extends Oracle {
-    private final BigInteger d;
-    private final BigInteger N;
+    private final RawRsaDecryptor decryptor;
     private final BigInteger B;
+    private final ThreadLocal<QueryCounter> threadQueryCounter;
+
+    /**
+     * Query count of a single thread
+     */
+    private static class QueryCounter {
+        private long queryCount;
+    }
 
     /**
      * Constructor
      * @param privateKey Private key for decryption
      */
     public TestOracle(RSAPrivateKey privateKey) {
-        this.d = privateKey.getPrivateExponent();
-        this.N = privateKey.getModulus();
+        this(privateKey, false);
+    }
 
-        this.B = BigInteger.ONE.shiftLeft(N.bitLength() - 8);
+    /**
+     * Constructor
+     * @param privateKey Private key for decryption
+     * @param countPerThread Whether queries are additionally counted per thread, see getQueryCountOfCurrentThread()
+     */
+    public TestOracle(RSAPrivateKey privateKey, boolean countPerThread) {
+        this.decryptor = new RawRsaDecryptor(privateKey);
+        this.B = BigInteger.ONE.shiftLeft(privateKey.getModulus().bitLength() - 8);
+        this.threadQueryCounter = countPerThread ? ThreadLocal.withInitial(QueryCounter::new) : null;
     }
 
     @Override
     public boolean checkValidity(byte[] message) throws OracleException {
+        count();
+        return decide(message);
+    }
+
+    /**
+     * The query is counted for the calling thread, not for the thread of the executor
+     */
+    @Override
+    public CompletableFuture<Boolean> checkValidityAsync(byte[] message) {
+        count();
+        return supplyAsync(() -> decide(message));
+    }
+
+    /**
+     * Decryption is CPU-bound, so a batch is decided in parallel on the common fork-join pool. The queries are
+     * counted for the calling thread.
+     */
+    @Override
+    public List<Boolean> checkValidity(List<byte[]> messages) {
+        if(threadQueryCounter != null) {
+            threadQueryCounter.get().queryCount += messages.size();
+        }
+        return messages.parallelStream()
+                .map(message -> {
+                    incrementQueryCount();
+                    return decide(message);
+                })
+                .collect(Collectors.toList());
+    }
+
+    private void count() {
         incrementQueryCount();
-        BigInteger c = new BigInteger(1, message);
-        BigInteger m = c.modPow(d, N);
+        if(threadQueryCounter != null) {
+            threadQueryCounter.get().queryCount++;
+        }
+    }
+
+    /**
+     * Decides whether a cipher block is valid, without counting the query
+     * @param message The cipher block
+     * @return Whether the plaintext is smaller than B
+     */
+    protected boolean decide(byte[] message) {
+        BigInteger m = decryptor.decrypt(new BigInteger(1, message));
 
         return m.compareTo(B) < 0;
     }
 
+    /**
+     * Returns the number of queries of the calling thread
+     * @throws IllegalStateException If the oracle was created without per-thread counts
+     */
+    public long getQueryCountOfCurrentThread() {
+        if(threadQueryCounter == null) {
+            throw new IllegalStateException("Oracle was created without per-thread counts");
+        }
+        return threadQueryCounter.get().queryCount;
+    }
+
+    /**
+     * Resets the number of queries of the calling thread, e.g. before it starts the next simulated attack
+     */
+    public void resetQueryCountOfCurrentThread() {
+        if(threadQueryCounter != null) {
+            threadQueryCounter.get().queryCount = 0;
+        }
+    }
+
     public BigInteger getB() {
         return B;
     }
@@ -2,11 +2,15 @@ package attacks.manger.oracle;
 
 import attacks.manger.oracle.timing.DecisionRule;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Oracle for the exploitation of timing differences
  */
 public class TimingOracle extends Oracle {
     private final DecisionRule decisionRule;
+    private final MeasurementQueue measurements = new MeasurementQueue(this, "timing-oracle-measurement");
 
     /**
      * Constructor
@@ -17,19 +21,66 @@ public class TimingOracle extends Oracle {
         this.decisionRule = decisionRule;
     }
 
+    @Override
+    public boolean usesResponseTimes() {
+        return true;
+    }
+
     @Override
     public boolean checkValidity(byte[] message) throws OracleException {
         incrementQueryCount();
-        return decisionRule.predict(message);
+        return join(measurements.submit(() -> decisionRule.predict(message)));
+    }
+
+    /**
+     * Overlapping measurements would distort each other, so asynchronous queries are queued and measured one after
+     * another on a dedicated thread. If the victim proxy has a query scheduler, every measurement claims the endpoint
+     * exclusively, so that no other traffic runs while the response times are sampled.
+     */
+    @Override
+    public CompletableFuture<Boolean> checkValidityAsync(byte[] message) {
+        incrementQueryCount();
+        return measurements.submit(() -> decisionRule.predict(message));
+    }
+
+    /**
+     * The samples of all cipher blocks are gathered interleaved by the decision rule, in a single measurement
+     */
+    @Override
+    public List<Boolean> checkValidity(List<byte[]> messages) throws OracleException {
+        getMetrics().recordQueries(messages.size());
+        return join(measurements.submit(() -> decisionRule.predict(messages)));
+    }
+
+    /**
+     * Learns the decision rule again, e.g. after the timing behaviour of the server has changed. Runs on the
+     * measurement thread, so it does not overlap with queued measurements.
+     * @throws OracleException
+     */
+    public void recalibrate() throws OracleException {
+        join(measurements.submit(() -> {
+            decisionRule.learn();
+            return null;
+        }));
+    }
+
+    public DecisionRule getDecisionRule() {
+        return decisionRule;
     }
 
     @Override
     public VictimProxy getVictimProxy() throws OracleException {
+        if(decisionRule.getVictimProxy() == null) {
+            throw new OracleException("No victim proxy was set to query");
+        }
         return decisionRule.getVictimProxy();
     }
 
     @Override
     public void setVictimProxy(VictimProxy victimProxy) {
         decisionRule.setVictimProxy(victimProxy);
+        if(victimProxy != null) {
+            victimProxy.setMetrics(getMetrics());
+        }
     }
 }
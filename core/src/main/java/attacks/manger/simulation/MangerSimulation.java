@@ -0,0 +1,247 @@
+package attacks.manger.simulation;
+
+import attacks.manger.MangerUtility;
+import attacks.manger.MangersAttack;
+import attacks.manger.MangersAttackConfiguration;
+import attacks.manger.oracle.OracleException;
+import opcua.context.LocalKeyPair;
+import opcua.context.StaticConfig;
+import opcua.security.AsymCryptoUtility;
+import org.apache.log4j.Logger;
+import reporting.entry.DurationEntry;
+import reporting.entry.Group;
+import reporting.entry.HistogramEntry;
+import reporting.entry.ValueEntry;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Monte-Carlo simulation of Manger's attack. Many attacks on random plaintext blocks are executed in parallel against
+ * in-process oracles, which yields the distribution of oracle queries, restarts and wall time for a given key size
+ * and oracle quality. Everything runs offline, the key is generated locally.
+ */
+public class MangerSimulation {
+    private static final int HISTOGRAM_BINS = 20;
+
+    private final Logger logger = Logger.getRootLogger();
+    private final int keySize;
+    private final int numberOfAttacks;
+    private double errorRate = 0;
+    private double falsePositiveRate = 0;
+    private Duration latency = Duration.ZERO;
+    private int maxRestarts = 3;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private MangersAttackConfiguration attackConfiguration = new MangersAttackConfiguration();
+
+    /**
+     * Outcome of one simulated attack, including its restarts
+     */
+    private static class Outcome {
+        private final long queries;
+        private final int restarts;
+        private final long wallTimeNanos;
+        private final boolean successful;
+
+        private Outcome(long queries, int restarts, long wallTimeNanos, boolean successful) {
+            this.queries = queries;
+            this.restarts = restarts;
+            this.wallTimeNanos = wallTimeNanos;
+            this.successful = successful;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param keySize Size of the generated RSA key in bits
+     * @param numberOfAttacks Number of simulated attacks
+     */
+    public MangerSimulation(int keySize, int numberOfAttacks) {
+        if(numberOfAttacks < 1) {
+            throw new IllegalArgumentException("At least one attack must be simulated");
+        }
+        this.keySize = keySize;
+        this.numberOfAttacks = numberOfAttacks;
+    }
+
+    /**
+     * Runs the simulation
+     * @return Report containing the configuration and the histograms of the results
+     */
+    public Group run() {
+        LocalKeyPair keyPair = LocalKeyPair.generateSelfSigned(keySize, StaticConfig.CERT_NAME);
+        SimulatedOracle oracle = new SimulatedOracle(keyPair.getPrivateKey(), errorRate, falsePositiveRate, latency);
+        logger.info("Simulating " + numberOfAttacks + " attacks with a " + keySize + " bit key");
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Outcome[] outcomes;
+        try {
+            outcomes = pool.submit(() -> IntStream.range(0, numberOfAttacks)
+                    .parallel()
+                    .mapToObj(i -> simulateAttack(keyPair.getPublicKey(), oracle))
+                    .toArray(Outcome[]::new)
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        long[] queries = Arrays.stream(outcomes).mapToLong(o -> o.queries).toArray();
+        long[] restarts = Arrays.stream(outcomes).mapToLong(o -> o.restarts).toArray();
+        long[] wallTimes = Arrays.stream(outcomes).mapToLong(o -> o.wallTimeNanos / 1_000_000).toArray();
+        long successful = Arrays.stream(outcomes).filter(o -> o.successful).count();
+
+        Group report = new Group("Simulation of Manger's Attack");
+        report.addSubEntry(new ValueEntry<>("Key Size", keySize));
+        report.addSubEntry(new ValueEntry<>("Simulated Attacks", numberOfAttacks));
+        report.addSubEntry(new ValueEntry<>("Error Rate", errorRate));
+        report.addSubEntry(new ValueEntry<>("False Positive Rate", falsePositiveRate));
+        report.addSubEntry(new ValueEntry<>("Latency", latency));
+        report.addSubEntry(new ValueEntry<>("Successful Attacks", successful));
+        report.addSubEntry(new ValueEntry<>("Median Oracle Queries", percentile(queries, 50)));
+        report.addSubEntry(new ValueEntry<>("90th Percentile Oracle Queries", percentile(queries, 90)));
+        report.addSubEntry(HistogramEntry.ofSamples("Oracle Queries", "queries", queries, HISTOGRAM_BINS));
+        report.addSubEntry(HistogramEntry.ofSamples("Restarts", "restarts", restarts, maxRestarts + 1));
+        report.addSubEntry(HistogramEntry.ofSamples("Wall Time", "ms", wallTimes, HISTOGRAM_BINS));
+        report.addSubEntry(new DurationEntry("Elapsed time", elapsed));
+        return report;
+    }
+
+    /**
+     * Attacks a fresh random plaintext block. A failed attempt, e.g. because the query limit was exceeded or a noisy
+     * answer led to a wrong result, is restarted on the same block until maxRestarts is reached. The oracle is shared
+     * by all attacks, the queries of this attack are those counted for the current thread meanwhile.
+     */
+    private Outcome simulateAttack(RSAPublicKey publicKey, SimulatedOracle oracle) {
+        int blockSize = publicKey.getModulus().bitLength() / 8;
+        byte[] plainBlock = MangerUtility.generatePlaintextLessB(publicKey);
+        byte[] cipherBlock = AsymCryptoUtility.convertBigInteger(
+                new BigInteger(1, plainBlock).modPow(publicKey.getPublicExponent(), publicKey.getModulus()), blockSize);
+
+        long startQueries = oracle.getQueryCountOfCurrentThread();
+        long start = System.nanoTime();
+        int restarts = 0;
+        boolean successful = false;
+        while(true) {
+            try {
+                byte[] recovered = new MangersAttack(cipherBlock, oracle, publicKey, attackConfiguration).executeAttack();
+                successful = Arrays.equals(recovered, plainBlock);
+            } catch (OracleException e) {
+                logger.debug("Simulated attack failed", e);
+            }
+            if(successful || restarts == maxRestarts) {
+                break;
+            }
+            restarts++;
+        }
+        return new Outcome(oracle.getQueryCountOfCurrentThread() - startQueries, restarts, System.nanoTime() - start, successful);
+    }
+
+    private static long percentile(long[] values, int percent) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    public int getNumberOfAttacks() {
+        return numberOfAttacks;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Sets the probability that the oracle flips an answer
+     * @param errorRate Probability between 0 and 1
+     */
+    public void setErrorRate(double errorRate) {
+        if(errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1");
+        }
+        this.errorRate = errorRate;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Sets the probability that the oracle reports a block with m >= B as valid
+     * @param falsePositiveRate Probability between 0 and 1
+     */
+    public void setFalsePositiveRate(double falsePositiveRate) {
+        if(falsePositiveRate < 0 || falsePositiveRate > 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public Duration getLatency() {
+        return latency;
+    }
+
+    /**
+     * Sets the delay of every oracle query. Delayed queries block their worker thread, so the parallelism should be
+     * raised accordingly.
+     */
+    public void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    public int getMaxRestarts() {
+        return maxRestarts;
+    }
+
+    public void setMaxRestarts(int maxRestarts) {
+        if(maxRestarts < 0) {
+            throw new IllegalArgumentException("Number of restarts must not be negative");
+        }
+        this.maxRestarts = maxRestarts;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of worker threads of the fork-join pool
+     */
+    public void setParallelism(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public MangersAttackConfiguration getAttackConfiguration() {
+        return attackConfiguration;
+    }
+
+    /**
+     * Sets the configuration that is used for every simulated attack. Checkpointing must be disabled, since all
+     * attacks would share the same checkpoint file.
+     */
+    public void setAttackConfiguration(MangersAttackConfiguration attackConfiguration) {
+        if(attackConfiguration.getCheckpointFile() != null) {
+            throw new IllegalArgumentException("Checkpointing is not supported in simulations");
+        }
+        this.attackConfiguration = attackConfiguration;
+    }
+}
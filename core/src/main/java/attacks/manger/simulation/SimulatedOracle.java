@@ -0,0 +1,72 @@
+package attacks.manger.simulation;
+
+import attacks.manger.oracle.TestOracle;
+
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process oracle for simulations. It is a TestOracle whose answers can be disturbed by random noise and false
+ * positives, and every query can be delayed to model the round trip to a server. Queries are counted per thread, so
+ * one instance serves all simulated attacks.
+ */
+public class SimulatedOracle extends TestOracle {
+    private final double errorRate;
+    private final double falsePositiveRate;
+    private final long latencyNanos;
+
+    /**
+     * Constructor for an oracle that always answers correctly and immediately
+     * @param privateKey Private key for decryption
+     */
+    public SimulatedOracle(RSAPrivateKey privateKey) {
+        this(privateKey, 0, 0, Duration.ZERO);
+    }
+
+    /**
+     * Constructor
+     * @param privateKey Private key for decryption
+     * @param errorRate Probability that an answer is flipped
+     * @param falsePositiveRate Probability that a block with m >= B is reported as valid
+     * @param latency Delay of every query
+     */
+    public SimulatedOracle(RSAPrivateKey privateKey, double errorRate, double falsePositiveRate, Duration latency) {
+        super(privateKey, true);
+        if(errorRate < 0 || errorRate > 1 || falsePositiveRate < 0 || falsePositiveRate > 1) {
+            throw new IllegalArgumentException("Rates must be between 0 and 1");
+        }
+        this.errorRate = errorRate;
+        this.falsePositiveRate = falsePositiveRate;
+        this.latencyNanos = latency.toNanos();
+    }
+
+    @Override
+    protected boolean decide(byte[] cipherBlock) {
+        if(latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean valid = super.decide(cipherBlock);
+        if(!valid && random.nextDouble() < falsePositiveRate) {
+            valid = true;
+        }
+        if(random.nextDouble() < errorRate) {
+            valid = !valid;
+        }
+        return valid;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public Duration getLatency() {
+        return Duration.ofNanos(latencyNanos);
+    }
+}
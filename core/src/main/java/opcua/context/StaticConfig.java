@@ -15,4 +15,10 @@ public class StaticConfig {
 
     public static int CERT_KEYSIZE = 2048;
     public static String CERT_NAME = "CN=OpcUa-Attacker";
+
+    public static int POOL_SIZE = 8;
+    public static int POOL_REFILL_RATE = 100;
+    public static long POOL_IDLE_EXPIRY = 5000;
+
+    public static int ORACLE_CONCURRENCY = 16;
 }
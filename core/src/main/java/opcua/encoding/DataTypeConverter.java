@@ -79,7 +79,7 @@ public class DataTypeConverter {
     }
 
     public static byte[] uInt16ToBytesLE(int i) {
-        byte[] bytes = new byte[4];
+        byte[] bytes = new byte[2];
         bytes[0] = (byte)i;
         bytes[1] = (byte)(i >> 8);
         return bytes;
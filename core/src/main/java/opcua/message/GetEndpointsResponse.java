@@ -5,6 +5,7 @@ import opcua.encoding.MessageInputStream;
 import opcua.message.parts.MessageType;
 import opcua.message.parts.ResponseHeader;
 import opcua.model.type.EndpointDescription;
+import opcua.model.type.ObjectIds;
 
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
@@ -27,6 +28,7 @@ public class GetEndpointsResponse extends SecureConversationMessage {
     @Override
     public byte[] toBinary() {
         BinarySerializer serializer = new BinarySerializer();
+        serializer.putNodeId(ObjectIds.GET_ENDPOINTS_RESPONSE);
         serializer.putBytes(responseHeader.toBinary());
         serializer.putUInt32(endpoints.length);
         for(EndpointDescription endpoint : endpoints) {
@@ -7,6 +7,9 @@ import opcua.model.type.SecurityTokenRequestType;
 import opcua.model.type.ObjectIds;
 import opcua.security.MessageSecurityMode;
 import opcua.encoding.BinarySerializer;
+import opcua.encoding.MessageInputStream;
+
+import java.io.IOException;
 
 /**
  * OpenSecureChannel Request (OPC UA Part 4, p.21)
@@ -57,6 +60,17 @@ public class OpenSecureChannelRequest extends SecureConversationMessage {
                 .get();
     }
 
+    public static OpenSecureChannelRequest constructFromBinary(MessageInputStream stream) throws IOException {
+        return new OpenSecureChannelRequest(
+                RequestHeader.constructFromBinary(stream),
+                stream.readUInt32(),
+                stream.readEnumeration(SecurityTokenRequestType.class),
+                stream.readEnumeration(MessageSecurityMode.class),
+                stream.readByteArray(),
+                stream.readUInt32()
+        );
+    }
+
 
     @Override
     public MessageType getMessageType() {
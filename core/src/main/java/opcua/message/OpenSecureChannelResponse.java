@@ -2,6 +2,7 @@ package opcua.message;
 
 import opcua.message.parts.MessageType;
 import opcua.message.parts.ResponseHeader;
+import opcua.model.type.ObjectIds;
 import opcua.model.type.SecurityToken;
 import opcua.encoding.BinarySerializer;
 import opcua.encoding.MessageInputStream;
@@ -29,7 +30,9 @@ public class OpenSecureChannelResponse extends SecureConversationMessage {
     @Override
     public byte[] toBinary() {
         return new BinarySerializer()
+                .putNodeId(ObjectIds.OPEN_SECURE_CHANNEL_RESPONSE)
                 .putBytes(responseHeader.toBinary())
+                .putUInt32(serverProtocolVersion)
                 .putBytes(securityToken.toBinary())
                 .putByteArray(serverNonce)
                 .get();
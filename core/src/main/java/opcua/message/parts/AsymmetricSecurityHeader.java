@@ -47,7 +47,7 @@ public class AsymmetricSecurityHeader implements SecurityHeader {
         securityHeader.setSecurityPolicy(SecurityPolicy.fromUri(new String(stream.readByteArray())));
         byte[] encodedCertificate = stream.readByteArray();
         if(encodedCertificate != null) {
-            securityHeader.setSenderCertificate(CertificateUtility.decodeX509FromDer(stream.readByteArray()));
+            securityHeader.setSenderCertificate(CertificateUtility.decodeX509FromDer(encodedCertificate));
         }
         securityHeader.setReceiverCertificateThumbprint(stream.readByteArray());
         return securityHeader;
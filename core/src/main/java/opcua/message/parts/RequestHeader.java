@@ -2,7 +2,9 @@ package opcua.message.parts;
 
 import opcua.model.type.NodeId;
 import opcua.encoding.BinarySerializer;
+import opcua.encoding.MessageInputStream;
 
+import java.io.IOException;
 import java.time.Instant;
 
 /**
@@ -45,6 +47,21 @@ public class RequestHeader {
                 .get();
     }
 
+    public static RequestHeader constructFromBinary(MessageInputStream stream) throws IOException {
+        RequestHeader header = new RequestHeader();
+        header.setAuthenticationToken(stream.readNodeId());
+        header.setTimestamp(stream.readDateTime());
+        header.setRequestHandle(stream.readUInt32());
+        header.setReturnDiagnostics(stream.readUInt32());
+        header.setAuditEntryId(stream.readString());
+        header.setTimeoutHint(stream.readUInt32());
+
+        // Skip "Null-ExtensionObject" as AdditionalHeader
+        stream.readNodeId();
+        stream.readByte();
+        return header;
+    }
+
 
     public NodeId getAuthenticationToken() {
         return authenticationToken;
@@ -2,6 +2,7 @@ package opcua.message.parts;
 
 import opcua.encoding.BinarySerializer;
 import opcua.encoding.MessageInputStream;
+import opcua.model.type.NodeId;
 
 import java.io.IOException;
 import java.time.Instant;
@@ -27,6 +28,11 @@ public class ResponseHeader {
                 .putDateTime(timestamp)
                 .putUInt32(requestHandle)
                 .putUInt32(serviceResult)
+                //Empty ServiceDiagnostics, StringTable and "Null-ExtensionObject" as AdditionalHeader
+                .putByte((byte)0x0)
+                .putInt32(-1)
+                .putNodeId(NodeId.NUMERIC_NULL)
+                .putByte((byte)0x0)
                 .get();
     }
 
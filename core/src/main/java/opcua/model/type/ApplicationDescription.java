@@ -33,7 +33,7 @@ public class ApplicationDescription {
         return new BinarySerializer()
                 .putString(applicationUri)
                 .putString(productUri)
-                .putString(applicationName)
+                .putLocalizedText(applicationName)
                 .putEnumeration(applicationType)
                 .putString(gatewayServerUri)
                 .putString(discoveryProfileUri)
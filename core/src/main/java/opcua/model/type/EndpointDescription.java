@@ -41,7 +41,7 @@ public class EndpointDescription {
         BinarySerializer serializer = new BinarySerializer()
                 .putString(endpointUrl)
                 .putBytes(applicationDescription.toBinary())
-                .putBytes(serverCertificate.getEncoded())
+                .putByteArray(serverCertificate.getEncoded())
                 .putEnumeration(securityMode)
                 .putString(securityPolicy.getUri())
                 .putUInt32(userIdentityTokens.length);
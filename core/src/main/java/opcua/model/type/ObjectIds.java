@@ -5,4 +5,5 @@ public class ObjectIds {
     public static final NodeId GET_ENDPOINTS_REQUEST = new NodeId(0,428);
     public static final NodeId GET_ENDPOINTS_RESPONSE = new NodeId(0, 431);
     public static final NodeId OPEN_SECURE_CHANNEL_REQUEST = new NodeId(0, 446);
+    public static final NodeId OPEN_SECURE_CHANNEL_RESPONSE = new NodeId(0, 449);
 }
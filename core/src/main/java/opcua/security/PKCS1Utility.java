@@ -0,0 +1,34 @@
+package opcua.security;
+
+import opcua.encoding.EncodingException;
+
+import java.util.Arrays;
+
+/**
+ * Provides functions for the PKCS#1 v1.5 encryption padding
+ */
+public class PKCS1Utility {
+    private static final int MIN_PADDING_STRING_LENGTH = 8;
+
+    /**
+     * Decodes an already decrypted PKCS#1 v1.5 block (0x00 || 0x02 || PS || 0x00 || M) as described in RFC 2437,
+     * section 9.1.2.2
+     * @param encodedBlock Block to decode, with or without the leading null byte
+     * @return The message M
+     * @throws EncodingException If the block is not PKCS#1 conforming
+     */
+    public static byte[] decode(byte[] encodedBlock) throws EncodingException {
+        int offset = encodedBlock.length > 0 && encodedBlock[0] == 0 ? 1 : 0;
+        if(encodedBlock.length < offset + 2 + MIN_PADDING_STRING_LENGTH + 1 || encodedBlock[offset] != 2) {
+            throw new EncodingException("Block is not PKCS#1 conforming");
+        }
+        int separator = offset + 1;
+        while(separator < encodedBlock.length && encodedBlock[separator] != 0) {
+            separator++;     //Skip through PS
+        }
+        if(separator == encodedBlock.length || separator - offset - 1 < MIN_PADDING_STRING_LENGTH) {
+            throw new EncodingException("Block is not PKCS#1 conforming");
+        }
+        return Arrays.copyOfRange(encodedBlock, separator + 1, encodedBlock.length);
+    }
+}
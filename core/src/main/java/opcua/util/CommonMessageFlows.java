@@ -23,13 +23,17 @@ public class CommonMessageFlows {
      */
     public static EndpointDescription[] retrieveEndpointDescriptions(Endpoint endpoint) throws TransportException {
         TransportContext transportContext = TcpClientUtil.initializeTcpTransportConnection(endpoint);
-        SecureChannelContext secureChannelContext = SecureChannelUtil.establishSecureChannel(transportContext);
+        try {
+            SecureChannelContext secureChannelContext = SecureChannelUtil.establishSecureChannel(transportContext);
 
-        GetEndpointsRequest getEndpointsRequest = new GetEndpointsRequest(endpoint.getEndpointUrl(), new String[0], new String[0]);
-        MessageSender.sendMessage(getEndpointsRequest, secureChannelContext);
-        Message response = MessageReceiver.receiveMessage(secureChannelContext);
-        MessageUtility.throwIfUnexpectedType(response, GetEndpointsResponse.class);
+            GetEndpointsRequest getEndpointsRequest = new GetEndpointsRequest(endpoint.getEndpointUrl(), new String[0], new String[0]);
+            MessageSender.sendMessage(getEndpointsRequest, secureChannelContext);
+            Message response = MessageReceiver.receiveMessage(secureChannelContext);
+            MessageUtility.throwIfUnexpectedType(response, GetEndpointsResponse.class);
 
-        return ((GetEndpointsResponse) response).getEndpoints();
+            return ((GetEndpointsResponse) response).getEndpoints();
+        } finally {
+            transportContext.getConnection().close();
+        }
     }
 }
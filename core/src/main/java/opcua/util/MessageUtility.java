@@ -4,8 +4,10 @@ import opcua.context.Endpoint;
 import opcua.context.LocalKeyPair;
 import opcua.encoding.BinarySerializer;
 import opcua.encoding.EncodingException;
+import opcua.encoding.MessageInputStream;
 import opcua.message.ErrorMessage;
 import opcua.message.Message;
+import opcua.message.OpenSecureChannelRequest;
 import opcua.message.SecureConversationMessage;
 import opcua.message.parts.*;
 import opcua.security.CertificateUtility;
@@ -15,6 +17,7 @@ import transport.TransportException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
+import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.SignatureException;
 import java.security.cert.CertificateEncodingException;
@@ -144,6 +147,22 @@ public class MessageUtility {
                 .get();
     }
 
+    /**
+     * Decodes the client nonce from the plaintext of a signed and encrypted OPN request, e.g. one recovered by an attack
+     * @param plaintext Decrypted plaintext, starting with the sequence header
+     * @return The client nonce
+     * @throws EncodingException If the plaintext is no OpenSecureChannel request
+     */
+    public static byte[] extractClientNonce(byte[] plaintext) throws EncodingException {
+        try {
+            MessageInputStream stream = new MessageInputStream(plaintext);
+            SequenceHeader.constructFromBinary(stream);
+            return OpenSecureChannelRequest.constructFromBinary(stream).getClientNonce();
+        } catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new EncodingException("Unable to decode OpenSecureChannel request", e);
+        }
+    }
+
 
     /* Functions to simplify message checks */
 
@@ -0,0 +1,92 @@
+package reporting.entry;
+
+import java.util.Arrays;
+
+/**
+ * Entry for a histogram. Every bin is printed as one line with its range, count and a bar.
+ */
+public class HistogramEntry extends LeafEntry {
+    private static final int BAR_WIDTH = 40;
+
+    private final String key;
+    private final String unit;
+    private final long[] lowerBounds;
+    private final long[] counts;
+
+    /**
+     * Constructor
+     * @param key Name of the histogram
+     * @param unit Unit of the values
+     * @param lowerBounds Inclusive lower bound of each bin, in ascending order. A bin ends where the next one begins,
+     *                    the last bin is unbounded.
+     * @param counts Number of values in each bin
+     */
+    public HistogramEntry(String key, String unit, long[] lowerBounds, long[] counts) {
+        if(lowerBounds.length != counts.length) {
+            throw new IllegalArgumentException("Number of bounds and counts differ");
+        }
+        this.key = key;
+        this.unit = unit;
+        this.lowerBounds = lowerBounds;
+        this.counts = counts;
+    }
+
+    /**
+     * Creates a histogram with bins of equal width
+     * @param key Name of the histogram
+     * @param unit Unit of the values
+     * @param samples The values
+     * @param binCount Maximum number of bins
+     * @return The histogram
+     */
+    public static HistogramEntry ofSamples(String key, String unit, long[] samples, int binCount) {
+        if(samples.length == 0) {
+            return new HistogramEntry(key, unit, new long[0], new long[0]);
+        }
+        long min = Arrays.stream(samples).min().getAsLong();
+        long max = Arrays.stream(samples).max().getAsLong();
+        long width = Math.max(1, (max - min) / binCount + 1);
+        int bins = (int) ((max - min) / width) + 1;
+        long[] lowerBounds = new long[bins];
+        long[] counts = new long[bins];
+        for(int i=0; i<bins; i++) {
+            lowerBounds[i] = min + i * width;
+        }
+        for(long sample : samples) {
+            counts[(int) ((sample - min) / width)]++;
+        }
+        return new HistogramEntry(key, unit, lowerBounds, counts);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public long[] getLowerBounds() {
+        return lowerBounds;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(key).append(" [").append(unit).append("]:\n");
+        if(counts.length == 0) {
+            return sb.append("    no values\n").toString();
+        }
+        long maxCount = Math.max(1, Arrays.stream(counts).max().getAsLong());
+        for(int i=0; i<counts.length; i++) {
+            String upper = i + 1 < lowerBounds.length ? Long.toString(lowerBounds[i + 1]) : "";
+            sb.append(String.format("    [%d, %s) %d ", lowerBounds[i], upper, counts[i]))
+                    .append("#".repeat((int) (counts[i] * BAR_WIDTH / maxCount)))
+                    .append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Connection that additionally supports non-blocking operations. The returned futures may be completed on an I/O
+ * thread, so dependent actions must not block.
+ */
+public interface AsyncConnection extends Connection {
+    CompletableFuture<Void> initializeAsync();
+    CompletableFuture<Void> sendDataAsync(byte[] data);
+
+    /**
+     * Sends the remaining bytes of several buffers as one message with a gathering write, without copying them into a
+     * single array
+     * @param buffers The buffers, which must not be modified until the future completes
+     * @return Future that completes when all buffers were written
+     */
+    CompletableFuture<Void> sendDataAsync(ByteBuffer... buffers);
+
+    /**
+     * Receives data from the server
+     * @param length How much data to receive
+     * @return Future that completes with length bytes, or fewer if the server closed the connection
+     */
+    CompletableFuture<byte[]> receiveDataAsync(int length);
+}
@@ -0,0 +1,16 @@
+package transport;
+
+import opcua.message.Message;
+
+/**
+ * Connection that decodes the received data into messages itself. MessageReceiver takes the messages from such a
+ * connection instead of reading and decoding the raw data.
+ */
+public interface MessageConnection extends Connection {
+    /**
+     * Receives the next message. Blocks until a message is complete.
+     * @return The message
+     * @throws TransportException
+     */
+    Message receiveMessage() throws TransportException;
+}
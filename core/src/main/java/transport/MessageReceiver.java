@@ -1,6 +1,7 @@
 package transport;
 
 import opcua.encoding.*;
+import opcua.message.ErrorMessage;
 import opcua.message.Message;
 import opcua.message.parts.*;
 import opcua.security.MessageSecurityMode;
@@ -10,6 +11,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Helper class for the reception of messages
@@ -35,6 +38,9 @@ public class MessageReceiver {
      * @throws TransportException
      */
     public static Message receiveMessage(Connection connection, MessageSecurityMode securityMode) throws TransportException {
+        if(connection instanceof MessageConnection) {
+            return ((MessageConnection) connection).receiveMessage();
+        }
         try {
             byte[] msgHeader = connection.receiveData(8);
             MessageType messageType = MessageType.fromIdentifier(Arrays.copyOfRange(msgHeader, 0, 3));
@@ -75,4 +81,111 @@ public class MessageReceiver {
             throw new TransportException(e);
         }
     }
+
+    /**
+     * Fast path for oracles that only need the error code of a response. Reads the message header and, for an error
+     * message, the 4 byte error code, but not the reason or any other body. A MessageConnection has already decoded the
+     * whole message, so its error message is returned as is.
+     * @param connection Connection to server
+     * @return Error message with the error code and without a reason, or null if the response is not an error message
+     * @throws TransportException
+     */
+    public static ErrorMessage receiveErrorCode(Connection connection) throws TransportException {
+        if(connection instanceof MessageConnection) {
+            Message message = ((MessageConnection) connection).receiveMessage();
+            return message instanceof ErrorMessage ? (ErrorMessage) message : null;
+        }
+        byte[] msgHeader = connection.receiveData(8);
+        if(msgHeader.length < 8) {
+            throw new TransportException("Connection closed before the message header was received");
+        }
+        MessageType messageType;
+        try {
+            messageType = MessageType.fromIdentifier(Arrays.copyOfRange(msgHeader, 0, 3));
+        } catch (IllegalArgumentException e) {
+            throw new TransportException(e);
+        }
+        if(messageType != MessageType.ERR) {
+            return null;
+        }
+        byte[] errorCode = connection.receiveData(4);
+        if(errorCode.length < 4) {
+            throw new TransportException("Connection closed before the error code was received");
+        }
+        return new ErrorMessage(DataTypeConverter.bytesToUInt32LE(errorCode), null);
+    }
+
+    /**
+     * Receives a message without blocking, see receiveMessage
+     * @param connection Connection to server
+     * @param securityMode Security mode for decryption/verification (only NONE is supported thus far)
+     * @return Future that completes with the received message
+     */
+    public static CompletableFuture<Message> receiveMessageAsync(AsyncConnection connection, MessageSecurityMode securityMode) {
+        return connection.receiveDataAsync(8).thenCompose(msgHeader -> {
+            if(msgHeader.length < 8) {
+                throw new CompletionException(new TransportException("Connection closed before the message header was received"));
+            }
+            MessageType messageType = MessageType.fromIdentifier(Arrays.copyOfRange(msgHeader, 0, 3));
+            long chunkSize = DataTypeConverter.bytesToUInt32LE(Arrays.copyOfRange(msgHeader, 4, 8));
+
+            if(messageType.isConnectionProtocolMessage()) {
+                return connection.receiveDataAsync((int) chunkSize - 8).thenApply(body -> {
+                    try {
+                        return Message.constructFromBinary(messageType, new MessageInputStream(new ByteArrayInputStream(body)));
+                    } catch (EncodingException e) {
+                        throw new CompletionException(new TransportException(e));
+                    }
+                });
+            }
+            if(securityMode == MessageSecurityMode.SIGN || securityMode == MessageSecurityMode.SIGN_AND_ENCRYPT) {
+                throw new CompletionException(new TransportException("Not supported yet"));
+            }
+            return receiveChunksAsync(connection, new PlainChunkAssembler(), msgHeader);
+        });
+    }
+
+    /**
+     * Receives the body of the chunk whose header was received and the following chunks until the message is complete
+     */
+    private static CompletableFuture<Message> receiveChunksAsync(AsyncConnection connection, ChunkAssembler chunkAssembler, byte[] msgHeader) {
+        long chunkSize = DataTypeConverter.bytesToUInt32LE(Arrays.copyOfRange(msgHeader, 4, 8));
+        return connection.receiveDataAsync((int) chunkSize - 8).thenCompose(body -> {
+            try {
+                byte[] chunk = Arrays.copyOf(msgHeader, 8 + body.length);
+                System.arraycopy(body, 0, chunk, 8, body.length);
+                chunkAssembler.putChunk(chunk);
+                if(!chunkAssembler.moreChunksRequired()) {
+                    return CompletableFuture.completedFuture(chunkAssembler.retrieveMessage());
+                }
+            } catch (EncodingException e) {
+                throw new CompletionException(new TransportException(e));
+            }
+            return connection.receiveDataAsync(8)
+                    .thenCompose(nextHeader -> receiveChunksAsync(connection, chunkAssembler, nextHeader));
+        });
+    }
+
+    /**
+     * Receives only the error code without blocking, see receiveErrorCode
+     * @param connection Connection to server
+     * @return Future that completes with an error message without a reason, or null if the response is not an error
+     *         message
+     */
+    public static CompletableFuture<ErrorMessage> receiveErrorCodeAsync(AsyncConnection connection) {
+        return connection.receiveDataAsync(8).thenCompose(msgHeader -> {
+            if(msgHeader.length < 8) {
+                throw new CompletionException(new TransportException("Connection closed before the message header was received"));
+            }
+            if(MessageType.fromIdentifier(Arrays.copyOfRange(msgHeader, 0, 3)) != MessageType.ERR) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return connection.receiveDataAsync(4).thenApply(errorCode -> {
+                if(errorCode.length < 4) {
+                    throw new CompletionException(new TransportException("Connection closed before the error code was received"));
+                }
+                return new ErrorMessage(DataTypeConverter.bytesToUInt32LE(errorCode), null);
+            });
+        });
+    }
 }
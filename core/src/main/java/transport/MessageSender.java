@@ -22,10 +22,18 @@ public class MessageSender {
      * @throws TransportException
      */
     public static void sendMessage(ConnectionProtocolMessage message, Connection connection) throws TransportException {
+        connection.sendData(encode(message));
+    }
+
+    /**
+     * Encodes an unsecured connection protocol message including its header
+     * @param message The message
+     * @return The bytes to send
+     */
+    public static byte[] encode(ConnectionProtocolMessage message) {
         byte[] body = message.toBinary();
         byte[] header = new ConnectionProtocolMessageHeader(message.getMessageType(), body.length + 8).toBinary();
-        byte[] payload = new BinarySerializer().putBytes(header).putBytes(body).get();
-        connection.sendData(payload);
+        return new BinarySerializer().putBytes(header).putBytes(body).get();
     }
 
     /**
@@ -0,0 +1,343 @@
+package transport.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import opcua.message.Message;
+import opcua.security.MessageSecurityMode;
+import transport.MessageConnection;
+import transport.TransportException;
+import transport.tcp.ConnectionLifecycleManager;
+
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Connection to a server via a Netty channel. The pipeline splits the received bytes into chunks (OpcUaFrameDecoder)
+ * and decodes them into messages (OpcUaMessageDecoder), which are taken with receiveMessage or receiveMessageAsync.
+ * As the data is decoded by the pipeline, the raw receiveData is not supported; MessageReceiver takes the decoded
+ * messages instead.
+ */
+public class NettyConnection implements MessageConnection {
+    private final String hostName;
+    private final int port;
+    private final int timeout;
+    private final MessageSecurityMode securityMode;
+    private final NettyTransport transport;
+    private ConnectionLifecycleManager lifecycleManager = ConnectionLifecycleManager.shared();
+
+    private volatile Channel channel;
+    private boolean tracked;
+    private volatile long sendCompletedTime;
+    private volatile long firstByteTime;
+
+    // State below is only accessed on the event loop of the channel
+    private final Deque<Message> receivedMessages = new ArrayDeque<>();
+    private final Deque<CompletableFuture<Message>> pendingReceives = new ArrayDeque<>();
+    private TransportException failure;
+
+    /**
+     * Constructor
+     * @param hostName Host name of the server to connect to
+     * @param port Port of the server to connect to
+     * @param timeout Timeout in milliseconds for every receive
+     * @param securityMode Security mode for decryption/verification (only NONE is supported thus far)
+     * @param transport Transport that provides the event loop
+     */
+    public NettyConnection(String hostName, int port, int timeout, MessageSecurityMode securityMode, NettyTransport transport) {
+        this.hostName = hostName;
+        this.port = port;
+        this.timeout = timeout;
+        this.securityMode = securityMode;
+        this.transport = transport;
+    }
+
+    /**
+     * Establishes the connection. May block the caller while the lifecycle manager throttles new connections.
+     */
+    public CompletableFuture<Void> initializeAsync() {
+        try {
+            lifecycleManager.beforeConnect();
+        } catch (TransportException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        transport.bootstrap()
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(
+                                new FirstByteTimestamp(),
+                                new OpcUaFrameDecoder(),
+                                new OpcUaMessageDecoder(securityMode),
+                                new MessageHandler());
+                    }
+                })
+                .connect(hostName, port)
+                .addListener((ChannelFuture connectFuture) -> {
+                    if(connectFuture.isSuccess()) {
+                        synchronized (this) {
+                            channel = connectFuture.channel();
+                            tracked = true;
+                        }
+                        future.complete(null);
+                    } else {
+                        lifecycleManager.connectFailed(connectFuture.cause());
+                        future.completeExceptionally(new TransportException(connectFuture.cause()));
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * Sends data without copying it
+     * @param data The data to send
+     * @return Future that completes when the data was written
+     */
+    public CompletableFuture<Void> sendDataAsync(byte[] data) {
+        return write(Unpooled.wrappedBuffer(data));
+    }
+
+    /**
+     * Sends the remaining bytes of several buffers as one message, see AsyncConnection.sendDataAsync. The buffers are
+     * wrapped into one composite buffer and written with a gathering write.
+     * @param buffers The buffers, which must not be modified until the future completes
+     * @return Future that completes when all buffers were written
+     */
+    public CompletableFuture<Void> sendDataAsync(ByteBuffer... buffers) {
+        return write(Unpooled.wrappedBuffer(buffers));
+    }
+
+    private CompletableFuture<Void> write(ByteBuf data) {
+        Channel channel = this.channel;
+        if(channel == null || !channel.isActive()) {
+            data.release();
+            return CompletableFuture.failedFuture(new TransportException("Connection not active"));
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        channel.writeAndFlush(data).addListener((ChannelFuture writeFuture) -> {
+            if(writeFuture.isSuccess()) {
+                sendCompletedTime = System.nanoTime();
+                future.complete(null);
+            } else {
+                future.completeExceptionally(new TransportException(writeFuture.cause()));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Takes the next decoded message
+     * @return Future that completes with the message, or fails after the timeout or if the connection is closed
+     */
+    public CompletableFuture<Message> receiveMessageAsync() {
+        Channel channel = this.channel;
+        if(channel == null) {
+            return CompletableFuture.failedFuture(new TransportException("Connection not active"));
+        }
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        channel.eventLoop().execute(() -> {
+            if(!receivedMessages.isEmpty()) {
+                future.complete(receivedMessages.pollFirst());
+            } else if(failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                pendingReceives.addLast(future);
+                channel.eventLoop().schedule(() -> {
+                    if(pendingReceives.remove(future)) {
+                        future.completeExceptionally(new TransportException(new SocketTimeoutException("Receive timed out")));
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Records when the first bytes after a send arrive, before they are decoded
+     */
+    private class FirstByteTimestamp extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if(firstByteTime - sendCompletedTime < 0) {
+                firstByteTime = System.nanoTime();
+            }
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    /**
+     * Hands decoded messages to pending receives or queues them
+     */
+    private class MessageHandler extends SimpleChannelInboundHandler<Message> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Message message) {
+            CompletableFuture<Message> pending = pendingReceives.pollFirst();
+            if(pending != null) {
+                pending.complete(message);
+            } else {
+                receivedMessages.addLast(message);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            fail(new TransportException("Connection closed"));
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail(new TransportException(cause));
+            ctx.close();
+        }
+
+        private void fail(TransportException e) {
+            if(failure == null) {
+                failure = e;
+            }
+            CompletableFuture<Message> pending;
+            while((pending = pendingReceives.pollFirst()) != null) {
+                pending.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection with the close strategy of the lifecycle manager
+     * @return Future that completes when the connection is closed
+     */
+    public CompletableFuture<Void> closeAsync() {
+        return closeAsync(lifecycleManager.getCloseStrategy() == ConnectionLifecycleManager.CloseStrategy.ABORTIVE);
+    }
+
+    /**
+     * Resets the connection, see ClientTcpConnection.abort
+     * @return Future that completes when the connection is closed
+     */
+    public CompletableFuture<Void> abortAsync() {
+        return closeAsync(true);
+    }
+
+    private CompletableFuture<Void> closeAsync(boolean abortive) {
+        Channel channel = this.channel;
+        if(channel == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if(abortive && channel.isActive()) {
+            channel.config().setOption(ChannelOption.SO_LINGER, 0);
+        }
+        int localPort = channel.localAddress() instanceof InetSocketAddress
+                ? ((InetSocketAddress) channel.localAddress()).getPort() : -1;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        channel.close().addListener(closeFuture -> {
+            release(!abortive, localPort);
+            future.complete(null);
+        });
+        return future;
+    }
+
+    /**
+     * Returns the port of the connection to the lifecycle manager, once
+     */
+    private synchronized void release(boolean graceful, int localPort) {
+        if(tracked) {
+            tracked = false;
+            lifecycleManager.closed(graceful, localPort);
+        }
+    }
+
+    /**
+     * Returns the time in nanoseconds from the completion of the last send until the first byte of the response was
+     * read. The resolution is limited by the latency of the event loop.
+     */
+    public long getLastResponseTime() {
+        return firstByteTime - sendCompletedTime;
+    }
+
+    public ConnectionLifecycleManager getLifecycleManager() {
+        return lifecycleManager;
+    }
+
+    /**
+     * Sets the manager that throttles and tracks this connection, must be called before initialize. Local ports are
+     * chosen by the operating system.
+     */
+    public void setLifecycleManager(ConnectionLifecycleManager lifecycleManager) {
+        this.lifecycleManager = lifecycleManager;
+    }
+
+    @Override
+    public void initialize() throws TransportException {
+        await(initializeAsync());
+    }
+
+    @Override
+    public void sendData(byte[] data) throws TransportException {
+        await(sendDataAsync(data));
+    }
+
+    /**
+     * Not supported, the received data is decoded by the pipeline
+     * @throws TransportException Always
+     */
+    @Override
+    public byte[] receiveData(int length) throws TransportException {
+        throw new TransportException("Raw data is decoded by the pipeline, use receiveMessage");
+    }
+
+    @Override
+    public Message receiveMessage() throws TransportException {
+        return await(receiveMessageAsync());
+    }
+
+    @Override
+    public void close() throws TransportException {
+        await(closeAsync());
+    }
+
+    /**
+     * Resets the connection, see ClientTcpConnection.abort
+     * @throws TransportException
+     */
+    public void abort() throws TransportException {
+        await(abortAsync());
+    }
+
+    /**
+     * Waits for an operation. Receives time out themselves, the additional timeout guards against a stopped event
+     * loop.
+     */
+    private <T> T await(CompletableFuture<T> future) throws TransportException {
+        Channel channel = this.channel;
+        if(channel != null && channel.eventLoop().inEventLoop()) {
+            throw new IllegalStateException("Blocking operation on the event loop thread");
+        }
+        try {
+            return future.get(2L * timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof TransportException) {
+                throw (TransportException) e.getCause();
+            }
+            throw new TransportException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new TransportException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransportException(e);
+        }
+    }
+}
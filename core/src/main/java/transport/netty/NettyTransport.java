@@ -0,0 +1,81 @@
+package transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import opcua.context.StaticConfig;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+
+/**
+ * Event loop threads and channel configuration shared by Netty connections. Uses the native epoll transport on Linux
+ * if it is available and Java NIO otherwise. Received data is read into pooled direct buffers.
+ */
+public class NettyTransport implements Closeable {
+    private static final Logger logger = Logger.getRootLogger();
+
+    private static NettyTransport shared;
+
+    private final EventLoopGroup eventLoopGroup;
+    private final Bootstrap bootstrap;
+    private final boolean epoll;
+
+    /**
+     * Constructor
+     * @param threads Number of event loop threads
+     * @param timeout Connect timeout in milliseconds
+     */
+    public NettyTransport(int threads, int timeout) {
+        this.epoll = Epoll.isAvailable();
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("netty-transport", true);
+        this.eventLoopGroup = epoll ? new EpollEventLoopGroup(threads, threadFactory) : new NioEventLoopGroup(threads, threadFactory);
+        this.bootstrap = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout)
+                .option(ChannelOption.TCP_NODELAY, true);
+        logger.debug("Netty transport uses " + (epoll ? "epoll" : "NIO"));
+    }
+
+    /**
+     * Returns the transport that is shared by all Netty connections unless another one is used. It has two event loop
+     * threads and the connect timeout StaticConfig.TIMEOUT.
+     */
+    public static synchronized NettyTransport shared() {
+        if(shared == null) {
+            shared = new NettyTransport(2, StaticConfig.TIMEOUT);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns a copy of the bootstrap for a new connection
+     */
+    Bootstrap bootstrap() {
+        return bootstrap.clone();
+    }
+
+    /**
+     * Returns whether the native epoll transport is used
+     */
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    /**
+     * Stops the event loop threads, which closes all connections
+     */
+    @Override
+    public void close() {
+        eventLoopGroup.shutdownGracefully();
+    }
+}
@@ -0,0 +1,30 @@
+package transport.netty;
+
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import opcua.context.StaticConfig;
+
+import java.nio.ByteOrder;
+
+/**
+ * Splits the received bytes into OPC UA message chunks. The 8 byte header consists of the 3 byte message type, the
+ * 1 byte chunk type and the 4 byte little-endian size of the whole chunk, header included. Frames are slices of the
+ * received buffers, so no bytes are copied.
+ */
+public class OpcUaFrameDecoder extends LengthFieldBasedFrameDecoder {
+    static final int HEADER_LENGTH = 8;
+
+    /**
+     * Constructor that accepts chunks of up to StaticConfig.MAX_MESSAGE_SIZE bytes
+     */
+    public OpcUaFrameDecoder() {
+        this((int) StaticConfig.MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param maxChunkSize Maximum size of a chunk, larger chunks fail with a TooLongFrameException
+     */
+    public OpcUaFrameDecoder(int maxChunkSize) {
+        super(ByteOrder.LITTLE_ENDIAN, maxChunkSize, 4, 4, -HEADER_LENGTH, 0, true);
+    }
+}
@@ -0,0 +1,63 @@
+package transport.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import opcua.encoding.ChunkAssembler;
+import opcua.encoding.EncodingException;
+import opcua.encoding.MessageInputStream;
+import opcua.encoding.PlainChunkAssembler;
+import opcua.message.Message;
+import opcua.message.parts.MessageType;
+import opcua.security.MessageSecurityMode;
+
+import java.util.List;
+
+/**
+ * Decodes the chunks of OpcUaFrameDecoder into messages. Connection protocol messages (ACK, ERR, ...) are decoded
+ * directly, secure conversation chunks are assembled until the message is complete. Like MessageReceiver, only
+ * unsecured chunks are supported. Not sharable, as the assembly state belongs to one channel.
+ */
+public class OpcUaMessageDecoder extends MessageToMessageDecoder<ByteBuf> {
+    private final MessageSecurityMode securityMode;
+    private ChunkAssembler chunkAssembler;
+
+    /**
+     * Constructor
+     * @param securityMode Security mode for decryption/verification (only NONE is supported thus far)
+     */
+    public OpcUaMessageDecoder(MessageSecurityMode securityMode) {
+        this.securityMode = securityMode;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) throws EncodingException {
+        MessageType messageType;
+        try {
+            messageType = MessageType.fromIdentifier(ByteBufUtil.getBytes(frame, frame.readerIndex(), 3));
+        } catch (IllegalArgumentException e) {
+            throw new DecoderException("Unknown message type", e);
+        }
+
+        if(messageType.isConnectionProtocolMessage()) {
+            byte[] body = ByteBufUtil.getBytes(frame, frame.readerIndex() + OpcUaFrameDecoder.HEADER_LENGTH,
+                    frame.readableBytes() - OpcUaFrameDecoder.HEADER_LENGTH);
+            out.add(Message.constructFromBinary(messageType, new MessageInputStream(body)));
+            return;
+        }
+        if(securityMode == MessageSecurityMode.SIGN || securityMode == MessageSecurityMode.SIGN_AND_ENCRYPT) {
+            throw new DecoderException("Not supported yet");
+        }
+        if(chunkAssembler == null) {
+            chunkAssembler = new PlainChunkAssembler();
+        }
+        chunkAssembler.putChunk(ByteBufUtil.getBytes(frame));
+        if(!chunkAssembler.moreChunksRequired()) {
+            ChunkAssembler completed = chunkAssembler;
+            chunkAssembler = null;
+            out.add(completed.retrieveMessage());
+        }
+    }
+}
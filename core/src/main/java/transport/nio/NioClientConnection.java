@@ -0,0 +1,382 @@
+package transport.nio;
+
+import transport.AsyncConnection;
+import transport.TransportException;
+import transport.tcp.ConnectionLifecycleManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking connection to a server via TCP. All I/O is performed by an NioEventLoop, so a single thread can drive
+ * hundreds of connections. The blocking methods of Connection wait for the corresponding asynchronous operation and
+ * must not be called on the event loop thread.
+ * Only one receive may be pending at a time; sends are queued and written in order.
+ */
+public class NioClientConnection implements AsyncConnection, NioEventLoop.Handler {
+    private final String hostName;
+    private final int port;
+    private final int timeout;
+    private final NioEventLoop eventLoop;
+    private ConnectionLifecycleManager lifecycleManager = ConnectionLifecycleManager.shared();
+
+    // State below is only accessed on the event loop thread
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean tracked;
+    private boolean closed;
+    private CompletableFuture<Void> connectFuture;
+    private NioEventLoop.Timer connectTimer;
+    private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private ByteBuffer receiveBuffer;
+    private CompletableFuture<byte[]> receiveFuture;
+    private NioEventLoop.Timer receiveTimer;
+    private volatile long sendCompletedTime;
+    private volatile long firstByteTime;
+
+    private static class PendingWrite {
+        private final ByteBuffer[] buffers;
+        private final CompletableFuture<Void> future;
+
+        PendingWrite(ByteBuffer[] buffers, CompletableFuture<Void> future) {
+            this.buffers = buffers;
+            this.future = future;
+        }
+
+        private boolean hasRemaining() {
+            for(ByteBuffer buffer : buffers) {
+                if(buffer.hasRemaining()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param hostName Host name of the server to connect to
+     * @param port Port of the server to connect to
+     * @param timeout Timeout in milliseconds for connecting and for every receive
+     * @param eventLoop Event loop that performs the I/O
+     */
+    public NioClientConnection(String hostName, int port, int timeout, NioEventLoop eventLoop) {
+        this.hostName = hostName;
+        this.port = port;
+        this.timeout = timeout;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Establishes the connection. May block the caller while the lifecycle manager throttles new connections.
+     */
+    @Override
+    public CompletableFuture<Void> initializeAsync() {
+        try {
+            lifecycleManager.beforeConnect();
+        } catch (TransportException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            connectFuture = future;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                lifecycleManager.bind(channel.socket());
+                tracked = true;
+                if(channel.connect(new InetSocketAddress(hostName, port))) {
+                    key = eventLoop.register(channel, 0, this);
+                    completeConnect();
+                } else {
+                    key = eventLoop.register(channel, SelectionKey.OP_CONNECT, this);
+                    connectTimer = eventLoop.schedule(timeout, () -> fail(new SocketTimeoutException("Connect timed out")));
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> sendDataAsync(byte[] data) {
+        return sendDataAsync(ByteBuffer.wrap(data));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendDataAsync(ByteBuffer... buffers) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            if(!isActive()) {
+                future.completeExceptionally(new TransportException("Connection not active"));
+                return;
+            }
+            pendingWrites.addLast(new PendingWrite(buffers, future));
+            flush();
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> receiveDataAsync(int length) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            if(!isActive()) {
+                future.completeExceptionally(new TransportException("Connection not active"));
+                return;
+            }
+            if(receiveFuture != null) {
+                future.completeExceptionally(new IllegalStateException("Another receive is pending"));
+                return;
+            }
+            receiveBuffer = ByteBuffer.allocate(length);
+            receiveFuture = future;
+            receiveTimer = eventLoop.schedule(timeout, () -> fail(new SocketTimeoutException("Receive timed out")));
+            read();
+        });
+        return future;
+    }
+
+    @Override
+    public void handleReady(SelectionKey key) {
+        if(key.isConnectable()) {
+            try {
+                if(channel.finishConnect()) {
+                    completeConnect();
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+        }
+        if(key.isValid() && key.isWritable()) {
+            flush();
+        }
+        if(key.isValid() && key.isReadable()) {
+            read();
+        }
+    }
+
+    private boolean isActive() {
+        return !closed && connectFuture != null && connectFuture.isDone() && !connectFuture.isCompletedExceptionally();
+    }
+
+    private void completeConnect() {
+        if(connectTimer != null) {
+            connectTimer.cancel();
+        }
+        connectFuture.complete(null);
+        updateInterest();
+    }
+
+    private void flush() {
+        try {
+            while(!pendingWrites.isEmpty()) {
+                PendingWrite write = pendingWrites.peekFirst();
+                channel.write(write.buffers);
+                if(write.hasRemaining()) {
+                    break;
+                }
+                pendingWrites.removeFirst();
+                sendCompletedTime = System.nanoTime();
+                write.future.complete(null);
+            }
+            updateInterest();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void read() {
+        if(receiveFuture == null) {
+            return;
+        }
+        try {
+            int count = 0;
+            while(receiveBuffer.hasRemaining() && (count = channel.read(receiveBuffer)) > 0) {
+                if(firstByteTime - sendCompletedTime < 0) {
+                    firstByteTime = System.nanoTime();
+                }
+            }
+            if(!receiveBuffer.hasRemaining()) {
+                completeReceive(receiveBuffer.array());
+            } else if(count < 0) {
+                // Like InputStream.readNBytes, return what was received before the server closed the connection
+                completeReceive(Arrays.copyOf(receiveBuffer.array(), receiveBuffer.position()));
+            }
+            updateInterest();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void completeReceive(byte[] data) {
+        CompletableFuture<byte[]> future = receiveFuture;
+        receiveTimer.cancel();
+        receiveFuture = null;
+        receiveBuffer = null;
+        future.complete(data);
+    }
+
+    private void updateInterest() {
+        if(key == null || !key.isValid() || connectFuture == null || !connectFuture.isDone()) {
+            return;
+        }
+        int ops = 0;
+        if(!pendingWrites.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if(receiveFuture != null) {
+            ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+     * Fails all pending operations and resets the connection
+     */
+    private void fail(Throwable cause) {
+        TransportException e = cause instanceof TransportException ? (TransportException) cause : new TransportException(cause);
+        if(connectFuture != null) {
+            connectFuture.completeExceptionally(e);
+        }
+        closeChannel(true, e);
+    }
+
+    private void closeChannel(boolean abortive, Throwable cause) {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        for(PendingWrite write : pendingWrites) {
+            write.future.completeExceptionally(cause);
+        }
+        pendingWrites.clear();
+        if(receiveFuture != null) {
+            receiveTimer.cancel();
+            receiveFuture.completeExceptionally(cause);
+            receiveFuture = null;
+        }
+        if(connectTimer != null) {
+            connectTimer.cancel();
+        }
+        boolean established = connectFuture != null && connectFuture.isDone() && !connectFuture.isCompletedExceptionally();
+        int localPort = channel != null ? channel.socket().getLocalPort() : -1;
+        if(channel != null) {
+            try {
+                if(abortive && channel.isConnected()) {
+                    channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+                }
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+        if(tracked && established) {
+            tracked = false;
+            lifecycleManager.closed(!abortive, localPort);
+        } else if(tracked || connectFuture != null) {
+            tracked = false;
+            lifecycleManager.connectFailed(cause);
+        }
+    }
+
+    /**
+     * Closes the connection with the close strategy of the lifecycle manager
+     * @return Future that completes when the connection is closed
+     */
+    public CompletableFuture<Void> closeAsync() {
+        return closeAsync(lifecycleManager.getCloseStrategy() == ConnectionLifecycleManager.CloseStrategy.ABORTIVE);
+    }
+
+    /**
+     * Resets the connection, see ClientTcpConnection.abort
+     * @return Future that completes when the connection is closed
+     */
+    public CompletableFuture<Void> abortAsync() {
+        return closeAsync(true);
+    }
+
+    private CompletableFuture<Void> closeAsync(boolean abortive) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            closeChannel(abortive, new ClosedChannelException());
+            future.complete(null);
+        });
+        return future;
+    }
+
+    /**
+     * Returns the time in nanoseconds from the completion of the last send until the first byte of the response was
+     * read. The resolution is limited by the latency of the event loop.
+     */
+    public long getLastResponseTime() {
+        return firstByteTime - sendCompletedTime;
+    }
+
+    public ConnectionLifecycleManager getLifecycleManager() {
+        return lifecycleManager;
+    }
+
+    /**
+     * Sets the manager that throttles and tracks this connection, must be called before initialize
+     */
+    public void setLifecycleManager(ConnectionLifecycleManager lifecycleManager) {
+        this.lifecycleManager = lifecycleManager;
+    }
+
+    @Override
+    public void initialize() throws TransportException {
+        await(initializeAsync());
+    }
+
+    @Override
+    public void sendData(byte[] data) throws TransportException {
+        await(sendDataAsync(data));
+    }
+
+    @Override
+    public byte[] receiveData(int length) throws TransportException {
+        return await(receiveDataAsync(length));
+    }
+
+    @Override
+    public void close() throws TransportException {
+        await(closeAsync());
+    }
+
+    /**
+     * Waits for an operation. The operations time out themselves, the additional timeout only guards against a
+     * stopped event loop.
+     */
+    private <T> T await(CompletableFuture<T> future) throws TransportException {
+        if(eventLoop.inEventLoop()) {
+            throw new IllegalStateException("Blocking operation on the event loop thread");
+        }
+        try {
+            return future.get(2L * timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof TransportException) {
+                throw (TransportException) e.getCause();
+            }
+            throw new TransportException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new TransportException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransportException(e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package transport.nio;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread that drives any number of non-blocking channels with a selector. Channels and their readiness
+ * handlers, tasks and timers are all processed on this thread, so their state needs no further synchronization.
+ */
+public class NioEventLoop implements Closeable {
+    private static final Logger logger = Logger.getRootLogger();
+
+    private static NioEventLoop shared;
+
+    /**
+     * Reacts to the readiness of a registered channel, called on the event loop thread
+     */
+    interface Handler {
+        void handleReady(SelectionKey key);
+    }
+
+    /**
+     * Task that runs once after a delay unless it is cancelled
+     */
+    public static class Timer {
+        private final long deadline;
+        private final Runnable task;
+        private boolean cancelled;
+
+        private Timer(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Prevents the task from running, must be called on the event loop thread
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(Comparator.comparingLong((Timer timer) -> timer.deadline));
+    private volatile boolean running = true;
+
+    /**
+     * Constructor, starts the event loop thread
+     * @param name Name of the thread
+     * @throws IOException If no selector could be opened
+     */
+    public NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the event loop that is shared by all connections unless another one is used
+     * @throws IOException If no selector could be opened
+     */
+    public static synchronized NioEventLoop shared() throws IOException {
+        if(shared == null || !shared.running) {
+            shared = new NioEventLoop("nio-event-loop");
+        }
+        return shared;
+    }
+
+    /**
+     * Runs a task on the event loop thread
+     * @param task The task
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if(!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs a task on the event loop thread after a delay. Must be called on the event loop thread.
+     * @param delay Delay in milliseconds
+     * @param task The task
+     * @return Timer to cancel the task
+     */
+    public Timer schedule(long delay, Runnable task) {
+        Timer timer = new Timer(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay), task);
+        timers.add(timer);
+        return timer;
+    }
+
+    /**
+     * Registers a channel with the selector. Must be called on the event loop thread.
+     */
+    SelectionKey register(SelectableChannel channel, int interestOps, Handler handler) throws IOException {
+        return channel.register(selector, interestOps, handler);
+    }
+
+    /**
+     * Returns whether the calling thread is the event loop thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    private void run() {
+        while(running) {
+            try {
+                long timeout = nextTimerDelay();
+                if(!tasks.isEmpty() || timeout == 0) {
+                    selector.selectNow();
+                } else if(timeout < 0) {
+                    selector.select();
+                } else {
+                    selector.select(timeout);
+                }
+                for(SelectionKey key : selector.selectedKeys()) {
+                    if(key.isValid()) {
+                        ((Handler) key.attachment()).handleReady(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+                runTasks();
+                runTimers();
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Error in NIO event loop: " + e.getMessage());
+            }
+        }
+        try {
+            for(SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close selector: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the milliseconds until the next timer is due, 0 if one is due and -1 if there is none
+     */
+    private long nextTimerDelay() {
+        while(!timers.isEmpty() && timers.peek().cancelled) {
+            timers.poll();
+        }
+        if(timers.isEmpty()) {
+            return -1;
+        }
+        long delay = timers.peek().deadline - System.nanoTime();
+        return delay <= 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Error in NIO task: " + e.getMessage());
+            }
+        }
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+        while(!timers.isEmpty() && timers.peek().deadline - now <= 0) {
+            Timer timer = timers.poll();
+            if(!timer.cancelled) {
+                timer.task.run();
+            }
+        }
+    }
+
+    /**
+     * Stops the event loop thread and closes all registered channels
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -18,6 +18,8 @@ public class ClientTcpConnection implements Connection {
     private final String hostName;
     private final int port;
     private final int timeout;
+    private ConnectionLifecycleManager lifecycleManager = ConnectionLifecycleManager.shared();
+    private boolean tracked;
 
     /**
      * Constructor
@@ -36,12 +38,34 @@ public class ClientTcpConnection implements Connection {
      * @throws TransportException
      */
     public void initialize() throws TransportException {
-        socket = new Socket();
+        ConnectionLifecycleManager lifecycleManager = this.lifecycleManager;
+        lifecycleManager.beforeConnect();
+        Socket socket = null;
         try {
+            socket = createSocket();
+            lifecycleManager.bind(socket);
             socket.connect(new InetSocketAddress(hostName, port), timeout);
+            this.socket = socket;
         } catch (IOException e) {
+            lifecycleManager.connectFailed(e);
+            try {
+                if(socket != null) {
+                    socket.close();
+                }
+            } catch (IOException ignored) {}
             throw new TransportException(e);
         }
+        synchronized (this) {
+            tracked = true;
+        }
+    }
+
+    /**
+     * Creates the unconnected socket of the connection
+     * @throws IOException
+     */
+    protected Socket createSocket() throws IOException {
+        return new Socket();
     }
 
     /**
@@ -81,14 +105,61 @@ public class ClientTcpConnection implements Connection {
     }
 
     /**
-     * Closes the connection
+     * Closes the connection with the close strategy of the lifecycle manager
      * @throws TransportException
      */
     public void close() throws TransportException {
+        close(lifecycleManager.getCloseStrategy() == ConnectionLifecycleManager.CloseStrategy.ABORTIVE);
+    }
+
+    /**
+     * Resets the connection instead of closing it gracefully, so that neither side keeps the socket in TIME_WAIT and
+     * unread data of the server is discarded
+     * @throws TransportException
+     */
+    public void abort() throws TransportException {
+        close(true);
+    }
+
+    private void close(boolean abortive) throws TransportException {
+        int localPort = socket.getLocalPort();
         try {
+            if(abortive && !socket.isClosed()) {
+                socket.setSoLinger(true, 0);
+            }
             socket.close();
         } catch (IOException e) {
             throw new TransportException(e);
+        } finally {
+            release(!abortive, localPort);
         }
     }
+
+    /**
+     * Returns the port of the connection to the lifecycle manager, once
+     */
+    private synchronized void release(boolean graceful, int localPort) {
+        if(tracked) {
+            tracked = false;
+            lifecycleManager.closed(graceful, localPort);
+        }
+    }
+
+    /**
+     * Returns the timeout in milliseconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public ConnectionLifecycleManager getLifecycleManager() {
+        return lifecycleManager;
+    }
+
+    /**
+     * Sets the manager that throttles and tracks this connection, must be called before initialize
+     */
+    public void setLifecycleManager(ConnectionLifecycleManager lifecycleManager) {
+        this.lifecycleManager = lifecycleManager;
+    }
 }
@@ -0,0 +1,317 @@
+package transport.tcp;
+
+import org.apache.log4j.Logger;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+import transport.TransportException;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Manages the life cycle of client TCP connections, so that campaigns with one connection per query do not exhaust the
+ * ephemeral ports of the host. Every connection that is closed gracefully by the client is assumed to occupy its local
+ * port in TIME_WAIT for timeWait. If the live connections and the connections in TIME_WAIT reach highWatermark of the
+ * local port range, new connections are throttled until enough ports become free again, instead of failing with
+ * "address not available" or stalling in connect, which would distort timing measurements.
+ * Connections can be closed gracefully or reset abortively, which skips TIME_WAIT. Optionally, local ports are
+ * assigned round robin across the whole port range instead of by the operating system. Ports that are still in
+ * TIME_WAIT are skipped then, and connects that collide with an old connection on the same port (EADDRNOTAVAIL, since
+ * the ports are bound with SO_REUSEADDR) are counted.
+ */
+public class ConnectionLifecycleManager {
+    private static final Logger logger = Logger.getRootLogger();
+    private static final Path PORT_RANGE_FILE = Path.of("/proc/sys/net/ipv4/ip_local_port_range");
+    private static final int DEFAULT_PORT_RANGE_START = 32768;
+    private static final int DEFAULT_PORT_RANGE_END = 60999;
+    private static final int MAX_BIND_ATTEMPTS = 16;
+
+    private static ConnectionLifecycleManager shared;
+
+    /**
+     * How connections are closed
+     */
+    public enum CloseStrategy {
+        /**
+         * FIN handshake, the side that closes first keeps the port in TIME_WAIT
+         */
+        GRACEFUL,
+        /**
+         * RST with SO_LINGER 0, no TIME_WAIT on either side
+         */
+        ABORTIVE
+    }
+
+    private final int portRangeStart;
+    private final int portRangeEnd;
+    private final Deque<TimeWait> timeWaits = new ArrayDeque<>();
+    private final Map<Integer, Integer> timeWaitPorts = new HashMap<>();
+    private final LongAdder openedCount = new LongAdder();
+    private final LongAdder throttledCount = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder bindFailureCount = new LongAdder();
+    private final LongAdder collisionCount = new LongAdder();
+    private CloseStrategy closeStrategy = CloseStrategy.GRACEFUL;
+    private boolean spreadLocalPorts;
+    private long timeWaitNanos = TimeUnit.SECONDS.toNanos(60);
+    private double highWatermark = 0.8;
+    private int liveCount;
+    private int nextPort;
+
+    /**
+     * Constructor
+     * @param portRangeStart First port of the local port range
+     * @param portRangeEnd Last port of the local port range
+     */
+    public ConnectionLifecycleManager(int portRangeStart, int portRangeEnd) {
+        if(portRangeStart < 1 || portRangeEnd > 65535 || portRangeStart > portRangeEnd) {
+            throw new IllegalArgumentException("Invalid port range");
+        }
+        this.portRangeStart = portRangeStart;
+        this.portRangeEnd = portRangeEnd;
+        this.nextPort = portRangeStart;
+    }
+
+    /**
+     * Returns the manager that is used by all connections unless another one is set. Its port range is the ephemeral
+     * port range of the host (ip_local_port_range on Linux).
+     */
+    public static synchronized ConnectionLifecycleManager shared() {
+        if(shared == null) {
+            int start = DEFAULT_PORT_RANGE_START;
+            int end = DEFAULT_PORT_RANGE_END;
+            try {
+                String[] range = Files.readString(PORT_RANGE_FILE).trim().split("\\s+");
+                start = Integer.parseInt(range[0]);
+                end = Integer.parseInt(range[1]);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Unable to read local port range, using " + start + "-" + end);
+            }
+            shared = new ConnectionLifecycleManager(start, end);
+        }
+        return shared;
+    }
+
+    /**
+     * Reserves a port for a new connection. Blocks while the port budget is exhausted. Every call must be followed by
+     * a call of connectFailed or closed.
+     * @throws TransportException If the thread was interrupted while waiting
+     */
+    public synchronized void beforeConnect() throws TransportException {
+        long start = 0;
+        try {
+            while(liveCount + expireTimeWaits() >= getPortBudget()) {
+                if(start == 0) {
+                    start = System.nanoTime();
+                    throttledCount.increment();
+                    logger.debug("Local ports exhausted, throttling new connections");
+                }
+                TimeWait oldest = timeWaits.peekFirst();
+                long waitNanos = oldest != null ? Math.max(oldest.expiry - System.nanoTime(), 1) : TimeUnit.MILLISECONDS.toNanos(100);
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransportException("Interrupted while waiting for a free local port", e);
+        } finally {
+            if(start != 0) {
+                throttledNanos.add(System.nanoTime() - start);
+            }
+        }
+        liveCount++;
+        openedCount.increment();
+    }
+
+    /**
+     * Binds an unconnected socket to the next free local port if local ports are spread, otherwise does nothing
+     * @param socket The socket
+     * @throws IOException
+     */
+    public void bind(Socket socket) throws IOException {
+        if(!spreadLocalPorts) {
+            return;
+        }
+        socket.setReuseAddress(true);
+        for(int i=0; i<MAX_BIND_ATTEMPTS; i++) {
+            try {
+                socket.bind(new InetSocketAddress(nextLocalPort()));
+                return;
+            } catch (BindException e) {
+                bindFailureCount.increment();
+            }
+        }
+        // Leave the choice to the operating system
+        logger.debug("No free local port found after " + MAX_BIND_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Returns the next port of the range that is not in TIME_WAIT, or the next port if all of them are
+     */
+    private synchronized int nextLocalPort() {
+        expireTimeWaits();
+        int rangeSize = portRangeEnd - portRangeStart + 1;
+        int port = nextPort;
+        for(int i=0; i<rangeSize && timeWaitPorts.containsKey(port); i++) {
+            port = port == portRangeEnd ? portRangeStart : port + 1;
+        }
+        nextPort = port == portRangeEnd ? portRangeStart : port + 1;
+        return port;
+    }
+
+    /**
+     * Releases the port of a connection that could not be established and counts the failure as collision if the
+     * connect failed with a BindException, i.e. the bound local port is still used by a connection to the same server
+     * @param cause The reason of the failure, may be null
+     */
+    public synchronized void connectFailed(Throwable cause) {
+        liveCount--;
+        for(Throwable t = cause; t != null; t = t.getCause()) {
+            if(t instanceof BindException) {
+                collisionCount.increment();
+                logger.debug("Local port collision: " + t.getMessage());
+                break;
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Releases the port of a closed connection
+     * @param graceful Whether the connection was closed gracefully, i.e. its port stays in TIME_WAIT
+     * @param localPort Local port of the connection, or -1 if it is unknown
+     */
+    public synchronized void closed(boolean graceful, int localPort) {
+        liveCount--;
+        if(graceful) {
+            timeWaits.addLast(new TimeWait(System.nanoTime() + timeWaitNanos, localPort));
+            if(localPort > 0) {
+                timeWaitPorts.merge(localPort, 1, Integer::sum);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Removes the expired TIME_WAIT entries
+     * @return Number of ports that are still in TIME_WAIT
+     */
+    private int expireTimeWaits() {
+        long now = System.nanoTime();
+        while(!timeWaits.isEmpty() && timeWaits.peekFirst().expiry - now <= 0) {
+            TimeWait timeWait = timeWaits.removeFirst();
+            if(timeWait.port > 0) {
+                timeWaitPorts.computeIfPresent(timeWait.port, (port, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        return timeWaits.size();
+    }
+
+    /**
+     * Returns the number of ports that may be live or in TIME_WAIT at the same time
+     */
+    public int getPortBudget() {
+        return Math.max(1, (int) ((portRangeEnd - portRangeStart + 1) * highWatermark));
+    }
+
+    /**
+     * Creates a report entry with the connection counts
+     * @return The reporting group
+     */
+    public synchronized Group toReport() {
+        Group group = new Group("Connection Lifecycle");
+        group.addSubEntry(new ValueEntry<>("Close Strategy", closeStrategy));
+        group.addSubEntry(new ValueEntry<>("Opened Connections", openedCount.sum()));
+        group.addSubEntry(new ValueEntry<>("Live Connections", liveCount));
+        group.addSubEntry(new ValueEntry<>("Connections in TIME_WAIT (estimated)", expireTimeWaits()));
+        group.addSubEntry(new ValueEntry<>("Port Budget", getPortBudget()));
+        group.addSubEntry(new ValueEntry<>("Throttled Connects", throttledCount.sum()));
+        group.addSubEntry(new ValueEntry<>("Throttling Time [ms]", TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum())));
+        if(spreadLocalPorts) {
+            group.addSubEntry(new ValueEntry<>("Failed Binds", bindFailureCount.sum()));
+            group.addSubEntry(new ValueEntry<>("Port Collisions", collisionCount.sum()));
+        }
+        return group;
+    }
+
+    public long getCollisionCount() {
+        return collisionCount.sum();
+    }
+
+    public synchronized int getLiveCount() {
+        return liveCount;
+    }
+
+    public synchronized int getTimeWaitCount() {
+        return expireTimeWaits();
+    }
+
+    public synchronized CloseStrategy getCloseStrategy() {
+        return closeStrategy;
+    }
+
+    public synchronized void setCloseStrategy(CloseStrategy closeStrategy) {
+        this.closeStrategy = closeStrategy;
+    }
+
+    public synchronized boolean isSpreadLocalPorts() {
+        return spreadLocalPorts;
+    }
+
+    /**
+     * Sets whether local ports are assigned round robin across the port range, so that a port is reused as late as
+     * possible
+     */
+    public synchronized void setSpreadLocalPorts(boolean spreadLocalPorts) {
+        this.spreadLocalPorts = spreadLocalPorts;
+    }
+
+    public synchronized long getTimeWait() {
+        return TimeUnit.NANOSECONDS.toMillis(timeWaitNanos);
+    }
+
+    /**
+     * Sets how long a gracefully closed connection is assumed to occupy its port (60 seconds on Linux)
+     * @param timeWait Duration in milliseconds
+     */
+    public synchronized void setTimeWait(long timeWait) {
+        this.timeWaitNanos = TimeUnit.MILLISECONDS.toNanos(timeWait);
+    }
+
+    public synchronized double getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Sets the fraction of the port range that may be live or in TIME_WAIT before new connections are throttled
+     */
+    public synchronized void setHighWatermark(double highWatermark) {
+        if(highWatermark <= 0 || highWatermark > 1) {
+            throw new IllegalArgumentException("High watermark must be in (0, 1]");
+        }
+        this.highWatermark = highWatermark;
+        notifyAll();
+    }
+
+    /**
+     * A local port in TIME_WAIT
+     */
+    private static class TimeWait {
+        private final long expiry;
+        private final int port;
+
+        private TimeWait(long expiry, int port) {
+            this.expiry = expiry;
+            this.port = port;
+        }
+    }
+}
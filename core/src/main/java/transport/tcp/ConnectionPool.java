@@ -0,0 +1,220 @@
+package transport.tcp;
+
+import opcua.context.Endpoint;
+import opcua.context.StaticConfig;
+import org.apache.log4j.Logger;
+import transport.TransportException;
+
+import java.util.concurrent.*;
+
+/**
+ * Keeps a number of connections to an endpoint established and HEL/ACK-completed in the background. A query only
+ * takes a ready connection, sends its message and waits for the reply. Connections are handed out exactly once and
+ * are not returned to the pool, as the server usually closes them after answering a query.
+ */
+public class ConnectionPool {
+    private static final Logger logger = Logger.getRootLogger();
+
+    private final Endpoint endpoint;
+    private final int poolSize;
+    private final long refillIntervalNanos;
+    private final long idleExpiryNanos;
+
+    private final BlockingDeque<PooledConnection> readyConnections = new LinkedBlockingDeque<>();
+    private final Semaphore freeSlots;
+    private final Object refillLock = new Object();
+    private long nextRefill;
+
+    private ExecutorService refillWorkers;
+    private ScheduledExecutorService reaper;
+    private volatile boolean running;
+
+    private static class PooledConnection {
+        private final HighPrecisionTimingClientTcpConnection connection;
+        private final long readySince;
+
+        PooledConnection(HighPrecisionTimingClientTcpConnection connection, long readySince) {
+            this.connection = connection;
+            this.readySince = readySince;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param endpoint Endpoint to keep connections to
+     * @param poolSize Number of connections to keep ready
+     * @param refillRate Maximum number of connections established per second (0 for no limit)
+     * @param idleExpiry Time in milliseconds after which an unused connection is discarded
+     */
+    public ConnectionPool(Endpoint endpoint, int poolSize, int refillRate, long idleExpiry) {
+        if(poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.endpoint = endpoint;
+        this.poolSize = poolSize;
+        this.refillIntervalNanos = refillRate > 0 ? TimeUnit.SECONDS.toNanos(1) / refillRate : 0;
+        this.idleExpiryNanos = TimeUnit.MILLISECONDS.toNanos(idleExpiry);
+        this.freeSlots = new Semaphore(poolSize);
+    }
+
+    /**
+     * Constructor that uses the default values of StaticConfig
+     * @param endpoint Endpoint to keep connections to
+     */
+    public ConnectionPool(Endpoint endpoint) {
+        this(endpoint, StaticConfig.POOL_SIZE, StaticConfig.POOL_REFILL_RATE, StaticConfig.POOL_IDLE_EXPIRY);
+    }
+
+    /**
+     * Starts establishing connections in the background
+     */
+    public synchronized void start() {
+        if(running) {
+            return;
+        }
+        running = true;
+        refillWorkers = Executors.newFixedThreadPool(poolSize, daemonThreadFactory("connection-pool-refill"));
+        for(int i=0; i<poolSize; i++) {
+            refillWorkers.execute(this::refill);
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("connection-pool-reaper"));
+        long reapInterval = Math.max(TimeUnit.NANOSECONDS.toMillis(idleExpiryNanos) / 2, 1);
+        reaper.scheduleWithFixedDelay(this::discardExpired, reapInterval, reapInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a ready connection from the pool. If none becomes ready within the TCP timeout, a new connection is
+     * established synchronously.
+     * @return A connection on which the HEL/ACK exchange is already completed
+     * @throws TransportException
+     */
+    public HighPrecisionTimingClientTcpConnection acquire() throws TransportException {
+        if(!running) {
+            start();
+        }
+        try {
+            PooledConnection pooled;
+            while((pooled = readyConnections.pollFirst(StaticConfig.TIMEOUT, TimeUnit.MILLISECONDS)) != null) {
+                freeSlots.release();
+                if(!isExpired(pooled)) {
+                    return pooled.connection;
+                }
+                closeQuietly(pooled.connection);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransportException(e);
+        }
+        return establish();
+    }
+
+    /**
+     * Stops the background workers and closes all connections that are still ready
+     */
+    public synchronized void close() {
+        running = false;
+        if(refillWorkers != null) {
+            refillWorkers.shutdownNow();
+            reaper.shutdownNow();
+        }
+        PooledConnection pooled;
+        while((pooled = readyConnections.pollFirst()) != null) {
+            closeQuietly(pooled.connection);
+        }
+    }
+
+    /**
+     * Returns the number of connections that are currently ready
+     */
+    public int getReadyCount() {
+        return readyConnections.size();
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+
+    private void refill() {
+        while(running) {
+            try {
+                freeSlots.acquire();
+                throttle();
+                HighPrecisionTimingClientTcpConnection connection;
+                try {
+                    connection = establish();
+                } catch (TransportException e) {
+                    freeSlots.release();
+                    logger.warn("Unable to establish pooled connection: " + e.getMessage());
+                    Thread.sleep(StaticConfig.TIMEOUT / 10);
+                    continue;
+                }
+                if(running) {
+                    readyConnections.offerLast(new PooledConnection(connection, System.nanoTime()));
+                } else {
+                    closeQuietly(connection);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void throttle() throws InterruptedException {
+        if(refillIntervalNanos == 0) {
+            return;
+        }
+        long waitUntil;
+        synchronized (refillLock) {
+            long now = System.nanoTime();
+            waitUntil = Math.max(now, nextRefill);
+            nextRefill = waitUntil + refillIntervalNanos;
+        }
+        long remaining = waitUntil - System.nanoTime();
+        if(remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private void discardExpired() {
+        PooledConnection pooled;
+        while((pooled = readyConnections.peekFirst()) != null && isExpired(pooled)) {
+            if(readyConnections.remove(pooled)) {
+                freeSlots.release();
+                closeQuietly(pooled.connection);
+            }
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled) {
+        return System.nanoTime() - pooled.readySince > idleExpiryNanos;
+    }
+
+    private HighPrecisionTimingClientTcpConnection establish() throws TransportException {
+        HighPrecisionTimingClientTcpConnection connection = new HighPrecisionTimingClientTcpConnection(endpoint.getHostName(), endpoint.getPort(), StaticConfig.TIMEOUT);
+        connection.initialize();
+        try {
+            TcpClientUtil.initializeTcpTransportConnection(connection, endpoint);
+        } catch (TransportException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+        return connection;
+    }
+
+    private static void closeQuietly(HighPrecisionTimingClientTcpConnection connection) {
+        try {
+            connection.close();
+        } catch (TransportException e) {
+            logger.debug("Unable to close pooled connection: " + e.getMessage());
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
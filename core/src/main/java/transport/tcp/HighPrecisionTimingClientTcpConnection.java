@@ -1,13 +1,23 @@
 package transport.tcp;
 
 import transport.TransportException;
+import transport.tcp.timing.ResponseTimingEngine;
 
 import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 
 /**
- * Like ClientTcpConnection with additional support for high precision timing
+ * Like ClientTcpConnection with additional support for high precision timing. The socket is backed by a SocketChannel,
+ * so that a ResponseTimingEngine can detect the arrival of the response. Bytes that are read while doing so are
+ * returned by the next receiveData.
  */
 public class HighPrecisionTimingClientTcpConnection extends ClientTcpConnection {
+    private long lastSendTime;
+    private ResponseTimingEngine timingEngine = ResponseTimingEngine.shared();
+    private final ByteBuffer firstBytes = ByteBuffer.allocate(8).limit(0);
 
     /**
      * Constructor
@@ -19,18 +29,96 @@ public class HighPrecisionTimingClientTcpConnection extends ClientTcpConnection
         super(hostName, port, timeout);
     }
 
+    @Override
+    protected Socket createSocket() throws IOException {
+        return SocketChannel.open().socket();
+    }
+
     /**
-     * Sends data and returns the elapsed time until the first byte of a response was received. This method will busy wait
-     * until a response is received and might potentially not return at all!
+     * Sends data and returns the elapsed time until the first byte of a response was received or the server closed
+     * the connection, corrected by the overhead of the timing engine
+     * @throws TransportException If no response arrived within the timeout or the connection failed
      */
     public long timedSendData(byte[] data) throws TransportException {
+        long start = System.nanoTime();
         super.sendData(data);
+        return awaitResponse(start);
+    }
+
+    /**
+     * Like timedSendData, but sends the remaining bytes of several buffers as one message with a gathering write of
+     * the socket channel, without copying them into a single array
+     * @param buffers The buffers, which are consumed by the write
+     * @throws TransportException If no response arrived within the timeout or the connection failed
+     */
+    public long timedSendData(ByteBuffer... buffers) throws TransportException {
+        if(socket == null || socket.isClosed()) {
+            throw new TransportException("Connection not active");
+        }
+        long start = System.nanoTime();
+        try {
+            SocketChannel channel = socket.getChannel();
+            long remaining = 0;
+            for(ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while(remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        } catch (IOException e) {
+            throw new TransportException(e);
+        }
+        return awaitResponse(start);
+    }
+
+    private long awaitResponse(long start) throws TransportException {
         long pre = System.nanoTime();
-        //Busy waiting until respond data is available
+        lastSendTime = pre - start;
         try {
-            while (socket.getInputStream().available() == 0) {}
-        } catch (IOException e) {}  // Socket was closed by server (we still can measure this)
-        long post = System.nanoTime();
-        return post - pre;
+            firstBytes.clear();
+            try {
+                return timingEngine.awaitResponse(socket.getChannel(), firstBytes, getTimeout(), pre);
+            } finally {
+                firstBytes.flip();
+            }
+        } catch (IOException e) {
+            throw new TransportException(e);
+        }
+    }
+
+    @Override
+    public byte[] receiveData(int length) throws TransportException {
+        int buffered = Math.min(length, firstBytes.remaining());
+        if(buffered == 0) {
+            return super.receiveData(length);
+        }
+        byte[] data = new byte[length];
+        firstBytes.get(data, 0, buffered);
+        if(buffered < length) {
+            byte[] rest = super.receiveData(length - buffered);
+            System.arraycopy(rest, 0, data, buffered, rest.length);
+            if(rest.length < length - buffered) {
+                return Arrays.copyOf(data, buffered + rest.length);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Returns the time in nanoseconds that writing the data took in the last call of timedSendData
+     */
+    public long getLastSendTime() {
+        return lastSendTime;
+    }
+
+    public ResponseTimingEngine getTimingEngine() {
+        return timingEngine;
+    }
+
+    /**
+     * Sets the engine that measures the response times, by default the shared one
+     */
+    public void setTimingEngine(ResponseTimingEngine timingEngine) {
+        this.timingEngine = timingEngine;
     }
 }
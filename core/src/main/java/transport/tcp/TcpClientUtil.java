@@ -7,6 +7,10 @@ import opcua.message.HelloMessage;
 import opcua.message.Message;
 import opcua.message.parts.MessageType;
 import transport.*;
+import transport.netty.NettyConnection;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Contains utility functions for transport level client logic.
@@ -14,7 +18,8 @@ import transport.*;
 public class TcpClientUtil {
 
     /**
-     * Establishes a tcp transport connection with an OPC UA endpoint
+     * Establishes a tcp transport connection with an OPC UA endpoint. The connection is reset if the HEL/ACK exchange
+     * fails.
      * @param endpoint Endpoint to connect to
      * @return A transport context containing the tcp connection and various parameters
      * @throws TransportException
@@ -22,7 +27,14 @@ public class TcpClientUtil {
     public static TransportContext initializeTcpTransportConnection(Endpoint endpoint) throws TransportException {
         ClientTcpConnection connection = new ClientTcpConnection(endpoint.getHostName(), endpoint.getPort(), StaticConfig.TIMEOUT);
         connection.initialize();
-        return initializeTcpTransportConnection(connection, endpoint);
+        try {
+            return initializeTcpTransportConnection(connection, endpoint);
+        } catch (TransportException | RuntimeException e) {
+            try {
+                connection.abort();
+            } catch (TransportException ignored) {}
+            throw e;
+        }
     }
 
     /**
@@ -43,4 +55,38 @@ public class TcpClientUtil {
 
         return new TransportContext(connection, ack.getProtocolVersion(), ack.getReceiveBufferSize(), ack.getSendBufferSize(), ack.getMaxMessageSize(), ack.getMaxChunkCount());
     }
+
+    /**
+     * Establishes a tcp transport connection with an OPC UA endpoint without blocking
+     * @param connection Established connection to the server, the endpoint lives on
+     * @param endpoint Endpoint to connect to
+     * @return Future that completes with a transport context containing the connection and various parameters
+     */
+    public static CompletableFuture<TransportContext> initializeTcpTransportConnectionAsync(AsyncConnection connection, Endpoint endpoint) {
+        HelloMessage hello = HelloMessage.fromConfig(endpoint.getEndpointUrl());
+        return connection.sendDataAsync(MessageSender.encode(hello))
+                .thenCompose(sent -> MessageReceiver.receiveMessageAsync(connection, endpoint.getMessageSecurityMode()))
+                .thenApply(response -> toTransportContext(connection, response));
+    }
+
+    /**
+     * Establishes a tcp transport connection with an OPC UA endpoint over a Netty connection without blocking
+     * @param connection Established connection to the server, the endpoint lives on
+     * @param endpoint Endpoint to connect to
+     * @return Future that completes with a transport context containing the connection and various parameters
+     */
+    public static CompletableFuture<TransportContext> initializeTcpTransportConnectionAsync(NettyConnection connection, Endpoint endpoint) {
+        HelloMessage hello = HelloMessage.fromConfig(endpoint.getEndpointUrl());
+        return connection.sendDataAsync(MessageSender.encode(hello))
+                .thenCompose(sent -> connection.receiveMessageAsync())
+                .thenApply(response -> toTransportContext(connection, response));
+    }
+
+    private static TransportContext toTransportContext(Connection connection, Message response) {
+        if (response.getMessageType() != MessageType.ACK) {
+            throw new CompletionException(new TransportException("Unable to establish TCP connection"));
+        }
+        AcknowledgeMessage ack = (AcknowledgeMessage)response;
+        return new TransportContext(connection, ack.getProtocolVersion(), ack.getReceiveBufferSize(), ack.getSendBufferSize(), ack.getMaxMessageSize(), ack.getMaxChunkCount());
+    }
 }
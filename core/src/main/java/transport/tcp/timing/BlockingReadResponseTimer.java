@@ -0,0 +1,36 @@
+package transport.tcp.timing;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocks in a read until data arrives. Uses no CPU while waiting, but the measurement includes the wakeup latency of
+ * the thread.
+ */
+public class BlockingReadResponseTimer implements ResponseTimer {
+
+    @Override
+    public long awaitResponse(SocketChannel channel, ByteBuffer firstBytes, int timeout) throws IOException {
+        // Reads of the channel itself ignore the socket timeout, those of the socket's stream honour it
+        Socket socket = channel.socket();
+        int previousTimeout = socket.getSoTimeout();
+        socket.setSoTimeout(timeout);
+        try {
+            int count = socket.getInputStream().read(firstBytes.array(), firstBytes.arrayOffset() + firstBytes.position(), firstBytes.remaining());
+            long now = System.nanoTime();
+            if(count > 0) {
+                firstBytes.position(firstBytes.position() + count);
+            }
+            return now;
+        } finally {
+            socket.setSoTimeout(previousTimeout);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Blocking Read";
+    }
+}
@@ -0,0 +1,28 @@
+package transport.tcp.timing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Strategy that detects the arrival of the first bytes of a response on a socket channel
+ */
+public interface ResponseTimer {
+    /**
+     * Waits until response data is available and reads some of it. The channel is in blocking mode when the method is
+     * called and must be in blocking mode when it returns.
+     * @param channel Connected channel that is not registered with any selector
+     * @param firstBytes Heap buffer that receives at least one byte of the response unless the server closed the
+     *                   connection
+     * @param timeout Timeout in milliseconds
+     * @return System.nanoTime() when the response data or the end of the stream was detected
+     * @throws java.net.SocketTimeoutException If no response arrived in time
+     * @throws IOException
+     */
+    long awaitResponse(SocketChannel channel, ByteBuffer firstBytes, int timeout) throws IOException;
+
+    /**
+     * Returns a short name of the strategy for reports
+     */
+    String getName();
+}
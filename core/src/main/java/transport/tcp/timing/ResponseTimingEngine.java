@@ -0,0 +1,250 @@
+package transport.tcp.timing;
+
+import org.apache.log4j.Logger;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures response times with one of several response timers. Calibration measures, for every timer, the delay between
+ * a write and its detection over a loopback connection. The timer with the lowest standard deviation of this delay is
+ * selected and its median delay is subtracted from all response times as the overhead of the measurement.
+ * Until the engine is calibrated, the first timer is used without correction.
+ */
+public class ResponseTimingEngine {
+    private static final Logger logger = Logger.getRootLogger();
+    private static final int DEFAULT_SAMPLES = 500;
+    private static final int WARMUP_SAMPLES = 50;
+    private static final long WRITE_DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int CALIBRATION_TIMEOUT = 1000;
+
+    private static ResponseTimingEngine shared;
+
+    /**
+     * Loopback measurements of a response timer
+     */
+    public static class Calibration {
+        private final ResponseTimer responseTimer;
+        private final long medianOverhead;
+        private final double meanOverhead;
+        private final double standardDeviation;
+
+        private Calibration(ResponseTimer responseTimer, long medianOverhead, double meanOverhead, double standardDeviation) {
+            this.responseTimer = responseTimer;
+            this.medianOverhead = medianOverhead;
+            this.meanOverhead = meanOverhead;
+            this.standardDeviation = standardDeviation;
+        }
+
+        public ResponseTimer getResponseTimer() {
+            return responseTimer;
+        }
+
+        /**
+         * Returns the median delay in nanoseconds between a write and its detection
+         */
+        public long getMedianOverhead() {
+            return medianOverhead;
+        }
+
+        public double getMeanOverhead() {
+            return meanOverhead;
+        }
+
+        /**
+         * Returns the standard deviation of the delay in nanoseconds
+         */
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+    }
+
+    private final List<ResponseTimer> responseTimers;
+    private final List<Calibration> calibrations = new ArrayList<>();
+    private volatile Calibration selected;
+
+    /**
+     * Constructor
+     * @param responseTimers The timers to choose from, the first one is used until the engine is calibrated
+     */
+    public ResponseTimingEngine(List<ResponseTimer> responseTimers) {
+        if(responseTimers.isEmpty()) {
+            throw new IllegalArgumentException("No response timers");
+        }
+        this.responseTimers = List.copyOf(responseTimers);
+        this.selected = new Calibration(responseTimers.get(0), 0, 0, 0);
+    }
+
+    /**
+     * Returns the engine that is used by all timing connections unless another one is set. It chooses between spin
+     * polling, a selector and a blocking read.
+     */
+    public static synchronized ResponseTimingEngine shared() {
+        if(shared == null) {
+            shared = new ResponseTimingEngine(List.of(new SpinPollingResponseTimer(), new SelectorResponseTimer(), new BlockingReadResponseTimer()));
+        }
+        return shared;
+    }
+
+    /**
+     * Waits for a response with the selected timer
+     * @param channel Connected channel in blocking mode
+     * @param firstBytes Heap buffer that receives the first bytes of the response
+     * @param timeout Timeout in milliseconds
+     * @param sendCompleted System.nanoTime() when the request was written
+     * @return Time in nanoseconds from sendCompleted until the response arrived, minus the calibrated overhead
+     * @throws IOException
+     */
+    public long awaitResponse(SocketChannel channel, ByteBuffer firstBytes, int timeout, long sendCompleted) throws IOException {
+        Calibration selected = this.selected;
+        long detected = selected.responseTimer.awaitResponse(channel, firstBytes, timeout);
+        return Math.max(0, detected - sendCompleted - selected.medianOverhead);
+    }
+
+    /**
+     * Calibrates all timers with the default number of samples and selects the one with the lowest variance
+     * @throws IOException If no loopback connection could be established
+     */
+    public void calibrate() throws IOException {
+        calibrate(DEFAULT_SAMPLES);
+    }
+
+    /**
+     * Calibrates all timers and selects the one with the lowest variance
+     * @param samples Number of measurements per timer
+     * @throws IOException If no loopback connection could be established
+     */
+    public synchronized void calibrate(int samples) throws IOException {
+        calibrations.clear();
+        Calibration best = null;
+        for(ResponseTimer responseTimer : responseTimers) {
+            Calibration calibration = calibrate(responseTimer, samples);
+            calibrations.add(calibration);
+            logger.debug(String.format("Response timer %s: median overhead %d ns, standard deviation %.0f ns",
+                    responseTimer.getName(), calibration.medianOverhead, calibration.standardDeviation));
+            if(best == null || calibration.standardDeviation < best.standardDeviation) {
+                best = calibration;
+            }
+        }
+        selected = best;
+    }
+
+    /**
+     * Measures the delay between writes of a peer and their detection by a timer over a loopback connection. The peer
+     * writes its send time shortly after it was asked to, while the timer is already waiting.
+     */
+    private static Calibration calibrate(ResponseTimer responseTimer, int samples) throws IOException {
+        long[] overheads = new long[samples];
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                 SocketChannel peer = server.accept()) {
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                peer.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Thread writer = new Thread(() -> echoSendTimes(peer), "response-timer-calibration");
+                writer.setDaemon(true);
+                writer.start();
+
+                ByteBuffer request = ByteBuffer.allocate(1);
+                ByteBuffer response = ByteBuffer.allocate(Long.BYTES);
+                for(int i=0; i<WARMUP_SAMPLES+samples; i++) {
+                    request.clear();
+                    client.write(request);
+                    response.clear();
+                    long detected = responseTimer.awaitResponse(client, response, CALIBRATION_TIMEOUT);
+                    while(response.hasRemaining()) {
+                        if(client.read(response) < 0) {
+                            throw new IOException("Calibration peer closed the connection");
+                        }
+                    }
+                    response.flip();
+                    if(i >= WARMUP_SAMPLES) {
+                        overheads[i - WARMUP_SAMPLES] = detected - response.getLong();
+                    }
+                }
+                client.shutdownOutput();
+                try {
+                    writer.join(CALIBRATION_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        double mean = Arrays.stream(overheads).average().orElse(0);
+        double variance = Arrays.stream(overheads).mapToDouble(overhead -> (overhead - mean) * (overhead - mean)).sum() / Math.max(1, samples - 1);
+        long[] sorted = overheads.clone();
+        Arrays.sort(sorted);
+        return new Calibration(responseTimer, sorted[sorted.length / 2], mean, Math.sqrt(variance));
+    }
+
+    /**
+     * Answers every request byte with the time right before the answer is written
+     */
+    private static void echoSendTimes(SocketChannel peer) {
+        ByteBuffer request = ByteBuffer.allocate(1);
+        ByteBuffer response = ByteBuffer.allocate(Long.BYTES);
+        try {
+            while(true) {
+                request.clear();
+                if(peer.read(request) < 0) {
+                    return;
+                }
+                LockSupport.parkNanos(WRITE_DELAY_NANOS);
+                response.clear();
+                response.putLong(System.nanoTime()).flip();
+                peer.write(response);
+            }
+        } catch (IOException e) {
+            logger.debug("Calibration peer failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a report entry with the calibration of every timer and the selected timer
+     * @return The reporting group
+     */
+    public synchronized Group toReport() {
+        Group group = new Group("Response Timing");
+        group.addSubEntry(new ValueEntry<>("Response Timer", selected.responseTimer.getName()));
+        group.addSubEntry(new ValueEntry<>("Subtracted Overhead [us]", selected.medianOverhead / 1000.0));
+        for(Calibration calibration : calibrations) {
+            String name = calibration.responseTimer.getName();
+            group.addSubEntry(new ValueEntry<>("Median Overhead (" + name + ") [us]", calibration.medianOverhead / 1000.0));
+            group.addSubEntry(new ValueEntry<>("Standard Deviation (" + name + ") [us]", Math.round(calibration.standardDeviation / 10) / 100.0));
+        }
+        return group;
+    }
+
+    public synchronized boolean isCalibrated() {
+        return !calibrations.isEmpty();
+    }
+
+    public synchronized List<Calibration> getCalibrations() {
+        return Collections.unmodifiableList(new ArrayList<>(calibrations));
+    }
+
+    public ResponseTimer getResponseTimer() {
+        return selected.responseTimer;
+    }
+
+    /**
+     * Returns the overhead in nanoseconds that is subtracted from every response time
+     */
+    public long getOverhead() {
+        return selected.medianOverhead;
+    }
+}
@@ -0,0 +1,53 @@
+package transport.tcp.timing;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for the channel to become readable with a selector. The waiting thread sleeps, so the measurement includes its
+ * wakeup latency. Every thread uses its own selector, which stays open for the lifetime of the thread.
+ */
+public class SelectorResponseTimer implements ResponseTimer {
+    private static final ThreadLocal<Selector> selectors = new ThreadLocal<>();
+
+    @Override
+    public long awaitResponse(SocketChannel channel, ByteBuffer firstBytes, int timeout) throws IOException {
+        Selector selector = selectors.get();
+        if(selector == null || !selector.isOpen()) {
+            selector = Selector.open();
+            selectors.set(selector);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        try {
+            while(true) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if(remaining <= 0) {
+                    throw new SocketTimeoutException("No response within " + timeout + " ms");
+                }
+                if(selector.select(remaining) > 0) {
+                    long now = System.nanoTime();
+                    selector.selectedKeys().clear();
+                    channel.read(firstBytes);
+                    return now;
+                }
+            }
+        } finally {
+            // The channel can only be switched back to blocking mode once the key is deregistered
+            key.cancel();
+            selector.selectNow();
+            channel.configureBlocking(true);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Selector";
+    }
+}
@@ -0,0 +1,40 @@
+package transport.tcp.timing;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the channel in non-blocking mode until data arrives. Detects the response with the lowest latency, but keeps
+ * a core busy while waiting.
+ */
+public class SpinPollingResponseTimer implements ResponseTimer {
+
+    @Override
+    public long awaitResponse(SocketChannel channel, ByteBuffer firstBytes, int timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        channel.configureBlocking(false);
+        try {
+            while(true) {
+                int count = channel.read(firstBytes);
+                long now = System.nanoTime();
+                if(count != 0) {
+                    return now;
+                }
+                if(now - deadline >= 0) {
+                    throw new SocketTimeoutException("No response within " + timeout + " ms");
+                }
+                Thread.onSpinWait();
+            }
+        } finally {
+            channel.configureBlocking(true);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Spin Polling";
+    }
+}
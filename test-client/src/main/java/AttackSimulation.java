@@ -0,0 +1,27 @@
+import attacks.manger.MangersAttackConfiguration;
+import attacks.manger.simulation.MangerSimulation;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.Security;
+import java.time.Duration;
+
+public class AttackSimulation {
+
+    public static void main(String[] args) {
+        Security.addProvider(new BouncyCastleProvider());
+
+        for(int keySize : new int[] {1024, 2048}) {
+            for(double errorRate : new double[] {0, 0.01}) {
+                MangersAttackConfiguration configuration = new MangersAttackConfiguration();
+                configuration.setNoiseTolerant(errorRate > 0);
+
+                MangerSimulation simulation = new MangerSimulation(keySize, 1000);
+                simulation.setErrorRate(errorRate);
+                simulation.setLatency(Duration.ZERO);
+                simulation.setAttackConfiguration(configuration);
+                System.out.println(simulation.run());
+            }
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import opcua.util.MessageUtility;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import transport.SecureChannelUtil;
 import transport.TransportException;
+import transport.tcp.ConnectionLifecycleManager;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -48,6 +49,9 @@ public class TimingTest {
 
     public static void main(String[] args) throws CertificateException, EncodingException, OracleException, IOException, TransportException {
         Security.addProvider(new BouncyCastleProvider());
+        // One connection per sample would otherwise pile up TIME_WAIT sockets and exhaust the local ports
+        ConnectionLifecycleManager.shared().setCloseStrategy(ConnectionLifecycleManager.CloseStrategy.ABORTIVE);
+        ConnectionLifecycleManager.shared().setSpreadLocalPorts(true);
 
         LocalKeyPair localKeyPair = LocalKeyPair.generateSelfSigned(2048, "CN=OpcUaAttacker");
 
@@ -0,0 +1,25 @@
+package server;
+
+/**
+ * How the server reveals whether a decrypted OPN block is correctly padded. For policies with RSA-OAEP, a block counts
+ * as correctly padded if its first byte is zero ("<B" in Manger's attack), for Basic128Rsa15 if it is PKCS#1 v1.5
+ * conforming.
+ */
+public enum LeakBehaviour {
+    /**
+     * The same error code and reason for every block, i.e. no oracle
+     */
+    NONE,
+    /**
+     * Different error codes
+     */
+    ERROR_CODE,
+    /**
+     * The same error code, but different reasons
+     */
+    REASON,
+    /**
+     * The same error message, but correctly padded blocks are answered later by the timing difference
+     */
+    TIMING
+}
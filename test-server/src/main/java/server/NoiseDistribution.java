@@ -0,0 +1,50 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * Distribution of the random delay that is added to every response to an OPN request
+ */
+public enum NoiseDistribution {
+    NONE {
+        @Override
+        public double sample(double scale, Random random) {
+            return 0;
+        }
+    },
+    /**
+     * Uniform in [0, scale)
+     */
+    UNIFORM {
+        @Override
+        public double sample(double scale, Random random) {
+            return random.nextDouble() * scale;
+        }
+    },
+    /**
+     * Absolute value of a normal distribution with standard deviation scale
+     */
+    GAUSSIAN {
+        @Override
+        public double sample(double scale, Random random) {
+            return Math.abs(random.nextGaussian()) * scale;
+        }
+    },
+    /**
+     * Exponential with mean scale, which produces the long tail of a loaded host
+     */
+    EXPONENTIAL {
+        @Override
+        public double sample(double scale, Random random) {
+            return -Math.log(1 - random.nextDouble()) * scale;
+        }
+    };
+
+    /**
+     * Draws a delay
+     * @param scale Scale of the distribution
+     * @param random Source of randomness
+     * @return The delay, in the unit of scale
+     */
+    public abstract double sample(double scale, Random random);
+}
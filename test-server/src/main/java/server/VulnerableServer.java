@@ -0,0 +1,416 @@
+package server;
+
+import attacks.manger.oracle.RawRsaDecryptor;
+import opcua.context.Endpoint;
+import opcua.context.LocalKeyPair;
+import opcua.context.StaticConfig;
+import opcua.encoding.BinarySerializer;
+import opcua.encoding.DataTypeConverter;
+import opcua.encoding.EncodingException;
+import opcua.encoding.MessageInputStream;
+import opcua.message.AcknowledgeMessage;
+import opcua.message.ErrorMessage;
+import opcua.message.GetEndpointsResponse;
+import opcua.message.OpenSecureChannelResponse;
+import opcua.message.SecureConversationMessage;
+import opcua.message.parts.*;
+import opcua.model.type.*;
+import opcua.security.AsymCryptoUtility;
+import opcua.security.MessageSecurityMode;
+import opcua.security.PKCS1Utility;
+import opcua.security.SecurityAlgorithm;
+import opcua.security.SecurityPolicy;
+import org.apache.log4j.Logger;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import reporting.entry.Group;
+import reporting.entry.ValueEntry;
+import transport.MessageSender;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.Security;
+import java.security.cert.CertificateException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Minimal OPC UA server on the loopback interface that is vulnerable to padding oracle attacks by design. It answers
+ * HEL, an unencrypted OPN and GetEndpoints, so that the vulnerability tests can discover its single endpoint. Encrypted
+ * OPN requests are never accepted: the server decrypts the first cipher block with its own key and answers with an
+ * error message that leaks whether the block was correctly padded, according to its LeakBehaviour.
+ * Every answer to an encrypted OPN request can be delayed by noise, to benchmark attacks and learners under realistic
+ * conditions without a lab.
+ */
+public class VulnerableServer implements Closeable {
+    private static final Logger logger = Logger.getRootLogger();
+    private static final long BAD_SECURITY_CHECKS_FAILED = 0x80130000L;
+    private static final long BAD_DECODING_ERROR = 0x80070000L;
+    private static final long BAD_SERVICE_UNSUPPORTED = 0x800B0000L;
+    private static final long BAD_TCP_MESSAGE_TYPE_INVALID = 0x807E0000L;
+    private static final String TRANSPORT_PROFILE_URI = "http://opcfoundation.org/UA-Profile/Transport/uatcp-uasc-uabinary";
+
+    private final LocalKeyPair keyPair;
+    private final SecurityPolicy securityPolicy;
+    private final LeakBehaviour leakBehaviour;
+    private final RawRsaDecryptor decryptor;
+    private final int blockSize;
+    private final AtomicLong secureChannelIds = new AtomicLong();
+    private final LongAdder connectionCount = new LongAdder();
+    private final LongAdder paddedCount = new LongAdder();
+    private final LongAdder notPaddedCount = new LongAdder();
+    private volatile long timingDifference = TimeUnit.MICROSECONDS.toNanos(500);
+    private volatile NoiseDistribution noiseDistribution = NoiseDistribution.NONE;
+    private volatile long noiseScale;
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private String endpointUrl;
+
+    /**
+     * Constructor
+     * @param keyPair Key of the server, its certificate is published in the endpoint description
+     * @param securityPolicy Security policy of the endpoint, which determines the padding check
+     * @param leakBehaviour How the result of the padding check is revealed
+     */
+    public VulnerableServer(LocalKeyPair keyPair, SecurityPolicy securityPolicy, LeakBehaviour leakBehaviour) {
+        if(securityPolicy == SecurityPolicy.NONE) {
+            throw new IllegalArgumentException("The endpoint requires an encrypting security policy");
+        }
+        this.keyPair = keyPair;
+        this.securityPolicy = securityPolicy;
+        this.leakBehaviour = leakBehaviour;
+        this.decryptor = new RawRsaDecryptor(keyPair.getPrivateKey());
+        this.blockSize = keyPair.getPrivateKey().getModulus().bitLength() / 8;
+    }
+
+    /**
+     * Starts to accept connections on the loopback interface
+     * @param port Port to listen on, 0 for any free port
+     * @throws IOException
+     */
+    public synchronized void start(int port) throws IOException {
+        if(serverSocket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        endpointUrl = "opc.tcp://localhost:" + serverSocket.getLocalPort() + "/vulnerable";
+        executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "vulnerable-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ServerSocket serverSocket = this.serverSocket;
+        executor.execute(() -> acceptConnections(serverSocket));
+        logger.info("Vulnerable server (" + securityPolicy + ", " + leakBehaviour + ") listening on " + endpointUrl);
+    }
+
+    private void acceptConnections(ServerSocket serverSocket) {
+        while(!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionCount.increment();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if(!serverSocket.isClosed()) {
+                    logger.warn("Unable to accept connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the messages of a connection until the client closes it or an encrypted OPN request was answered
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while(true) {
+                byte[] header = new byte[8];
+                try {
+                    in.readFully(header);
+                } catch (EOFException e) {
+                    return;
+                }
+                long chunkSize = DataTypeConverter.bytesToUInt32LE(Arrays.copyOfRange(header, 4, 8));
+                if(chunkSize < 8 || chunkSize > StaticConfig.MAX_MESSAGE_SIZE) {
+                    out.write(MessageSender.encode(new ErrorMessage(BAD_DECODING_ERROR, "Invalid message size")));
+                    return;
+                }
+                byte[] chunk = Arrays.copyOf(header, (int) chunkSize);
+                in.readFully(chunk, 8, chunk.length - 8);
+
+                String messageType = new String(header, 0, 3);
+                switch (messageType) {
+                    case "HEL":
+                        out.write(MessageSender.encode(new AcknowledgeMessage(StaticConfig.PROTOCOL_VERSION,
+                                StaticConfig.RECEIVE_BUFFER_SIZE, StaticConfig.SEND_BUFFER_SIZE, StaticConfig.MAX_MESSAGE_SIZE, StaticConfig.MAX_CHUNK_COUNT)));
+                        break;
+                    case "OPN":
+                        if(!openSecureChannel(chunk, out)) {
+                            return;
+                        }
+                        break;
+                    case "MSG":
+                        out.write(answerRequest(chunk));
+                        break;
+                    case "CLO":
+                        return;
+                    default:
+                        out.write(MessageSender.encode(new ErrorMessage(BAD_TCP_MESSAGE_TYPE_INVALID, "Unsupported message type")));
+                        return;
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // Clients that only need the error code reset the connection
+            logger.debug("Connection reset: " + e.getMessage());
+        } catch (IOException | CertificateException | EncodingException | RuntimeException e) {
+            logger.warn("Unable to serve connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answers an OPN request. An unencrypted request opens a secure channel for discovery, an encrypted request is
+     * answered with an error message that reveals the padding check.
+     * @return Whether the connection stays open
+     */
+    private boolean openSecureChannel(byte[] chunk, OutputStream out) throws IOException, CertificateException, EncodingException {
+        MessageInputStream stream = new MessageInputStream(chunk);
+        stream.skipBytes(12);
+        AsymmetricSecurityHeader securityHeader = AsymmetricSecurityHeader.constructFromBinary(stream);
+
+        if(securityHeader.getSecurityPolicy() == SecurityPolicy.NONE) {
+            SequenceHeader sequenceHeader = SequenceHeader.constructFromBinary(stream);
+            long secureChannelId = secureChannelIds.incrementAndGet();
+            OpenSecureChannelResponse response = new OpenSecureChannelResponse(
+                    new ResponseHeader(Instant.now(), 0, 0),
+                    StaticConfig.PROTOCOL_VERSION,
+                    new SecurityToken(secureChannelId, 1, Instant.now(), StaticConfig.REQUESTED_LIFETIME),
+                    null);
+            out.write(encode(response, secureChannelId, new AsymmetricSecurityHeader(SecurityPolicy.NONE, null, null).toBinary(), sequenceHeader.getRequestId()));
+            return true;
+        }
+
+        byte[] cipherText = stream.readAllBytes();
+        if(cipherText.length < blockSize) {
+            out.write(MessageSender.encode(new ErrorMessage(BAD_DECODING_ERROR, "Invalid ciphertext length")));
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean padded = isCorrectlyPadded(Arrays.copyOf(cipherText, blockSize), securityHeader.getSecurityPolicy());
+        (padded ? paddedCount : notPaddedCount).increment();
+
+        long delay = (long) noiseDistribution.sample(noiseScale, ThreadLocalRandom.current());
+        ErrorMessage errorMessage;
+        switch (leakBehaviour) {
+            case ERROR_CODE:
+                errorMessage = padded ? new ErrorMessage(BAD_SECURITY_CHECKS_FAILED, "Security checks failed")
+                        : new ErrorMessage(BAD_DECODING_ERROR, "Security checks failed");
+                break;
+            case REASON:
+                errorMessage = new ErrorMessage(BAD_SECURITY_CHECKS_FAILED, padded ? "Invalid signature" : "Decryption failed");
+                break;
+            case TIMING:
+                delay += padded ? timingDifference : 0;
+                errorMessage = new ErrorMessage(BAD_SECURITY_CHECKS_FAILED, "Security checks failed");
+                break;
+            default:
+                errorMessage = new ErrorMessage(BAD_SECURITY_CHECKS_FAILED, "Security checks failed");
+                break;
+        }
+        delayUntil(start + delay);
+        out.write(MessageSender.encode(errorMessage));
+        return false;
+    }
+
+    /**
+     * Checks the padding of a cipher block, for RSA-OAEP only the leading zero byte, as in Manger's attack
+     */
+    private boolean isCorrectlyPadded(byte[] cipherBlock, SecurityPolicy requestedPolicy) {
+        BigInteger m = decryptor.decrypt(new BigInteger(1, cipherBlock));
+        if(m.bitLength() > blockSize * 8 - 8) {
+            return false;
+        }
+        if(requestedPolicy.getAsymmetricEncryption() == SecurityAlgorithm.RSA_OAEP) {
+            return true;
+        }
+        byte[] encodedBlock = AsymCryptoUtility.convertBigInteger(m, blockSize);
+        try {
+            PKCS1Utility.decode(encodedBlock);
+            return true;
+        } catch (EncodingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Waits precisely: sleeps for the bulk of the delay and spins for the rest
+     */
+    private static void delayUntil(long deadline) {
+        long remaining;
+        while((remaining = deadline - System.nanoTime()) > 0) {
+            if(remaining > TimeUnit.MILLISECONDS.toNanos(1)) {
+                LockSupport.parkNanos(remaining - TimeUnit.MILLISECONDS.toNanos(1));
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Answers a request on a secure channel, only GetEndpoints is supported
+     */
+    private byte[] answerRequest(byte[] chunk) throws IOException, EncodingException {
+        MessageInputStream stream = new MessageInputStream(chunk);
+        stream.skipBytes(8);
+        long secureChannelId = stream.readUInt32();
+        long tokenId = stream.readUInt32();
+        SequenceHeader sequenceHeader = SequenceHeader.constructFromBinary(stream);
+        if(!stream.readNodeId().equals(ObjectIds.GET_ENDPOINTS_REQUEST)) {
+            return MessageSender.encode(new ErrorMessage(BAD_SERVICE_UNSUPPORTED, "Only GetEndpoints is supported"));
+        }
+        GetEndpointsResponse response = new GetEndpointsResponse(new ResponseHeader(Instant.now(), 0, 0), new EndpointDescription[] {createEndpointDescription()});
+        byte[] securityHeader = new SymmetricSecurityHeader(tokenId).toBinary();
+        return encode(response, secureChannelId, securityHeader, sequenceHeader.getRequestId());
+    }
+
+    private byte[] encode(SecureConversationMessage message, long secureChannelId, byte[] securityHeader, long requestId) {
+        byte[] sequenceHeader = new SequenceHeader(1, requestId).toBinary();
+        byte[] body = message.toBinary();
+        int messageSize = 12 + securityHeader.length + sequenceHeader.length + body.length;
+        return new BinarySerializer()
+                .putBytes(new SecureConversationMessageHeader(message.getMessageType(), IsFinal.FINAL_CHUNK, messageSize, secureChannelId).toBinary())
+                .putBytes(securityHeader)
+                .putBytes(sequenceHeader)
+                .putBytes(body)
+                .get();
+    }
+
+    private EndpointDescription createEndpointDescription() {
+        ApplicationDescription applicationDescription = new ApplicationDescription("urn:opcua-attacker:vulnerable-server",
+                "urn:opcua-attacker", "Vulnerable Server", ApplicationDescription.ApplicationType.SERVER, null, null, new String[] {endpointUrl});
+        UserTokenPolicy anonymous = new UserTokenPolicy("anonymous", UserTokenPolicy.UserTokenType.ANONYMOUS, null, null, SecurityPolicy.NONE);
+        return new EndpointDescription(endpointUrl, applicationDescription, keyPair.getCertificate(), MessageSecurityMode.SIGN_AND_ENCRYPT,
+                securityPolicy, new UserTokenPolicy[] {anonymous}, TRANSPORT_PROFILE_URI, 0);
+    }
+
+    /**
+     * Returns the endpoint to start a vulnerability test with, the test discovers the security configuration itself
+     */
+    public Endpoint getEndpoint() {
+        return new Endpoint("localhost", getPort(), endpointUrl);
+    }
+
+    public int getPort() {
+        if(serverSocket == null) {
+            throw new IllegalStateException("Server not started");
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Creates a report entry with the configuration and the number of answered padding checks
+     * @return The reporting group
+     */
+    public Group toReport() {
+        Group group = new Group("Vulnerable Server");
+        group.addSubEntry(new ValueEntry<>("Security Policy", securityPolicy));
+        group.addSubEntry(new ValueEntry<>("Leak Behaviour", leakBehaviour));
+        if(leakBehaviour == LeakBehaviour.TIMING) {
+            group.addSubEntry(new ValueEntry<>("Timing Difference [us]", timingDifference / 1000.0));
+        }
+        group.addSubEntry(new ValueEntry<>("Noise", noiseDistribution + " (" + noiseScale / 1000.0 + " us)"));
+        group.addSubEntry(new ValueEntry<>("Connections", connectionCount.sum()));
+        group.addSubEntry(new ValueEntry<>("Correctly Padded Blocks", paddedCount.sum()));
+        group.addSubEntry(new ValueEntry<>("Incorrectly Padded Blocks", notPaddedCount.sum()));
+        return group;
+    }
+
+    /**
+     * Stops accepting connections and aborts the open ones
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(serverSocket != null) {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+    }
+
+    public long getTimingDifference() {
+        return TimeUnit.NANOSECONDS.toMicros(timingDifference);
+    }
+
+    /**
+     * Sets how much later correctly padded blocks are answered with LeakBehaviour.TIMING
+     * @param timingDifference Delay in microseconds
+     */
+    public void setTimingDifference(long timingDifference) {
+        this.timingDifference = TimeUnit.MICROSECONDS.toNanos(timingDifference);
+    }
+
+    public NoiseDistribution getNoiseDistribution() {
+        return noiseDistribution;
+    }
+
+    /**
+     * Sets the random delay that is added to every answer to an encrypted OPN request
+     * @param noiseDistribution The distribution
+     * @param noiseScale Scale of the distribution in microseconds
+     */
+    public void setNoise(NoiseDistribution noiseDistribution, long noiseScale) {
+        this.noiseDistribution = noiseDistribution;
+        this.noiseScale = TimeUnit.MICROSECONDS.toNanos(noiseScale);
+    }
+
+    public long getPaddedCount() {
+        return paddedCount.sum();
+    }
+
+    public long getNotPaddedCount() {
+        return notPaddedCount.sum();
+    }
+
+    /**
+     * Starts a server until the process is terminated. Arguments (all optional): port, security policy, leak
+     * behaviour, timing difference in microseconds, noise distribution, noise scale in microseconds, key size, e.g.
+     * "4840 BASIC256_SHA256 TIMING 200 GAUSSIAN 50 2048"
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Security.addProvider(new BouncyCastleProvider());
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4840;
+        SecurityPolicy securityPolicy = args.length > 1 ? SecurityPolicy.valueOf(args[1]) : SecurityPolicy.BASIC256_SHA256;
+        LeakBehaviour leakBehaviour = args.length > 2 ? LeakBehaviour.valueOf(args[2]) : LeakBehaviour.ERROR_CODE;
+        long timingDifference = args.length > 3 ? Long.parseLong(args[3]) : 500;
+        NoiseDistribution noiseDistribution = args.length > 4 ? NoiseDistribution.valueOf(args[4]) : NoiseDistribution.NONE;
+        long noiseScale = args.length > 5 ? Long.parseLong(args[5]) : 0;
+        int keySize = args.length > 6 ? Integer.parseInt(args[6]) : StaticConfig.CERT_KEYSIZE;
+
+        VulnerableServer server = new VulnerableServer(LocalKeyPair.generateSelfSigned(keySize, "CN=Vulnerable-Server"), securityPolicy, leakBehaviour);
+        server.setTimingDifference(timingDifference);
+        server.setNoise(noiseDistribution, noiseScale);
+        server.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(server.toReport())));
+        Thread.currentThread().join();
+    }
+}